@@ -0,0 +1,67 @@
+#!/usr/bin/env bash
+# Mede a Maquina Hipotetica nos programas de dados/bench: o codigo objeto de cada programa roda
+# REPETICOES vezes e o tempo e o menor delas. Com MAQUINA_REFERENCIA apontando para as classes
+# compiladas de outra versao da maquina, o mesmo codigo objeto tambem roda nela; as saidas precisam
+# ser iguais.
+# Uso: [MAQUINA_REFERENCIA=pasta] ./bench_maquina.sh [REPETICOES] [programa.php ...]
+set -euo pipefail
+
+ROOT_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+OUT_DIR="$ROOT_DIR/out"
+TMP_DIR="$(mktemp -d)"
+trap 'rm -rf "$TMP_DIR"' EXIT
+
+REPETICOES="${1:-3}"
+shift || true
+if [ "$#" -gt 0 ]; then
+  PROGRAMAS=("$@")
+else
+  PROGRAMAS=("$ROOT_DIR"/dados/bench/*.php)
+fi
+REFERENCIA="${MAQUINA_REFERENCIA:-}"
+
+mkdir -p "$OUT_DIR"
+javac -encoding UTF-8 -nowarn -d "$OUT_DIR" $(find "$ROOT_DIR/src/main/java" -name "*.java")
+
+# Menor tempo (ms) de REPETICOES execucoes da maquina em $1 com o codigo $2; a saida da ultima
+# fica em $3
+medir() {
+  local classes="$1" codigo="$2" saida="$3" melhor="" inicio fim ms
+  for _ in $(seq "$REPETICOES"); do
+    inicio=$(date +%s%N)
+    java -cp "$classes" compilador.MaqHipo.MaquinaHipoteticaMain "$codigo" > "$saida" < /dev/null
+    fim=$(date +%s%N)
+    ms=$(( (fim - inicio) / 1000000 ))
+    if [ -z "$melhor" ] || [ "$ms" -lt "$melhor" ]; then
+      melhor=$ms
+    fi
+  done
+  echo "$melhor"
+}
+
+if [ -n "$REFERENCIA" ]; then
+  printf "%-24s %12s %14s\n" "programa" "atual ms" "referencia ms"
+else
+  printf "%-24s %12s\n" "programa" "atual ms"
+fi
+for programa in "${PROGRAMAS[@]}"; do
+  nome="$(basename "$programa" .php)"
+  (cd "$TMP_DIR" && java -cp "$OUT_DIR" compilador.Main "$programa" > compilacao.txt) || {
+    echo "$nome: erro na compilacao (veja a saida de compilador.Main)"
+    exit 1
+  }
+  codigo="$TMP_DIR/$nome.codigo.txt"
+  cp "$TMP_DIR/saidas/codigo.objeto.txt" "$codigo"
+
+  ms_atual=$(medir "$OUT_DIR" "$codigo" "$TMP_DIR/$nome.saida_atual.txt")
+  if [ -z "$REFERENCIA" ]; then
+    printf "%-24s %12s\n" "$nome" "$ms_atual"
+    continue
+  fi
+  ms_referencia=$(medir "$REFERENCIA" "$codigo" "$TMP_DIR/$nome.saida_referencia.txt")
+  if ! cmp -s "$TMP_DIR/$nome.saida_atual.txt" "$TMP_DIR/$nome.saida_referencia.txt"; then
+    echo "$nome: saidas diferentes entre a maquina atual e a de referencia"
+    exit 1
+  fi
+  printf "%-24s %12s %14s\n" "$nome" "$ms_atual" "$ms_referencia"
+done
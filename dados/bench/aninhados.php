@@ -0,0 +1,25 @@
+<?php
+/* Lacos aninhados: contadores, comparacoes e multiplicacoes inteiras */
+$i = 0;
+$j = 0;
+$n = 1500;
+$soma = 0;
+$pares = 0;
+
+while ($i < $n) {
+    $j = 0;
+    while ($j < $n) {
+        $soma = $soma + $i * $j;
+        if ($soma >= 1000000007) {
+            $soma = $soma - 1000000007;
+        }
+        if (($i + $j) * 2 == $i * 2 + $j * 2) {
+            $pares = $pares + 1;
+        }
+        $j = $j + 1;
+    }
+    $i = $i + 1;
+}
+echo $soma . PHP_EOL;
+echo $pares . PHP_EOL;
+?>
@@ -0,0 +1,18 @@
+<?php
+/* Laco com contadores inteiros: contas, comparacao e if a cada volta */
+$i = 0;
+$s = 0;
+$t = 0;
+$n = 5000000;
+
+while ($i < $n) {
+    $s = $s + $i * 3 - 7;
+    if ($s > 1000000) {
+        $s = $s - 1000000;
+    }
+    $t = $t + 1;
+    $i = $i + 1;
+}
+echo $s . PHP_EOL;
+echo $t . PHP_EOL;
+?>
@@ -0,0 +1,95 @@
+package compilador;
+
+import compilador.arvore_sintatica_abstrata.ArvoreCompacta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Cache em disco da AST de programas sem erros sintaticos, no formato binario da ArvoreCompacta.
+// A chave e o resumo (ver Resumo) do codigo fonte junto com a impressao digital do compilador,
+// entao o mesmo fonte compilado por outra versao do compilador nao acerta entradas antigas.
+//
+// Cada entrada e um arquivo <chave>.ast com cabecalho (MAGICO, VERSAO_FORMATO, tamanho e CRC32 do
+// conteudo) seguido da arvore; limite, ultimo uso e escrita atomica ficam com CacheEmDisco.
+public class CacheAst {
+
+    private static final int MAGICO = 0x41535443; // "ASTC"
+    private static final int VERSAO_FORMATO = 1;
+    private static final int TAMANHO_CABECALHO = 20;
+
+    private final CacheEmDisco armazenamento;
+
+    public CacheAst(Path diretorio, long limiteBytes) {
+        this.armazenamento = new CacheEmDisco(diretorio, ".ast", limiteBytes);
+    }
+
+    public Path diretorio() {
+        return armazenamento.diretorio();
+    }
+
+    // resumoFonte: Resumo dos bytes do arquivo fonte
+    public static String chave(String resumoFonte) throws IOException {
+        return new Resumo().atualizar(VersaoCompilador.impressaoDigital()).atualizar(resumoFonte).hex();
+    }
+
+    // Arvore guardada com esta chave, ou null; entradas de outro formato ou corrompidas sao apagadas
+    public ArvoreCompacta buscar(String chave) {
+        Path arquivo = armazenamento.procurar(chave);
+        if (arquivo == null) {
+            return null;
+        }
+        try {
+            ArvoreCompacta arvore;
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+                if (canal.size() < TAMANHO_CABECALHO || canal.size() > Integer.MAX_VALUE) {
+                    throw new IOException("tamanho invalido");
+                }
+                ByteBuffer buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+                if (buffer.getInt() != MAGICO || buffer.getInt() != VERSAO_FORMATO) {
+                    throw new IOException("formato diferente");
+                }
+                long tamanho = buffer.getLong();
+                int crc = buffer.getInt();
+                if (tamanho != buffer.remaining()) {
+                    throw new IOException("entrada incompleta");
+                }
+                CRC32 verificacao = new CRC32();
+                verificacao.update(buffer.duplicate());
+                if ((int) verificacao.getValue() != crc) {
+                    throw new IOException("CRC diferente");
+                }
+                arvore = ArvoreCompacta.ler(buffer);
+            }
+            armazenamento.marcarUso(arquivo);
+            return arvore;
+        } catch (IOException e) {
+            System.out.println("        Cache de AST: entrada descartada (" + e.getMessage() + ")");
+            armazenamento.descartar(arquivo);
+            return null;
+        }
+    }
+
+    // Devolve quantas entradas antigas foram apagadas para respeitar o limite, ou -1 se a arvore
+    // sozinha passa do limite e nao foi guardada
+    public int guardar(String chave, ArvoreCompacta arvore) throws IOException {
+        ByteBuffer conteudo = arvore.serializar();
+        CRC32 verificacao = new CRC32();
+        verificacao.update(conteudo.duplicate());
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        cabecalho.putInt(MAGICO).putInt(VERSAO_FORMATO).putLong(conteudo.remaining())
+            .putInt((int) verificacao.getValue());
+        cabecalho.flip();
+        return armazenamento.guardar(chave, TAMANHO_CABECALHO + conteudo.remaining(), canal -> {
+            while (cabecalho.hasRemaining()) {
+                canal.write(cabecalho);
+            }
+            while (conteudo.hasRemaining()) {
+                canal.write(conteudo);
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package compilador;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Cache em disco da compilacao inteira: com o mesmo fonte, o mesmo compilador e as mesmas opcoes,
+// os arquivos gerados por uma compilacao bem sucedida (tokens, AST, tabela de simbolos e codigo
+// objeto) sao copiados de volta para as saidas e nenhuma etapa roda.
+//
+// Cada entrada e um arquivo <chave>.saida: MAGICO, VERSAO_FORMATO, quantidade de artefatos e, para
+// cada um, tamanho (-1 se a compilacao nao gerou esse arquivo) e CRC32, seguidos do conteudo dos
+// artefatos na mesma ordem. Limite, ultimo uso e escrita atomica ficam com CacheEmDisco.
+public class CacheCompilacao {
+
+    private static final int MAGICO = 0x434f4d50; // "COMP"
+    private static final int VERSAO_FORMATO = 1;
+    private static final int TAMANHO_BLOCO = 1024 * 1024;
+
+    private final CacheEmDisco armazenamento;
+
+    public CacheCompilacao(Path diretorio, long limiteBytes) {
+        this.armazenamento = new CacheEmDisco(diretorio, ".saida", limiteBytes);
+    }
+
+    public Path diretorio() {
+        return armazenamento.diretorio();
+    }
+
+    // resumoFonte: Resumo dos bytes do arquivo fonte. Das opcoes, so funcoesSobDemanda muda o
+    // conteudo das saidas. As compilacoes com acerto no cache de AST nao geram tokens.txt e por
+    // isso nao sao guardadas aqui (ver Main.compilar); as outras geram os mesmos arquivos por
+    // caminhos diferentes
+    public static String chave(String resumoFonte, OpcoesCompilacao opcoes) throws IOException {
+        return new Resumo()
+            .atualizar(VersaoCompilador.impressaoDigital())
+            .atualizar(opcoes.funcoesSobDemanda ? 1 : 0)
+            .atualizar(resumoFonte)
+            .hex();
+    }
+
+    private static int tamanhoCabecalho(int quantidade) {
+        return 12 + 12 * quantidade;
+    }
+
+    // Copia os artefatos da entrada com esta chave para os destinos (apagando os que a compilacao
+    // guardada nao gerou) e devolve true; sem entrada, ou com entrada corrompida (que e apagada),
+    // devolve false
+    public boolean restaurar(String chave, Path[] destinos) {
+        Path arquivo = armazenamento.procurar(chave);
+        if (arquivo == null) {
+            return false;
+        }
+        try {
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+                int tamanhoCabecalho = tamanhoCabecalho(destinos.length);
+                ByteBuffer cabecalho = ByteBuffer.allocate(tamanhoCabecalho);
+                lerTudo(canal, cabecalho, 0);
+                if (cabecalho.getInt() != MAGICO || cabecalho.getInt() != VERSAO_FORMATO
+                    || cabecalho.getInt() != destinos.length) {
+                    throw new IOException("formato diferente");
+                }
+                long[] tamanhos = new long[destinos.length];
+                int[] crcs = new int[destinos.length];
+                long total = tamanhoCabecalho;
+                for (int i = 0; i < destinos.length; i++) {
+                    tamanhos[i] = cabecalho.getLong();
+                    crcs[i] = cabecalho.getInt();
+                    if (tamanhos[i] > 0) {
+                        total += tamanhos[i];
+                    }
+                }
+                if (total != canal.size()) {
+                    throw new IOException("entrada incompleta");
+                }
+
+                ByteBuffer bloco = ByteBuffer.allocateDirect(TAMANHO_BLOCO);
+                long posicao = tamanhoCabecalho;
+                for (int i = 0; i < destinos.length; i++) {
+                    if (tamanhos[i] < 0) {
+                        Files.deleteIfExists(destinos[i]);
+                        continue;
+                    }
+                    try (FileChannel destino = FileChannel.open(destinos[i], StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        if (copiar(canal, posicao, destino, 0, tamanhos[i], bloco) != crcs[i]) {
+                            throw new IOException("CRC diferente");
+                        }
+                    }
+                    posicao += tamanhos[i];
+                }
+            }
+            armazenamento.marcarUso(arquivo);
+            return true;
+        } catch (IOException e) {
+            System.out.println("        Cache de compilacao: entrada descartada (" + e.getMessage() + ")");
+            armazenamento.descartar(arquivo);
+            return false;
+        }
+    }
+
+    // Guarda os artefatos que existem (os que faltam ficam marcados como nao gerados). Devolve
+    // quantas entradas antigas foram apagadas para respeitar o limite, ou -1 se os artefatos
+    // sozinhos passam do limite e nao foram guardados
+    public int guardar(String chave, Path[] artefatos) throws IOException {
+        int tamanhoCabecalho = tamanhoCabecalho(artefatos.length);
+        long[] tamanhos = new long[artefatos.length];
+        long total = tamanhoCabecalho;
+        for (int i = 0; i < artefatos.length; i++) {
+            tamanhos[i] = Files.isRegularFile(artefatos[i]) ? Files.size(artefatos[i]) : -1;
+            if (tamanhos[i] > 0) {
+                total += tamanhos[i];
+            }
+        }
+        return armazenamento.guardar(chave, total, canal -> {
+            // O CRC sai da mesma leitura que copia o artefato; o cabecalho vai por ultimo
+            ByteBuffer bloco = ByteBuffer.allocateDirect(TAMANHO_BLOCO);
+            ByteBuffer cabecalho = ByteBuffer.allocate(tamanhoCabecalho);
+            cabecalho.putInt(MAGICO).putInt(VERSAO_FORMATO).putInt(artefatos.length);
+            long posicao = tamanhoCabecalho;
+            for (int i = 0; i < artefatos.length; i++) {
+                int crc = 0;
+                if (tamanhos[i] >= 0) {
+                    try (FileChannel origem = FileChannel.open(artefatos[i], StandardOpenOption.READ)) {
+                        crc = copiar(origem, 0, canal, posicao, tamanhos[i], bloco);
+                    }
+                    posicao += tamanhos[i];
+                }
+                cabecalho.putLong(tamanhos[i]).putInt(crc);
+            }
+            cabecalho.flip();
+            while (cabecalho.hasRemaining()) {
+                canal.write(cabecalho, cabecalho.position());
+            }
+        });
+    }
+
+    // Copia quantidade bytes de origem (a partir de inicioOrigem) para destino (a partir de
+    // inicioDestino) e devolve o CRC32 do que foi copiado
+    private static int copiar(FileChannel origem, long inicioOrigem, FileChannel destino, long inicioDestino,
+                              long quantidade, ByteBuffer bloco) throws IOException {
+        CRC32 verificacao = new CRC32();
+        long copiados = 0;
+        while (copiados < quantidade) {
+            bloco.clear();
+            bloco.limit((int) Math.min(bloco.capacity(), quantidade - copiados));
+            lerTudo(origem, bloco, inicioOrigem + copiados);
+            verificacao.update(bloco);
+            bloco.flip();
+            while (bloco.hasRemaining()) {
+                destino.write(bloco, inicioDestino + copiados + bloco.position());
+            }
+            copiados += bloco.limit();
+        }
+        return (int) verificacao.getValue();
+    }
+
+    // Enche o buffer a partir da posicao do canal e o deixa pronto para leitura
+    private static void lerTudo(FileChannel canal, ByteBuffer buffer, long posicao) throws IOException {
+        int inicio = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicao + buffer.position() - inicio) < 0) {
+                throw new IOException("entrada incompleta");
+            }
+        }
+        buffer.flip();
+    }
+}
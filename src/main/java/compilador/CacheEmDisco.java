@@ -0,0 +1,135 @@
+package compilador;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Pasta de entradas <chave><extensao> usada pelos caches de AST e de compilacao. A data de
+// modificacao marca o ultimo uso; quando a pasta passa do limite de tamanho, as entradas usadas ha
+// mais tempo sao apagadas. Entradas sao escritas num arquivo temporario e renomeadas, entao varias
+// compilacoes podem usar a mesma pasta ao mesmo tempo sem ler uma entrada pela metade.
+public class CacheEmDisco {
+
+    public interface Escrita {
+        void escrever(FileChannel canal) throws IOException;
+    }
+
+    private final Path diretorio;
+    private final String extensao;
+    private final long limiteBytes;
+
+    public CacheEmDisco(Path diretorio, String extensao, long limiteBytes) {
+        this.diretorio = diretorio;
+        this.extensao = extensao;
+        this.limiteBytes = limiteBytes;
+    }
+
+    public Path diretorio() {
+        return diretorio;
+    }
+
+    // Arquivo da entrada com esta chave, ou null se ela nao existe
+    public Path procurar(String chave) {
+        Path arquivo = diretorio.resolve(chave + extensao);
+        return Files.isRegularFile(arquivo) ? arquivo : null;
+    }
+
+    public void marcarUso(Path arquivo) {
+        try {
+            Files.setLastModifiedTime(arquivo, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Sem a data nova a entrada so sai antes do cache
+        }
+    }
+
+    public void descartar(Path arquivo) {
+        apagar(arquivo);
+    }
+
+    // Devolve quantas entradas antigas foram apagadas para respeitar o limite, ou -1 se a entrada
+    // sozinha (tamanho em bytes) passa do limite e nao foi guardada
+    public int guardar(String chave, long tamanho, Escrita escrita) throws IOException {
+        if (tamanho > limiteBytes) {
+            return -1;
+        }
+        Files.createDirectories(diretorio);
+        Path arquivo = diretorio.resolve(chave + extensao);
+        Path temporario = Files.createTempFile(diretorio, chave, ".tmp");
+        try {
+            try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.WRITE)) {
+                escrita.escrever(canal);
+            }
+            try {
+                Files.move(temporario, arquivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            apagar(temporario);
+        }
+        return removerExcedente(arquivo);
+    }
+
+    private static class Entrada {
+        final Path arquivo;
+        final long tamanho;
+        final long ultimoUso;
+
+        Entrada(Path arquivo, long tamanho, long ultimoUso) {
+            this.arquivo = arquivo;
+            this.tamanho = tamanho;
+            this.ultimoUso = ultimoUso;
+        }
+    }
+
+    // Apaga as entradas usadas ha mais tempo, menos a que acabou de ser guardada, ate a pasta caber
+    // no limite
+    private int removerExcedente(Path guardada) throws IOException {
+        List<Entrada> entradas = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, "*" + extensao)) {
+            for (Path arquivo : arquivos) {
+                try {
+                    BasicFileAttributes atributos = Files.readAttributes(arquivo, BasicFileAttributes.class);
+                    entradas.add(new Entrada(arquivo, atributos.size(), atributos.lastModifiedTime().toMillis()));
+                    total += atributos.size();
+                } catch (NoSuchFileException e) {
+                    // Apagada por outra compilacao
+                }
+            }
+        }
+        entradas.sort(Comparator.comparingLong(entrada -> entrada.ultimoUso));
+        int removidas = 0;
+        for (Entrada entrada : entradas) {
+            if (total <= limiteBytes) {
+                break;
+            }
+            if (entrada.arquivo.equals(guardada)) {
+                continue;
+            }
+            apagar(entrada.arquivo);
+            total -= entrada.tamanho;
+            removidas += 1;
+        }
+        return removidas;
+    }
+
+    private static void apagar(Path arquivo) {
+        try {
+            Files.deleteIfExists(arquivo);
+        } catch (IOException e) {
+            // Fica para a proxima limpeza
+        }
+    }
+}
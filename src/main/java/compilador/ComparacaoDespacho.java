@@ -0,0 +1,332 @@
+package compilador;
+
+import compilador.arvore_sintatica_abstrata.*;
+import compilador.lexico.AnalisadorLexico;
+import compilador.lexico.ErroLexico;
+import compilador.sintatico.AnalisadorSintatico;
+import compilador.sintatico.ErroSintatico;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Compara o custo do despacho por Visitante com o da cadeia de instanceof que os caminhantes
+// usavam antes: os dois contam os nos de cada programa, e o tempo de um percurso e a mediana das
+// rodadas depois do aquecimento. Sem argumentos, usa os arquivos .php de dados/
+public class ComparacaoDespacho {
+
+    private static final int AQUECIMENTO = 5;
+    private static final int RODADAS = 15;
+    private static final int PERCURSOS_POR_RODADA = 50;
+
+    public static void main(String[] args) {
+        List<Path> arquivos = new ArrayList<>();
+        try {
+            if (args.length == 0) {
+                arquivos.addAll(listarProgramas(Path.of("dados")));
+            } else {
+                for (String arg : args) {
+                    Path caminho = Path.of(arg);
+                    if (Files.isDirectory(caminho)) {
+                        arquivos.addAll(listarProgramas(caminho));
+                    } else {
+                        arquivos.add(caminho);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Erro ao listar programas: " + e.getMessage());
+            System.exit(2);
+        }
+
+        if (arquivos.isEmpty()) {
+            System.out.println("Nenhum programa encontrado.");
+            System.out.println("Uso: java -cp out compilador.ComparacaoDespacho [arquivo.php|pasta ...]");
+            System.exit(2);
+        }
+
+        for (Path arquivo : arquivos) {
+            Programa programa;
+            try {
+                String codigo = Files.readString(arquivo, StandardCharsets.UTF_8);
+                programa = new AnalisadorSintatico(new AnalisadorLexico(codigo).tokenizarBuffer()).analisar();
+            } catch (IOException | ErroLexico | ErroSintatico e) {
+                System.out.println("IGNORADO " + arquivo + ": " + e.getMessage());
+                continue;
+            }
+            comparar(arquivo, programa);
+        }
+    }
+
+    private static void comparar(Path arquivo, Programa programa) {
+        long[] temposCadeia = new long[RODADAS - AQUECIMENTO];
+        long[] temposVisitante = new long[RODADAS - AQUECIMENTO];
+        long nosCadeia = 0;
+        long nosVisitante = 0;
+
+        for (int rodada = 0; rodada < RODADAS; rodada++) {
+            long inicio = System.nanoTime();
+            for (int i = 0; i < PERCURSOS_POR_RODADA; i++) {
+                nosCadeia = contarPorCadeia(programa.corpo);
+            }
+            long meio = System.nanoTime();
+            for (int i = 0; i < PERCURSOS_POR_RODADA; i++) {
+                Contador contador = new Contador();
+                programa.aceitar(contador);
+                nosVisitante = contador.nos;
+            }
+            long fim = System.nanoTime();
+            if (rodada >= AQUECIMENTO) {
+                temposCadeia[rodada - AQUECIMENTO] = (meio - inicio) / PERCURSOS_POR_RODADA;
+                temposVisitante[rodada - AQUECIMENTO] = (fim - meio) / PERCURSOS_POR_RODADA;
+            }
+        }
+
+        if (nosCadeia != nosVisitante) {
+            System.out.println("DIFERENTE " + arquivo + ": instanceof contou " + nosCadeia
+                + " nos, visitante " + nosVisitante);
+            return;
+        }
+        System.out.println(arquivo + " (" + nosVisitante + " nos): instanceof "
+            + mediana(temposCadeia) + " ns, visitante " + mediana(temposVisitante) + " ns por percurso");
+    }
+
+    private static long mediana(long[] tempos) {
+        long[] ordenados = tempos.clone();
+        Arrays.sort(ordenados);
+        return ordenados[ordenados.length / 2];
+    }
+
+    private static List<Path> listarProgramas(Path pasta) throws IOException {
+        List<Path> programas = new ArrayList<>();
+        try (DirectoryStream<Path> conteudo = Files.newDirectoryStream(pasta, "*.php")) {
+            for (Path programa : conteudo) {
+                programas.add(programa);
+            }
+        }
+        Collections.sort(programas);
+        return programas;
+    }
+
+    // --- Cadeia de instanceof, como nos caminhantes antes do Visitante ---
+
+    private static long contarPorCadeia(Corpo corpo) {
+        long nos = 1;
+        for (Declaracao declaracao : corpo.declaracoes) {
+            nos += 1;
+            if (declaracao instanceof DeclaracaoVariavel) {
+                nos += contarPorCadeia(((DeclaracaoVariavel) declaracao).expressaoInicial);
+            } else if (declaracao instanceof DeclaracaoFuncao) {
+                nos += contarPorCadeia(((DeclaracaoFuncao) declaracao).carregarCorpo());
+            }
+        }
+        return nos + contarPorCadeia(corpo.comandos);
+    }
+
+    private static long contarPorCadeia(List<Comando> comandos) {
+        long nos = 0;
+        for (Comando comando : comandos) {
+            nos += 1;
+            if (comando instanceof ComandoEcho) {
+                nos += contarPorCadeia(((ComandoEcho) comando).expressao);
+            } else if (comando instanceof ComandoIf) {
+                ComandoIf comandoIf = (ComandoIf) comando;
+                nos += contarPorCadeia(comandoIf.condicao) + contarPorCadeia(comandoIf.blocoIf);
+                if (comandoIf.blocoElse != null) {
+                    nos += contarPorCadeia(comandoIf.blocoElse);
+                }
+            } else if (comando instanceof ComandoWhile) {
+                ComandoWhile comandoWhile = (ComandoWhile) comando;
+                nos += contarPorCadeia(comandoWhile.condicao) + contarPorCadeia(comandoWhile.bloco);
+            } else if (comando instanceof ComandoAtribuicao) {
+                nos += contarPorCadeia(((ComandoAtribuicao) comando).expressao);
+            } else if (comando instanceof ComandoChamadaFuncao) {
+                for (Expressao argumento : ((ComandoChamadaFuncao) comando).argumentos) {
+                    nos += contarPorCadeia(argumento);
+                }
+            }
+        }
+        return nos;
+    }
+
+    private static long contarPorCadeia(Condicao condicao) {
+        if (condicao == null) {
+            return 0;
+        }
+        return 1 + contarPorCadeia(condicao.expressao);
+    }
+
+    private static long contarPorCadeia(Expressao expressao) {
+        if (expressao instanceof ExpressaoBinaria) {
+            ExpressaoBinaria binaria = (ExpressaoBinaria) expressao;
+            return 1 + contarPorCadeia(binaria.esquerda) + contarPorCadeia(binaria.direita);
+        } else if (expressao instanceof ExpressaoUnaria) {
+            return 1 + contarPorCadeia(((ExpressaoUnaria) expressao).operando);
+        } else if (expressao instanceof ExpressaoVariavel) {
+            return 1;
+        } else if (expressao instanceof ExpressaoNumero) {
+            return 1;
+        } else if (expressao instanceof ExpressaoLeitura) {
+            return 1;
+        } else if (expressao instanceof ExpressaoChamadaFuncao) {
+            long nos = 1;
+            for (Expressao argumento : ((ExpressaoChamadaFuncao) expressao).argumentos) {
+                nos += contarPorCadeia(argumento);
+            }
+            return nos;
+        }
+        return 0;
+    }
+
+    // --- A mesma contagem por Visitante ---
+
+    private static class Contador implements Visitante<Void> {
+
+        long nos;
+
+        private void visitar(NoArvoreSintaticaAbstrata no) {
+            if (no != null) {
+                no.aceitar(this);
+            }
+        }
+
+        private void visitarTodos(List<? extends NoArvoreSintaticaAbstrata> lista) {
+            for (NoArvoreSintaticaAbstrata no : lista) {
+                no.aceitar(this);
+            }
+        }
+
+        @Override
+        public Void visitarPrograma(Programa programa) {
+            programa.corpo.aceitar(this);
+            return null;
+        }
+
+        @Override
+        public Void visitarCorpo(Corpo corpo) {
+            nos += 1;
+            visitarTodos(corpo.declaracoes);
+            visitarTodos(corpo.comandos);
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoVariavel(DeclaracaoVariavel declaracao) {
+            nos += 1;
+            visitar(declaracao.expressaoInicial);
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoFuncao(DeclaracaoFuncao declaracao) {
+            nos += 1;
+            declaracao.carregarCorpo().aceitar(this);
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoErro(DeclaracaoErro declaracao) {
+            nos += 1;
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoEcho(ComandoEcho comando) {
+            nos += 1;
+            visitar(comando.expressao);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoIf(ComandoIf comando) {
+            nos += 1;
+            visitar(comando.condicao);
+            visitarTodos(comando.blocoIf);
+            if (comando.blocoElse != null) {
+                visitarTodos(comando.blocoElse);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoWhile(ComandoWhile comando) {
+            nos += 1;
+            visitar(comando.condicao);
+            visitarTodos(comando.bloco);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoAtribuicao(ComandoAtribuicao comando) {
+            nos += 1;
+            visitar(comando.expressao);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoChamadaFuncao(ComandoChamadaFuncao comando) {
+            nos += 1;
+            visitarTodos(comando.argumentos);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoErro(ComandoErro comando) {
+            nos += 1;
+            return null;
+        }
+
+        @Override
+        public Void visitarCondicao(Condicao condicao) {
+            nos += 1;
+            visitar(condicao.expressao);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoBinaria(ExpressaoBinaria expressao) {
+            nos += 1;
+            visitar(expressao.esquerda);
+            visitar(expressao.direita);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoUnaria(ExpressaoUnaria expressao) {
+            nos += 1;
+            visitar(expressao.operando);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoVariavel(ExpressaoVariavel expressao) {
+            nos += 1;
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoNumero(ExpressaoNumero expressao) {
+            nos += 1;
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoLeitura(ExpressaoLeitura expressao) {
+            nos += 1;
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expressao) {
+            nos += 1;
+            visitarTodos(expressao.argumentos);
+            return null;
+        }
+    }
+}
@@ -24,12 +24,20 @@ public class Debug {
         MAQUINA_HIPOTETICA = true;
     }
 
+    public static boolean lexicoAtivo() {
+        return ENABLED && LEXICO;
+    }
+
     public static void lexico(String msg) {
         if (ENABLED && LEXICO) {
             System.out.println("[LEXICO] " + msg);
         }
     }
 
+    public static boolean sintaticoAtivo() {
+        return ENABLED && SINTATICO;
+    }
+
     public static void sintatico(String msg) {
         if (ENABLED && SINTATICO) {
             System.out.println("[SINTATICO] " + indent() + msg);
@@ -43,6 +51,16 @@ public class Debug {
         }
     }
 
+    // Regras abertas; a recuperacao de erros sintaticos volta a esta profundidade depois de
+    // abandonar as regras interrompidas pelo erro
+    public static int profundidadeRegras() {
+        return indentLevel;
+    }
+
+    public static void restaurarProfundidadeRegras(int profundidade) {
+        indentLevel = profundidade;
+    }
+
     public static void sairRegra(String regra) {
         if (ENABLED && SINTATICO) {
             indentLevel--;
@@ -75,6 +93,10 @@ public class Debug {
         }
     }
 
+    public static boolean maquinaHipoteticaAtivo() {
+        return ENABLED && MAQUINA_HIPOTETICA;
+    }
+
     public static void maquinaHipoteticaEstado(int pc, String mnemonico, Object arg, java.util.List<Double> pilha) {
         if (ENABLED && MAQUINA_HIPOTETICA) {
             String argStr = arg != null ? " " + arg : "";
@@ -4,8 +4,13 @@ import compilador.arvore_sintatica_abstrata.*;
 
 import java.util.List;
 
-public class ImprimaAST {
+public class ImprimaAST implements Visitante<Void> {
+    private static final int NIVEL_MAXIMO_RECUO = 100;
     private final String indentacaoBase;
+    // Texto em construcao e percurso em andamento (so durante imprimir); o nivel de cada no vai
+    // como dado do percurso
+    private StringBuilder sb;
+    private PercursoIterativo percurso;
 
     public ImprimaAST() {
         this("");
@@ -16,166 +21,208 @@ public class ImprimaAST {
     }
 
     public String imprimir(Programa programa) {
-        StringBuilder sb = new StringBuilder();
-        imprimirNo(programa, sb, 0);
-        return sb.toString();
+        sb = new StringBuilder();
+        percurso = new PercursoIterativo(this);
+        percurso.percorrer(programa, 0);
+        String texto = sb.toString();
+        sb = null;
+        percurso = null;
+        return texto;
     }
 
-    private void imprimirNo(NoArvoreSintaticaAbstrata no, StringBuilder sb, int nivel) {
+    private void imprimirNo(NoArvoreSintaticaAbstrata no, int nivelNo) {
         if (no == null) {
-            linha(sb, nivel, "null");
+            percurso.depois(() -> linha(nivelNo, "null"));
             return;
         }
+        percurso.visitar(no, nivelNo);
+    }
 
-        if (no instanceof Programa) {
-            Programa programa = (Programa) no;
-            linha(sb, nivel, "Programa");
-            imprimirNo(programa.corpo, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarPrograma(Programa programa) {
+        int nivel = percurso.dado();
+        linha(nivel, "Programa");
+        imprimirNo(programa.corpo, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof Corpo) {
-            Corpo corpo = (Corpo) no;
-            linha(sb, nivel, "Corpo");
-            imprimirLista("Declaracoes", corpo.declaracoes, sb, nivel + 1);
-            imprimirLista("Comandos", corpo.comandos, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarCorpo(Corpo corpo) {
+        int nivel = percurso.dado();
+        linha(nivel, "Corpo");
+        imprimirLista("Declaracoes", corpo.declaracoes, nivel + 1);
+        imprimirLista("Comandos", corpo.comandos, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof DeclaracaoVariavel) {
-            DeclaracaoVariavel declaracaoVariavel = (DeclaracaoVariavel) no;
-            linha(sb, nivel, "DeclaracaoVariavel nome=" + declaracaoVariavel.nome);
-            if (declaracaoVariavel.expressaoInicial != null) {
-                linha(sb, nivel + 1, "Inicializacao");
-                imprimirNo(declaracaoVariavel.expressaoInicial, sb, nivel + 2);
-            }
-            return;
+    @Override
+    public Void visitarDeclaracaoVariavel(DeclaracaoVariavel declaracaoVariavel) {
+        int nivel = percurso.dado();
+        linha(nivel, "DeclaracaoVariavel nome=" + declaracaoVariavel.nome);
+        if (declaracaoVariavel.expressaoInicial != null) {
+            linha(nivel + 1, "Inicializacao");
+            imprimirNo(declaracaoVariavel.expressaoInicial, nivel + 2);
         }
+        return null;
+    }
 
-        if (no instanceof DeclaracaoFuncao) {
-            DeclaracaoFuncao declaracaoFuncao = (DeclaracaoFuncao) no;
-            linha(sb, nivel, "DeclaracaoFuncao nome=" + declaracaoFuncao.nome);
-            imprimirListaString("Parametros", declaracaoFuncao.parametros, sb, nivel + 1);
-            imprimirNo(declaracaoFuncao.corpo, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarDeclaracaoFuncao(DeclaracaoFuncao declaracaoFuncao) {
+        int nivel = percurso.dado();
+        linha(nivel, "DeclaracaoFuncao nome=" + declaracaoFuncao.nome);
+        imprimirListaString("Parametros", declaracaoFuncao.parametros, nivel + 1);
+        if (declaracaoFuncao.corpoPendente()) {
+            linha(nivel + 1, "CorpoSobDemanda (nao analisado)");
+        } else {
+            imprimirNo(declaracaoFuncao.corpo, nivel + 1);
+        }
+        return null;
+    }
 
-        if (no instanceof ComandoEcho) {
-            ComandoEcho comandoEcho = (ComandoEcho) no;
-            linha(sb, nivel, "ComandoEcho");
-            imprimirNo(comandoEcho.expressao, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarDeclaracaoErro(DeclaracaoErro declaracaoErro) {
+        int nivel = percurso.dado();
+        linha(nivel, "DeclaracaoErro " + declaracaoErro.mensagem);
+        return null;
+    }
 
-        if (no instanceof ComandoAtribuicao) {
-            ComandoAtribuicao comandoAtribuicao = (ComandoAtribuicao) no;
-            linha(sb, nivel, "ComandoAtribuicao variavel=" + comandoAtribuicao.variavel);
-            imprimirNo(comandoAtribuicao.expressao, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarComandoEcho(ComandoEcho comandoEcho) {
+        int nivel = percurso.dado();
+        linha(nivel, "ComandoEcho");
+        imprimirNo(comandoEcho.expressao, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof ComandoChamadaFuncao) {
-            ComandoChamadaFuncao comandoChamadaFuncao = (ComandoChamadaFuncao) no;
-            linha(sb, nivel, "ComandoChamadaFuncao nome=" + comandoChamadaFuncao.nomeFuncao);
-            imprimirLista("Argumentos", comandoChamadaFuncao.argumentos, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarComandoAtribuicao(ComandoAtribuicao comandoAtribuicao) {
+        int nivel = percurso.dado();
+        linha(nivel, "ComandoAtribuicao variavel=" + comandoAtribuicao.variavel);
+        imprimirNo(comandoAtribuicao.expressao, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof ComandoIf) {
-            ComandoIf comandoIf = (ComandoIf) no;
-            linha(sb, nivel, "ComandoIf");
-            linha(sb, nivel + 1, "Condicao");
-            imprimirNo(comandoIf.condicao, sb, nivel + 2);
-            imprimirLista("BlocoIf", comandoIf.blocoIf, sb, nivel + 1);
-            imprimirLista("BlocoElse", comandoIf.blocoElse, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarComandoChamadaFuncao(ComandoChamadaFuncao comandoChamadaFuncao) {
+        int nivel = percurso.dado();
+        linha(nivel, "ComandoChamadaFuncao nome=" + comandoChamadaFuncao.nomeFuncao);
+        imprimirLista("Argumentos", comandoChamadaFuncao.argumentos, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof ComandoWhile) {
-            ComandoWhile comandoWhile = (ComandoWhile) no;
-            linha(sb, nivel, "ComandoWhile");
-            linha(sb, nivel + 1, "Condicao");
-            imprimirNo(comandoWhile.condicao, sb, nivel + 2);
-            imprimirLista("Bloco", comandoWhile.bloco, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarComandoIf(ComandoIf comandoIf) {
+        int nivel = percurso.dado();
+        linha(nivel, "ComandoIf");
+        linha(nivel + 1, "Condicao");
+        imprimirNo(comandoIf.condicao, nivel + 2);
+        imprimirLista("BlocoIf", comandoIf.blocoIf, nivel + 1);
+        imprimirLista("BlocoElse", comandoIf.blocoElse, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof Condicao) {
-            Condicao condicao = (Condicao) no;
-            linha(sb, nivel, "Condicao");
-            imprimirNo(condicao.expressao, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarComandoWhile(ComandoWhile comandoWhile) {
+        int nivel = percurso.dado();
+        linha(nivel, "ComandoWhile");
+        linha(nivel + 1, "Condicao");
+        imprimirNo(comandoWhile.condicao, nivel + 2);
+        imprimirLista("Bloco", comandoWhile.bloco, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof ExpressaoBinaria) {
-            ExpressaoBinaria expressaoBinaria = (ExpressaoBinaria) no;
-            linha(sb, nivel, "ExpressaoBinaria op=" + expressaoBinaria.operador);
-            imprimirNo(expressaoBinaria.esquerda, sb, nivel + 1);
-            imprimirNo(expressaoBinaria.direita, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarComandoErro(ComandoErro comandoErro) {
+        int nivel = percurso.dado();
+        linha(nivel, "ComandoErro " + comandoErro.mensagem);
+        return null;
+    }
 
-        if (no instanceof ExpressaoUnaria) {
-            ExpressaoUnaria expressaoUnaria = (ExpressaoUnaria) no;
-            linha(sb, nivel, "ExpressaoUnaria op=" + expressaoUnaria.operador);
-            imprimirNo(expressaoUnaria.operando, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarCondicao(Condicao condicao) {
+        int nivel = percurso.dado();
+        linha(nivel, "Condicao");
+        imprimirNo(condicao.expressao, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof ExpressaoVariavel) {
-            ExpressaoVariavel expressaoVariavel = (ExpressaoVariavel) no;
-            linha(sb, nivel, "ExpressaoVariavel nome=" + expressaoVariavel.nome);
-            return;
-        }
+    @Override
+    public Void visitarExpressaoBinaria(ExpressaoBinaria expressaoBinaria) {
+        int nivel = percurso.dado();
+        linha(nivel, "ExpressaoBinaria op=" + expressaoBinaria.operador);
+        imprimirNo(expressaoBinaria.esquerda, nivel + 1);
+        imprimirNo(expressaoBinaria.direita, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof ExpressaoNumero) {
-            ExpressaoNumero expressaoNumero = (ExpressaoNumero) no;
-            linha(sb, nivel, "ExpressaoNumero valor=" + expressaoNumero.valor);
-            return;
-        }
+    @Override
+    public Void visitarExpressaoUnaria(ExpressaoUnaria expressaoUnaria) {
+        int nivel = percurso.dado();
+        linha(nivel, "ExpressaoUnaria op=" + expressaoUnaria.operador);
+        imprimirNo(expressaoUnaria.operando, nivel + 1);
+        return null;
+    }
 
-        if (no instanceof ExpressaoLeitura) {
-            linha(sb, nivel, "ExpressaoLeitura");
-            return;
-        }
+    @Override
+    public Void visitarExpressaoVariavel(ExpressaoVariavel expressaoVariavel) {
+        int nivel = percurso.dado();
+        linha(nivel, "ExpressaoVariavel nome=" + expressaoVariavel.nome);
+        return null;
+    }
 
-        if (no instanceof ExpressaoChamadaFuncao) {
-            ExpressaoChamadaFuncao expressaoChamadaFuncao = (ExpressaoChamadaFuncao) no;
-            linha(sb, nivel, "ExpressaoChamadaFuncao nome=" + expressaoChamadaFuncao.nomeFuncao);
-            imprimirLista("Argumentos", expressaoChamadaFuncao.argumentos, sb, nivel + 1);
-            return;
-        }
+    @Override
+    public Void visitarExpressaoNumero(ExpressaoNumero expressaoNumero) {
+        int nivel = percurso.dado();
+        linha(nivel, "ExpressaoNumero valor=" + expressaoNumero.valor);
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoLeitura(ExpressaoLeitura expressaoLeitura) {
+        int nivel = percurso.dado();
+        linha(nivel, "ExpressaoLeitura");
+        return null;
+    }
 
-        linha(sb, nivel, "NoDesconhecido " + no.getClass().getSimpleName());
+    @Override
+    public Void visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expressaoChamadaFuncao) {
+        int nivel = percurso.dado();
+        linha(nivel, "ExpressaoChamadaFuncao nome=" + expressaoChamadaFuncao.nomeFuncao);
+        imprimirLista("Argumentos", expressaoChamadaFuncao.argumentos, nivel + 1);
+        return null;
     }
 
-    private void imprimirLista(String rotulo, List<? extends NoArvoreSintaticaAbstrata> lista, StringBuilder sb, int nivel) {
+    // O rotulo so e escrito quando chega a vez da lista, depois dos nos agendados antes dela
+    private void imprimirLista(String rotulo, List<? extends NoArvoreSintaticaAbstrata> lista, int nivelLista) {
         if (lista == null || lista.isEmpty()) {
-            linha(sb, nivel, rotulo + " (vazio)");
+            percurso.depois(() -> linha(nivelLista, rotulo + " (vazio)"));
             return;
         }
-        linha(sb, nivel, rotulo);
-        for (NoArvoreSintaticaAbstrata item : lista) {
-            imprimirNo(item, sb, nivel + 1);
-        }
+        percurso.depois(() -> linha(nivelLista, rotulo));
+        percurso.visitarTodos(lista, nivelLista + 1);
     }
 
-    private void imprimirListaString(String rotulo, List<String> lista, StringBuilder sb, int nivel) {
+    private void imprimirListaString(String rotulo, List<String> lista, int nivelLista) {
         if (lista == null || lista.isEmpty()) {
-            linha(sb, nivel, rotulo + " (vazio)");
+            linha(nivelLista, rotulo + " (vazio)");
             return;
         }
-        linha(sb, nivel, rotulo);
+        linha(nivelLista, rotulo);
         for (String item : lista) {
-            linha(sb, nivel + 1, item);
+            linha(nivelLista + 1, item);
         }
     }
 
-    private void linha(StringBuilder sb, int nivel, String texto) {
+    // Abaixo de NIVEL_MAXIMO_RECUO o recuo para de crescer e a linha traz o nivel, senao o texto de
+    // uma arvore muito funda cresceria com o quadrado da profundidade
+    private void linha(int nivelLinha, String texto) {
         sb.append(indentacaoBase);
-        for (int i = 0; i < nivel; i++) {
+        for (int i = 0; i < Math.min(nivelLinha, NIVEL_MAXIMO_RECUO); i++) {
             sb.append("  ");
         }
+        if (nivelLinha > NIVEL_MAXIMO_RECUO) {
+            sb.append('[').append(nivelLinha).append("] ");
+        }
         sb.append(texto).append('\n');
     }
 }
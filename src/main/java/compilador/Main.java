@@ -1,18 +1,25 @@
 package compilador;
 
+import compilador.arvore_sintatica_abstrata.ArvoreCompacta;
 import compilador.arvore_sintatica_abstrata.Programa;
 import compilador.gerador.GeradorCodigo;
 import compilador.lexico.ErroLexico;
 import compilador.lexico.AnalisadorLexico;
-import compilador.lexico.Token;
+import compilador.lexico.FonteCodigo;
+import compilador.lexico.FonteMapeada;
+import compilador.lexico.FonteTexto;
+import compilador.lexico.ModoLexico;
+import compilador.lexico.TokenBuffer;
 import compilador.sintatico.AnalisadorSintatico;
 import compilador.sintatico.ErroSintatico;
 import compilador.semantico.AnalisadorSemantico;
 import compilador.semantico.ErroSemantico;
+import compilador.semantico.InferenciaTipos;
 import compilador.semantico.Simbolo;
 import compilador.semantico.TabelaSimbolos;
 import compilador.semantico.TipoSimbolo;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -55,8 +62,10 @@ public class Main {
         StringBuilder construtor = new StringBuilder();
         for (String escopo : escopos) {
             TabelaSimbolos tabela = tabelasPorEscopo.get(escopo);
-            Map<String, Simbolo> simbolos = tabela.getTodosSimbolos();
-            List<Simbolo> lista = new ArrayList<>(simbolos.values());
+            List<Simbolo> lista = new ArrayList<>(tabela.quantidade());
+            for (int i = 0; i < tabela.quantidade(); i++) {
+                lista.add(tabela.simbolo(i));
+            }
             lista.sort(Comparator.comparing(s -> s.nome));
 
             construtor.append("Tabela de Simbolos (escopo ").append(escopo).append(")")
@@ -79,6 +88,78 @@ public class Main {
         return construtor.toString();
     }
 
+    private static void relatarErrosSintaticos(AnalisadorSintatico analisadorSintatico, Path caminho) {
+
+        List<String> mensagens = new ArrayList<>();
+        for (ErroSintatico erro : analisadorSintatico.getErros()) {
+            String mensagem = "Erro Sintatico: " + erro.getMessage();
+            System.out.println(mensagem);
+            mensagens.add(mensagem);
+        }
+        salvarErro(caminho, String.join(System.lineSeparator(), mensagens));
+    }
+
+    // A arvore compacta ja criada por -ast-compacta ou, sem ela, uma criada aqui so para o cache
+    private static void guardarAstNoCache(CacheAst cacheAst, String chave, Programa ast, ArvoreCompacta compacta) {
+
+        ArvoreCompacta arvore = compacta;
+        if (arvore == null) {
+            // Falta de memoria ou arvore maior que o maior vetor possivel: a compilacao segue sem cache
+            try {
+                arvore = ArvoreCompacta.compactar(ast);
+            } catch (OutOfMemoryError e) {
+                System.out.println("        Cache de AST: falta, AST nao guardada: nao foi possivel compactar (" + e.getMessage() + ")");
+                return;
+            }
+        }
+        try {
+            int removidas = cacheAst.guardar(chave, arvore);
+            if (removidas < 0) {
+                System.out.println("        Cache de AST: falta, AST maior que o limite do cache, nao guardada");
+            } else {
+                System.out.println("        Cache de AST: falta, AST guardada em " + cacheAst.diretorio()
+                    + (removidas > 0 ? " (" + removidas + " entrada(s) antiga(s) removida(s))" : ""));
+            }
+        } catch (IOException e) {
+            System.out.println("        Cache de AST: falta, AST nao guardada: " + e.getMessage());
+        }
+    }
+
+    private static void guardarCompilacaoNoCache(CacheCompilacao cacheCompilacao, String chave, Path[] artefatos) {
+
+        try {
+            int removidas = cacheCompilacao.guardar(chave, artefatos);
+            if (removidas < 0) {
+                System.out.println("        Cache de compilacao: saidas maiores que o limite do cache, nao guardadas");
+            } else {
+                System.out.println("        Cache de compilacao: saidas guardadas em " + cacheCompilacao.diretorio()
+                    + (removidas > 0 ? " (" + removidas + " entrada(s) antiga(s) removida(s))" : ""));
+            }
+        } catch (IOException e) {
+            System.out.println("        Cache de compilacao: saidas nao guardadas: " + e.getMessage());
+        }
+    }
+
+    // Programas grandes sao lidos direto do arquivo mapeado, sem a copia em bytes e a String
+    private static FonteCodigo lerFonte(Path caminho, OpcoesCompilacao opcoes) throws IOException {
+
+        if (opcoes.modoLexico == ModoLexico.AUTOMATO && Files.size(caminho) >= opcoes.limiteFonteMapeada) {
+            return FonteMapeada.mapear(caminho);
+        }
+        return new FonteTexto(Files.readString(caminho, StandardCharsets.UTF_8));
+    }
+
+    private static void salvarTokens(Path caminho, TokenBuffer tokens) throws IOException {
+
+        try (BufferedWriter escritor = Files.newBufferedWriter(caminho, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < tokens.tamanho(); i++) {
+                escritor.write(tokens.token(i).toString());
+                escritor.write(System.lineSeparator());
+            }
+        }
+        System.out.println("        Tokens salvo em: " + caminho);
+    }
+
     private static Path resolverSaida(Path saidasDir, String caminhoSaida) {
 
         if (caminhoSaida == null || caminhoSaida.isBlank()) {
@@ -93,10 +174,36 @@ public class Main {
 
     public static boolean compilar(String caminhoEntrada, String caminhoSaida) {
 
+        return compilar(caminhoEntrada, caminhoSaida, new OpcoesCompilacao());
+    }
+
+    public static boolean compilar(String caminhoEntrada, String caminhoSaida, OpcoesCompilacao opcoes) {
+
         System.out.println("Compilando: " + caminhoEntrada);
-        String codigoFonte;
+        // Com o cache de compilacao, um fonte ja compilado com sucesso por este mesmo compilador tem
+        // as saidas restauradas sem rodar nenhuma etapa; com o de AST, nem e lido para as analises
+        // lexica e sintatica. Debug mostra as etapas e corpos sob demanda nao cabem na arvore
+        // guardada, entao nesses casos os caches ficam desligados
+        CacheCompilacao cacheCompilacao = null;
+        if (opcoes.diretorioCacheCompilacao != null && !Debug.ENABLED) {
+            cacheCompilacao = new CacheCompilacao(Path.of(opcoes.diretorioCacheCompilacao), opcoes.limiteCacheCompilacao);
+        }
+        CacheAst cacheAst = null;
+        if (opcoes.diretorioCacheAst != null && !opcoes.funcoesSobDemanda && !Debug.ENABLED) {
+            cacheAst = new CacheAst(Path.of(opcoes.diretorioCacheAst), opcoes.limiteCacheAst);
+        }
+        String chaveCompilacao = null;
+        String chaveCache = null;
         try {
-            codigoFonte = Files.readString(Path.of(caminhoEntrada), StandardCharsets.UTF_8);
+            if (cacheCompilacao != null || cacheAst != null) {
+                String resumoFonte = new Resumo().atualizarArquivo(Path.of(caminhoEntrada)).hex();
+                if (cacheCompilacao != null) {
+                    chaveCompilacao = CacheCompilacao.chave(resumoFonte, opcoes);
+                }
+                if (cacheAst != null) {
+                    chaveCache = CacheAst.chave(resumoFonte);
+                }
+            }
         } catch (IOException e) {
             System.out.println("Erro ao ler arquivo: " + e.getMessage());
             return false;
@@ -124,44 +231,121 @@ public class Main {
             return false;
         }
 
-        System.out.println("=== Etapa 1: Analise Lexica ===");
+        Path[] artefatos = {caminhoTokens, caminhoAst, caminhoTabela, caminhoCodigoObjeto};
+        if (cacheCompilacao != null) {
+            if (cacheCompilacao.restaurar(chaveCompilacao, artefatos)) {
+                System.out.println("=== Etapas 1 a 4: saidas do cache ===");
+                System.out.println("        Cache de compilacao: acerto (" + chaveCompilacao.substring(0, 16) + ")");
+                for (Path artefato : artefatos) {
+                    if (Files.exists(artefato)) {
+                        System.out.println("        Restaurado: " + artefato);
+                    }
+                }
+                System.out.println("Saidas lidas do cache: nenhuma etapa executada.");
+                System.out.println("\nCompilacao concluida com sucesso!");
+                return true;
+            }
+            System.out.println("        Cache de compilacao: falta (" + chaveCompilacao.substring(0, 16) + ")");
+        }
+
+        ArvoreCompacta arvoreDoCache = null;
+        FonteCodigo codigoFonte = null;
         try {
-            AnalisadorLexico analisadorLexico = new AnalisadorLexico(codigoFonte);
-            List<Token> tokensPrevia = analisadorLexico.tokenizar();
-            StringBuilder tokensTexto = new StringBuilder();
-            for (Token token : tokensPrevia) {
-                tokensTexto.append(token).append(System.lineSeparator());
+            if (cacheAst != null) {
+                arvoreDoCache = cacheAst.buscar(chaveCache);
+            }
+            if (arvoreDoCache == null) {
+                codigoFonte = lerFonte(Path.of(caminhoEntrada), opcoes);
             }
-            salvarTexto(caminhoTokens, tokensTexto.toString(), "Tokens");
-            System.out.println("Analise Lexica concluida com sucesso.\n");
-        } catch (ErroLexico e) {
-            String mensagem = "Erro Lexico: " + e.getMessage();
-            System.out.println(mensagem);
-            salvarErro(caminhoErrosLexicos, mensagem);
-            return false;
         } catch (IOException e) {
-            System.out.println("Erro ao salvar tokens: " + e.getMessage());
+            System.out.println("Erro ao ler arquivo: " + e.getMessage());
             return false;
         }
 
-        System.out.println("=== Etapa 2: Analise Sintatica ===");
         Programa ast;
-        try {
-            AnalisadorLexico analisadorLexico = new AnalisadorLexico(codigoFonte);
-            AnalisadorSintatico analisadorSintatico = new AnalisadorSintatico(analisadorLexico);
-            ast = analisadorSintatico.analisar();
-            ImprimaAST impressor = new ImprimaAST("        ");
-            String astTexto = impressor.imprimir(ast);
-            salvarTexto(caminhoAst, astTexto, "AST");
-            System.out.println("Analise Sintatica concluida com sucesso.\n");
-        } catch (ErroLexico | ErroSintatico e) {
-            String mensagem = "Erro Sintatico: " + e.getMessage();
-            System.out.println(mensagem);
-            salvarErro(caminhoErrosSintaticos, mensagem);
-            return false;
-        } catch (IOException e) {
-            System.out.println("Erro ao salvar AST: " + e.getMessage());
-            return false;
+        AnalisadorSintatico analisadorSintatico = null;
+        if (arvoreDoCache != null) {
+            System.out.println("=== Etapas 1 e 2: AST do cache ===");
+            System.out.println("        Cache de AST: acerto (" + chaveCache.substring(0, 16) + ")");
+            ast = arvoreDoCache.programa();
+            try {
+                // Os tokens de uma compilacao anterior nao podem parecer ser deste fonte
+                Files.deleteIfExists(caminhoTokens);
+                ImprimaAST impressor = new ImprimaAST("        ");
+                salvarTexto(caminhoAst, impressor.imprimir(ast), "AST");
+            } catch (IOException e) {
+                System.out.println("Erro ao salvar AST: " + e.getMessage());
+                return false;
+            }
+            System.out.println("AST lida do cache: analises lexica e sintatica nao executadas.\n");
+        } else {
+            System.out.println("=== Etapa 1: Analise Lexica ===");
+            // Os tokens sao materializados uma unica vez e reaproveitados pela analise sintatica.
+            // Caracteres invalidos viram tokens ERRO, para relatar todos os erros lexicos de uma vez.
+            TokenBuffer tokens;
+            try {
+                AnalisadorLexico analisadorLexico = new AnalisadorLexico(codigoFonte, opcoes.modoLexico);
+                analisadorLexico.setRecuperarErros(true);
+                tokens = analisadorLexico.tokenizarBuffer();
+                if (tokens.quantidadeErros() > 0) {
+                    List<String> mensagens = new ArrayList<>();
+                    for (String erro : tokens.mensagensErro()) {
+                        String mensagem = "Erro Lexico: " + erro;
+                        System.out.println(mensagem);
+                        mensagens.add(mensagem);
+                    }
+                    salvarErro(caminhoErrosLexicos, String.join(System.lineSeparator(), mensagens));
+                    return false;
+                }
+                salvarTokens(caminhoTokens, tokens);
+                System.out.println("Analise Lexica concluida com sucesso.\n");
+            } catch (ErroLexico e) {
+                String mensagem = "Erro Lexico: " + e.getMessage();
+                System.out.println(mensagem);
+                salvarErro(caminhoErrosLexicos, mensagem);
+                return false;
+            } catch (IOException e) {
+                System.out.println("Erro ao salvar tokens: " + e.getMessage());
+                return false;
+            }
+
+            System.out.println("=== Etapa 2: Analise Sintatica ===");
+            // Erros sintaticos nao param a analise: todos sao relatados de uma vez e os trechos com
+            // erro aparecem na AST como ComandoErro/DeclaracaoErro
+            analisadorSintatico = new AnalisadorSintatico(tokens);
+            try {
+                analisadorSintatico.setRecuperarErros(true);
+                analisadorSintatico.setCorposSobDemanda(opcoes.funcoesSobDemanda);
+                ast = analisadorSintatico.analisar();
+                // A AST de objetos vira lixo; as etapas seguintes leem a compacta pela visao em objetos
+                ArvoreCompacta arvoreCompacta = null;
+                if (opcoes.astCompacta && !opcoes.funcoesSobDemanda) {
+                    arvoreCompacta = ArvoreCompacta.compactar(ast);
+                    ast = arvoreCompacta.programa();
+                    System.out.println("        AST compacta: " + arvoreCompacta.quantidade() + " nos, "
+                        + arvoreCompacta.bytesUsados() / 1024 + " KB");
+                }
+                ImprimaAST impressor = new ImprimaAST("        ");
+                String astTexto = impressor.imprimir(ast);
+                salvarTexto(caminhoAst, astTexto, "AST");
+                if (analisadorSintatico.quantidadeErros() > 0) {
+                    relatarErrosSintaticos(analisadorSintatico, caminhoErrosSintaticos);
+                    // Analise semantica e geracao de codigo nao rodam sobre uma AST com erros
+                    return false;
+                }
+                if (cacheAst != null) {
+                    guardarAstNoCache(cacheAst, chaveCache, ast, arvoreCompacta);
+                }
+                System.out.println("Analise Sintatica concluida com sucesso.\n");
+            } catch (ErroSintatico e) {
+                String mensagem = "Erro Sintatico: " + e.getMessage();
+                System.out.println(mensagem);
+                salvarErro(caminhoErrosSintaticos, mensagem);
+                return false;
+            } catch (IOException e) {
+                System.out.println("Erro ao salvar AST: " + e.getMessage());
+                return false;
+            }
         }
 
         System.out.println("=== Etapa 3: Analise Semantica ===");
@@ -169,10 +353,23 @@ public class Main {
         try {
             AnalisadorSemantico analisador = new AnalisadorSemantico();
             tabelaSimbolos = analisador.analisar(ast);
+            // Com funcoes sob demanda, os corpos das funcoes chamadas so sao analisados aqui
+            if (analisadorSintatico != null && analisadorSintatico.quantidadeErros() > 0) {
+                relatarErrosSintaticos(analisadorSintatico, caminhoErrosSintaticos);
+                return false;
+            }
+            new InferenciaTipos(tabelaSimbolos, analisador.getTabelasPorEscopo()).inferir(ast);
+            if (opcoes.funcoesSobDemanda) {
+                System.out.println("        Funcoes nao chamadas (corpo nao analisado): " + analisador.funcoesNaoAnalisadas());
+            }
             String tabelaTexto = formatarTabelaSimbolos(analisador.getTabelasPorEscopo());
             salvarTexto(caminhoTabela, tabelaTexto, "Tabela de simbolos");
             System.out.println("Analise Semantica concluida com sucesso.\n");
         } catch (ErroSemantico e) {
+            if (analisadorSintatico != null && analisadorSintatico.quantidadeErros() > 0) {
+                relatarErrosSintaticos(analisadorSintatico, caminhoErrosSintaticos);
+                return false;
+            }
             String mensagem = "Erro Semantico: " + e.getMensagem();
             System.out.println(mensagem);
             salvarErro(caminhoErrosSemanticos, mensagem);
@@ -195,6 +392,13 @@ public class Main {
             return false;
         }
 
+        // Sem a etapa 1 nao ha tokens.txt; guardar essa compilacao faria um acerto futuro, sem o
+        // cache de AST, apagar os tokens que a compilacao completa gera
+        if (cacheCompilacao != null && arvoreDoCache == null) {
+            guardarCompilacaoNoCache(cacheCompilacao, chaveCompilacao, artefatos);
+        } else if (cacheCompilacao != null) {
+            System.out.println("        Cache de compilacao: saidas nao guardadas (AST do cache, sem tokens)");
+        }
         System.out.println("\nCompilacao concluida com sucesso!");
         return true;
     }
@@ -211,6 +415,8 @@ public class Main {
         boolean debugSemantico = false;
         boolean debugGerador = false;
         boolean debugMaquinaHipotetica = false;
+        boolean semCache = false;
+        OpcoesCompilacao opcoes = new OpcoesCompilacao();
 
         for (String arg : args) {
             if (arg.equals("-debug") || arg.equals("--debug")) {
@@ -225,11 +431,49 @@ public class Main {
                 debugGerador = true;
             } else if (arg.equals("-debug-maquina-hipotetica")) {
                 debugMaquinaHipotetica = true;
+            } else if (arg.equals("-lexico-regex")) {
+                opcoes.modoLexico = ModoLexico.REGEX;
+            } else if (arg.equals("-fonte-mapeada")) {
+                opcoes.limiteFonteMapeada = 0;
+            } else if (arg.equals("-ast-compacta")) {
+                opcoes.astCompacta = true;
+            } else if (arg.equals("-funcoes-sob-demanda")) {
+                opcoes.funcoesSobDemanda = true;
+            } else if (arg.equals("-cache-ast")) {
+                opcoes.diretorioCacheAst = Path.of("cache", "ast").toString();
+            } else if (arg.startsWith("-cache-ast=")) {
+                opcoes.diretorioCacheAst = arg.substring("-cache-ast=".length());
+            } else if (arg.startsWith("-cache-ast-limite=")) {
+                try {
+                    opcoes.limiteCacheAst = Long.parseLong(arg.substring("-cache-ast-limite=".length())) * 1024 * 1024;
+                } catch (NumberFormatException e) {
+                    System.out.println("Limite do cache de AST invalido (em MB): " + arg);
+                    System.exit(1);
+                }
+            } else if (arg.equals("-cache-compilacao")) {
+                opcoes.diretorioCacheCompilacao = Path.of("cache", "compilacao").toString();
+            } else if (arg.startsWith("-cache-compilacao=")) {
+                opcoes.diretorioCacheCompilacao = arg.substring("-cache-compilacao=".length());
+            } else if (arg.startsWith("-cache-compilacao-limite=")) {
+                try {
+                    opcoes.limiteCacheCompilacao = Long.parseLong(arg.substring("-cache-compilacao-limite=".length())) * 1024 * 1024;
+                } catch (NumberFormatException e) {
+                    System.out.println("Limite do cache de compilacao invalido (em MB): " + arg);
+                    System.exit(1);
+                }
+            } else if (arg.equals("-sem-cache")) {
+                semCache = true;
             } else {
                 argumentos.add(arg);
             }
         }
 
+        // Vale mesmo se um cache foi pedido antes na linha de comando
+        if (semCache) {
+            opcoes.diretorioCacheCompilacao = null;
+            opcoes.diretorioCacheAst = null;
+        }
+
         // Configura debug
         if (debugTudo) {
             Debug.ativarTodos();
@@ -252,6 +496,16 @@ public class Main {
             System.out.println("  -debug-semantico Ativa debug do analisador semantico");
             System.out.println("  -debug-gerador   Ativa debug do gerador de codigo");
             System.out.println("  -debug-maquina-hipotetica Ativa debug da maquina hipotetica");
+            System.out.println("\nOpcoes de compilacao:");
+            System.out.println("  -lexico-regex    Usa o analisador lexico por expressao regular (referencia)");
+            System.out.println("  -fonte-mapeada   Le o fonte por mapeamento de memoria (automatico a partir de 16 MB)");
+            System.out.println("  -funcoes-sob-demanda Analisa e gera so as funcoes chamadas");
+            System.out.println("  -ast-compacta    Guarda a AST em vetores em vez de um objeto por no");
+            System.out.println("  -cache-ast[=pasta] Reaproveita a AST de fontes ja compilados (pasta padrao: cache/ast)");
+            System.out.println("  -cache-ast-limite=MB Tamanho maximo da pasta do cache de AST (padrao: 256)");
+            System.out.println("  -cache-compilacao[=pasta] Reaproveita as saidas de fontes ja compilados (pasta padrao: cache/compilacao)");
+            System.out.println("  -cache-compilacao-limite=MB Tamanho maximo da pasta do cache de compilacao (padrao: 256)");
+            System.out.println("  -sem-cache       Compila tudo de novo, sem ler nem guardar nada nos caches");
             System.out.println("\nExemplo:");
             System.out.println("  java -cp out compilador.Main dados/correto.php");
             System.out.println("  java -cp out compilador.Main -debug dados/correto.php");
@@ -265,7 +519,7 @@ public class Main {
             caminhoSaida = argumentos.get(1);
         }
 
-        boolean sucesso = compilar(caminhoEntrada, caminhoSaida);
+        boolean sucesso = compilar(caminhoEntrada, caminhoSaida, opcoes);
         if (!sucesso) {
             System.exit(1);
         }
@@ -5,10 +5,12 @@ public class Instrucao {
     public final String mnemonico;
     public final Double argumento;
     public final String comentario;
+    final Operacao operacao;
 
     public Instrucao(String mnemonico, Double argumento, String comentario) {
         this.mnemonico = mnemonico;
         this.argumento = argumento;
         this.comentario = comentario;
+        this.operacao = Operacao.de(mnemonico);
     }
 }
@@ -10,11 +10,15 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+// A pilha e um double[] com o tamanho em uso, sem os Double de uma List, e cada instrucao traz a
+// Operacao decodificada na carga (ver Operacao)
 public class MaquinaHipotetica {
-    
-    private final List<Double> pilha = new ArrayList<>();
+
+    private double[] pilha = new double[64];
+    private int tamanhoPilha = 0;
     private final List<Instrucao> instrucoes = new ArrayList<>();
     private int contadorPrograma = 0;
     private final List<Integer> pilhaRetorno = new ArrayList<>();
@@ -74,17 +78,48 @@ public class MaquinaHipotetica {
         Debug.maquinaHipotetica("=== Iniciando Execucao da Maquina Hipotetica ===");
         Debug.maquinaHipotetica("Total de instrucoes: " + instrucoes.size());
         contadorPrograma = 0;
-        pilha.clear();
+        tamanhoPilha = 0;
         executando = true;
         pilhaRetorno.clear();
 
+        boolean depurando = Debug.maquinaHipoteticaAtivo();
         while (executando && contadorPrograma < instrucoes.size()) {
             Instrucao instrucao = instrucoes.get(contadorPrograma);
-            Debug.maquinaHipoteticaEstado(contadorPrograma, instrucao.mnemonico, instrucao.argumento, pilha);
+            if (depurando) {
+                Debug.maquinaHipoteticaEstado(contadorPrograma, instrucao.mnemonico, instrucao.argumento, valoresPilha());
+            }
             executarInstrucao(instrucao);
         }
         Debug.maquinaHipotetica("=== Execucao da Maquina Hipotetica Concluida ===");
     }
+
+    // --- Pilha ---
+
+    private void empilhar(double valor) {
+        if (tamanhoPilha == pilha.length) {
+            pilha = Arrays.copyOf(pilha, tamanhoPilha * 2);
+        }
+        pilha[tamanhoPilha] = valor;
+        tamanhoPilha += 1;
+    }
+
+    // Com a pilha vazia o valor e 0
+    private double desempilhar() {
+        if (tamanhoPilha == 0) {
+            return 0.0;
+        }
+        tamanhoPilha -= 1;
+        return pilha[tamanhoPilha];
+    }
+
+    private List<Double> valoresPilha() {
+        List<Double> valores = new ArrayList<>(tamanhoPilha);
+        for (int i = 0; i < tamanhoPilha; i++) {
+            valores.add(pilha[i]);
+        }
+        return valores;
+    }
+
     private int resolverEndereco(Double valor) {
         int end = valor != null ? valor.intValue() : 0;
         if (end < 0) {
@@ -104,72 +139,69 @@ public class MaquinaHipotetica {
     private void execAlme(Double arg) {
         int n = arg != null ? arg.intValue() : 0;
         for (int i = 0; i < n; i++) {
-            pilha.add(0.0);
+            empilhar(0.0);
         }
         contadorPrograma += 1;
     }
 
     private void execDesm(Double arg) {
         int n = arg != null ? arg.intValue() : 0;
-        for (int i = 0; i < n; i++) {
-            if (!pilha.isEmpty()) {
-                pilha.remove(pilha.size() - 1);
-            }
+        if (n > 0) {
+            tamanhoPilha = Math.max(0, tamanhoPilha - n);
         }
         contadorPrograma += 1;
     }
 
     private void execArmz(Double arg) {
         int end = resolverEndereco(arg);
-        double valor = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        while (end >= pilha.size()) {
-            pilha.add(0.0);
+        double valor = desempilhar();
+        while (end >= tamanhoPilha) {
+            empilhar(0.0);
         }
-        pilha.set(end, valor);
+        pilha[end] = valor;
         contadorPrograma += 1;
     }
 
     private void execCrvl(Double arg) {
         int end = resolverEndereco(arg);
-        double valor = end < pilha.size() ? pilha.get(end) : 0.0;
-        pilha.add(valor);
+        empilhar(end < tamanhoPilha ? pilha[end] : 0.0);
         contadorPrograma += 1;
     }
 
     private void execCrct(Double arg) {
         double valor = arg != null ? arg : 0.0;
-        pilha.add(valor);
+        empilhar(valor);
         contadorPrograma += 1;
     }
 
     private void execSoma() {
-        double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        pilha.add(op1 + op2);
+        double op2 = desempilhar();
+        double op1 = desempilhar();
+        empilhar(op1 + op2);
         contadorPrograma += 1;
     }
 
     private void execSubt() {
-        double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        pilha.add(op1 - op2);
+        double op2 = desempilhar();
+        double op1 = desempilhar();
+        empilhar(op1 - op2);
         contadorPrograma += 1;
     }
 
     private void execMult() {
-        double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        pilha.add(op1 * op2);
+        double op2 = desempilhar();
+        double op1 = desempilhar();
+        empilhar(op1 * op2);
         contadorPrograma += 1;
     }
 
     private void execDivi() throws ErrosMaquinaHipotetica {
-        double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
+        double op2 = desempilhar();
+        double op1 = desempilhar();
         if (op2 == 0) {
             throw new ErrosMaquinaHipotetica("Divisao por zero");
         }
-        pilha.add(op1 / op2);
+        empilhar(op1 / op2);
         contadorPrograma += 1;
     }
 
@@ -178,7 +210,7 @@ public class MaquinaHipotetica {
     }
 
     private void execDsvf(Double arg) {
-        double valor = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
+        double valor = desempilhar();
         if (valor == 0) {
             contadorPrograma = arg != null ? arg.intValue() : 0;
         } else {
@@ -204,12 +236,12 @@ public class MaquinaHipotetica {
         } catch (NumberFormatException e) {
             valor = 0.0;
         }
-        pilha.add(valor);
+        empilhar(valor);
         contadorPrograma += 1;
     }
 
     private void execImpr() {
-        double valor = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
+        double valor = desempilhar();
         String saida;
         if (valor == Math.rint(valor)) {
             saida = String.valueOf((long) valor);
@@ -221,28 +253,28 @@ public class MaquinaHipotetica {
     }
 
     private void execInve() {
-        double valor = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        pilha.add(-valor);
+        double valor = desempilhar();
+        empilhar(-valor);
         contadorPrograma += 1;
     }
 
     private void execConj() {
-        double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        pilha.add((op1 == 1.0 && op2 == 1.0) ? 1.0 : 0.0);
+        double op2 = desempilhar();
+        double op1 = desempilhar();
+        empilhar((op1 == 1.0 && op2 == 1.0) ? 1.0 : 0.0);
         contadorPrograma += 1;
     }
 
     private void execDisj() {
-        double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        pilha.add((op1 == 1.0 || op2 == 1.0) ? 1.0 : 0.0);
+        double op2 = desempilhar();
+        double op1 = desempilhar();
+        empilhar((op1 == 1.0 || op2 == 1.0) ? 1.0 : 0.0);
         contadorPrograma += 1;
     }
 
     private void execNega() {
-        double valor = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-        pilha.add(1.0 - valor);
+        double valor = desempilhar();
+        empilhar(1.0 - valor);
         contadorPrograma += 1;
     }
 
@@ -250,141 +282,145 @@ public class MaquinaHipotetica {
         String mnem = instrucao.mnemonico;
         Double arg = instrucao.argumento;
 
-        switch (mnem) {
-            case "INPP":
+        Operacao operacao = instrucao.operacao;
+        if (operacao == null) {
+            throw new ErrosMaquinaHipotetica("Instrucao desconhecida: " + mnem);
+        }
+
+        switch (operacao) {
+            case INPP:
                 execInpp();
                 break;
-            case "PARA":
+            case PARA:
                 execPara();
                 break;
-            case "ALME": {
+            case ALME: {
                 execAlme(arg);
                 break;
             }
-            case "DESM": {
+            case DESM: {
                 execDesm(arg);
                 break;
             }
-            case "ARMZ": {
+            case ARMZ: {
                 execArmz(arg);
                 break;
             }
-            case "CRVL": {
+            case CRVL: {
                 execCrvl(arg);
                 break;
             }
-            case "CRCT": {
+            case CRCT: {
                 execCrct(arg);
                 break;
             }
-            case "SOMA": {
+            case SOMA: {
                 execSoma();
                 break;
             }
-            case "SUBT": {
+            case SUBT: {
                 execSubt();
                 break;
             }
-            case "MULT": {
+            case MULT: {
                 execMult();
                 break;
             }
-            case "DIVI": {
+            case DIVI: {
                 execDivi();
                 break;
             }
-            case "DSVI":
+            case DSVI:
                 execDsvi(arg);
                 break;
-            case "DSVF": {
+            case DSVF: {
                 execDsvf(arg);
                 break;
             }
-            case "LEIT": {
+            case LEIT: {
                 execLeit(instrucao.comentario);
                 break;
             }
-            case "IMPR": {
+            case IMPR: {
                 execImpr();
                 break;
             }
-            case "INVE": {
+            case INVE: {
                 execInve();
                 break;
             }
-            case "CONJ": {
+            case CONJ: {
                 execConj();
                 break;
             }
-            case "DISJ": {
+            case DISJ: {
                 execDisj();
                 break;
             }
-            case "NEGA": {
+            case NEGA: {
                 execNega();
                 break;
             }
-            case "CPIG": {
-                double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                pilha.add(op1 == op2 ? 1.0 : 0.0);
+            case CPIG: {
+                double op2 = desempilhar();
+                double op1 = desempilhar();
+                empilhar(op1 == op2 ? 1.0 : 0.0);
                 contadorPrograma += 1;
                 break;
             }
-            case "CDES": {
-                double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                pilha.add(op1 != op2 ? 1.0 : 0.0);
+            case CDES: {
+                double op2 = desempilhar();
+                double op1 = desempilhar();
+                empilhar(op1 != op2 ? 1.0 : 0.0);
                 contadorPrograma += 1;
                 break;
             }
-            case "CMAI": {
-                double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                pilha.add(op1 >= op2 ? 1.0 : 0.0);
+            case CMAI: {
+                double op2 = desempilhar();
+                double op1 = desempilhar();
+                empilhar(op1 >= op2 ? 1.0 : 0.0);
                 contadorPrograma += 1;
                 break;
             }
-            case "CPMI": {
-                double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                pilha.add(op1 <= op2 ? 1.0 : 0.0);
+            case CPMI: {
+                double op2 = desempilhar();
+                double op1 = desempilhar();
+                empilhar(op1 <= op2 ? 1.0 : 0.0);
                 contadorPrograma += 1;
                 break;
             }
-            case "CPMA": {
-                double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                pilha.add(op1 > op2 ? 1.0 : 0.0);
+            case CPMA: {
+                double op2 = desempilhar();
+                double op1 = desempilhar();
+                empilhar(op1 > op2 ? 1.0 : 0.0);
                 contadorPrograma += 1;
                 break;
             }
-            case "CPME": {
-                double op2 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                double op1 = pilha.isEmpty() ? 0.0 : pilha.remove(pilha.size() - 1);
-                pilha.add(op1 < op2 ? 1.0 : 0.0);
+            case CPME: {
+                double op2 = desempilhar();
+                double op1 = desempilhar();
+                empilhar(op1 < op2 ? 1.0 : 0.0);
                 contadorPrograma += 1;
                 break;
             }
-            case "PUSHER": {
+            case PUSHER: {
                 int end = arg != null ? arg.intValue() : 0;
                 pilhaRetorno.add(end);
                 contadorPrograma += 1;
                 break;
             }
-            case "PARAM": {
+            case PARAM: {
                 int indice = arg != null ? arg.intValue() : 0;
-                double valor = indice < pilha.size() ? pilha.get(indice) : 0.0;
-                pilha.add(valor);
+                empilhar(indice < tamanhoPilha ? pilha[indice] : 0.0);
                 contadorPrograma += 1;
                 break;
             }
-            case "CHPR": {
+            case CHPR: {
                 int endereco = arg != null ? arg.intValue() : 0;
                 contadorPrograma = endereco;
                 break;
             }
-            case "RTPR": {
+            case RTPR: {
                 Debug.maquinaHipotetica("  RTPR: Retornando de funcao");
                 if (!pilhaRetorno.isEmpty()) {
                     int endRetorno = pilhaRetorno.remove(pilhaRetorno.size() - 1);
@@ -401,7 +437,7 @@ public class MaquinaHipotetica {
         }
     }
     public String debugEstado() {
-        return "PC: " + contadorPrograma + ", Pilha: " + pilha;
+        return "PC: " + contadorPrograma + ", Pilha: " + valoresPilha();
     }
 }
 
@@ -0,0 +1,27 @@
+package compilador.MaqHipo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Instrucoes da maquina. O mnemonico de cada linha do codigo objeto vira uma Operacao quando o
+// programa e carregado, entao a execucao escolhe a instrucao sem comparar Strings
+enum Operacao {
+    INPP, PARA, ALME, DESM, ARMZ, CRVL, CRCT,
+    SOMA, SUBT, MULT, DIVI, INVE,
+    DSVI, DSVF, LEIT, IMPR, CONJ, DISJ, NEGA,
+    CPIG, CDES, CMAI, CPMI, CPMA, CPME,
+    PUSHER, PARAM, CHPR, RTPR;
+
+    private static final Map<String, Operacao> POR_MNEMONICO = new HashMap<>();
+
+    static {
+        for (Operacao operacao : values()) {
+            POR_MNEMONICO.put(operacao.name(), operacao);
+        }
+    }
+
+    // null para mnemonico desconhecido: o erro so aparece se a instrucao for executada
+    static Operacao de(String mnemonico) {
+        return POR_MNEMONICO.get(mnemonico);
+    }
+}
@@ -0,0 +1,35 @@
+package compilador;
+
+import compilador.lexico.ModoLexico;
+
+public class OpcoesCompilacao {
+
+    // Analisador lexico usado nas etapas 1 e 2
+    public ModoLexico modoLexico = ModoLexico.AUTOMATO;
+
+    // Arquivos a partir deste tamanho (em bytes) sao mapeados em memoria em vez de lidos para uma String
+    public long limiteFonteMapeada = 16L * 1024 * 1024;
+
+    // Corpos de funcao so analisados quando alguma chamada chega neles; funcoes nunca chamadas
+    // nao sao analisadas nem geradas (e os erros delas nao sao relatados)
+    public boolean funcoesSobDemanda = false;
+
+    // Guarda a AST em ArvoreCompacta depois da analise sintatica (sem efeito com funcoesSobDemanda,
+    // que precisa dos corpos ainda nao analisados)
+    public boolean astCompacta = false;
+
+    // Pasta do cache de AST (null = sem cache): com o mesmo fonte e o mesmo compilador, a AST e lida
+    // do cache e as analises lexica e sintatica nao rodam. Sem efeito com debug ou funcoesSobDemanda
+    public String diretorioCacheAst = null;
+
+    // Tamanho maximo da pasta do cache de AST; passando disso, as entradas usadas ha mais tempo saem
+    public long limiteCacheAst = 256L * 1024 * 1024;
+
+    // Pasta do cache de compilacao (null = sem cache): com o mesmo fonte e o mesmo compilador, as
+    // saidas de uma compilacao bem sucedida anterior sao restauradas e nenhuma etapa roda. Sem
+    // efeito com debug
+    public String diretorioCacheCompilacao = null;
+
+    // Tamanho maximo da pasta do cache de compilacao
+    public long limiteCacheCompilacao = 256L * 1024 * 1024;
+}
@@ -0,0 +1,140 @@
+package compilador;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// MurmurHash3 de 128 bits (variante x64), calculado aos poucos, para identificar conteudos nos
+// caches em disco. Nao e criptografico, mas a chance de dois conteudos terem o mesmo resumo e
+// desprezivel para um cache local, e numa JVM que acabou de subir ele sai bem mais barato que
+// SHA-256 (que ainda carrega o provedor de criptografia).
+public final class Resumo {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long tamanho;
+    // Bytes que ainda nao completaram um bloco de 16
+    private final byte[] pendente = new byte[16];
+    private int quantidadePendente;
+
+    public Resumo atualizar(byte[] bytes, int inicio, int quantidade) {
+        int i = inicio;
+        int fim = inicio + quantidade;
+        tamanho += quantidade;
+        if (quantidadePendente > 0) {
+            while (quantidadePendente < 16 && i < fim) {
+                pendente[quantidadePendente] = bytes[i];
+                quantidadePendente += 1;
+                i += 1;
+            }
+            if (quantidadePendente < 16) {
+                return this;
+            }
+            misturarBloco(lerLong(pendente, 0), lerLong(pendente, 8));
+            quantidadePendente = 0;
+        }
+        while (fim - i >= 16) {
+            misturarBloco(lerLong(bytes, i), lerLong(bytes, i + 8));
+            i += 16;
+        }
+        while (i < fim) {
+            pendente[quantidadePendente] = bytes[i];
+            quantidadePendente += 1;
+            i += 1;
+        }
+        return this;
+    }
+
+    public Resumo atualizar(byte[] bytes) {
+        return atualizar(bytes, 0, bytes.length);
+    }
+
+    // Com o tamanho na frente, para que ("ab", "c") e ("a", "bc") nao deem o mesmo resumo
+    public Resumo atualizar(String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        atualizar(bytes.length);
+        return atualizar(bytes);
+    }
+
+    public Resumo atualizar(long valor) {
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (valor >>> (8 * i));
+        }
+        return atualizar(bytes);
+    }
+
+    public Resumo atualizarArquivo(Path arquivo) throws IOException {
+        byte[] bloco = new byte[64 * 1024];
+        try (InputStream entrada = Files.newInputStream(arquivo)) {
+            int lidos;
+            while ((lidos = entrada.read(bloco)) > 0) {
+                atualizar(bloco, 0, lidos);
+            }
+        }
+        return this;
+    }
+
+    // Os 128 bits em hexadecimal (h1 e depois h2); nao altera o estado
+    public String hex() {
+        long k1 = 0;
+        long k2 = 0;
+        for (int j = quantidadePendente - 1; j >= 8; j--) {
+            k2 ^= (pendente[j] & 0xFFL) << (8 * (j - 8));
+        }
+        for (int j = Math.min(quantidadePendente, 8) - 1; j >= 0; j--) {
+            k1 ^= (pendente[j] & 0xFFL) << (8 * j);
+        }
+        long r1 = h1;
+        long r2 = h2;
+        if (quantidadePendente > 8) {
+            r2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+        if (quantidadePendente > 0) {
+            r1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+        r1 ^= tamanho;
+        r2 ^= tamanho;
+        r1 += r2;
+        r2 += r1;
+        r1 = finalizar(r1);
+        r2 = finalizar(r2);
+        r1 += r2;
+        r2 += r1;
+        return String.format("%016x%016x", r1, r2);
+    }
+
+    private void misturarBloco(long k1, long k2) {
+        h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        h1 = Long.rotateLeft(h1, 27) + h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        h2 = Long.rotateLeft(h2, 31) + h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long finalizar(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long lerLong(byte[] bytes, int i) {
+        return (bytes[i] & 0xFFL)
+            | (bytes[i + 1] & 0xFFL) << 8
+            | (bytes[i + 2] & 0xFFL) << 16
+            | (bytes[i + 3] & 0xFFL) << 24
+            | (bytes[i + 4] & 0xFFL) << 32
+            | (bytes[i + 5] & 0xFFL) << 40
+            | (bytes[i + 6] & 0xFFL) << 48
+            | (bytes[i + 7] & 0xFFL) << 56;
+    }
+}
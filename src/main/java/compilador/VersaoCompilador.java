@@ -0,0 +1,70 @@
+package compilador;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Identifica o compilador em uso pelo conteudo das classes (pasta ou jar) de onde Main foi
+// carregado: qualquer mudanca no codigo do compilador muda a impressao digital, entao os caches
+// nao dependem de um numero de versao atualizado a mao. O conteudo conta, e nao a data dos
+// arquivos, porque os scripts recompilam tudo a cada execucao.
+public class VersaoCompilador {
+
+    private static String impressaoDigital;
+
+    private VersaoCompilador() {
+    }
+
+    public static synchronized String impressaoDigital() throws IOException {
+        if (impressaoDigital == null) {
+            impressaoDigital = calcular();
+        }
+        return impressaoDigital;
+    }
+
+    private static String calcular() throws IOException {
+        CodeSource codigo = Main.class.getProtectionDomain().getCodeSource();
+        if (codigo == null || codigo.getLocation() == null) {
+            throw new IOException("Origem das classes do compilador desconhecida");
+        }
+        Path origem;
+        try {
+            origem = Path.of(codigo.getLocation().toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Origem das classes do compilador invalida: " + codigo.getLocation(), e);
+        }
+
+        Resumo resumo = new Resumo();
+        if (Files.isDirectory(origem)) {
+            List<Path> classes = new ArrayList<>();
+            listarClasses(origem, classes);
+            Collections.sort(classes);
+            // Os caminhos entram no resumo para que mover ou renomear uma classe tambem conte
+            for (Path classe : classes) {
+                resumo.atualizar(origem.relativize(classe).toString());
+                resumo.atualizar(Files.readAllBytes(classe));
+            }
+        } else {
+            resumo.atualizarArquivo(origem);
+        }
+        return resumo.hex();
+    }
+
+    private static void listarClasses(Path pasta, List<Path> classes) throws IOException {
+        try (DirectoryStream<Path> conteudo = Files.newDirectoryStream(pasta)) {
+            for (Path arquivo : conteudo) {
+                if (Files.isDirectory(arquivo)) {
+                    listarClasses(arquivo, classes);
+                } else if (arquivo.getFileName().toString().endsWith(".class")) {
+                    classes.add(arquivo);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,781 @@
+package compilador.arvore_sintatica_abstrata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// AST guardada em vetores paralelos (uma posicao por no) em vez de um objeto por no: tipo, primeiro
+// filho e proximo irmao formam a arvore, 'dado' aponta para o texto do no (nome, operador ou
+// mensagem) ou para o valor de um ExpressaoNumero. Os nos ficam em pre-ordem, entao percorrer a
+// arvore anda pelos vetores quase sempre para frente.
+//
+// Os filhos de cada tipo de no, em ordem:
+//   PROGRAMA: CORPO
+//   CORPO: LISTA (declaracoes), LISTA (comandos)
+//   DECLARACAO_VARIAVEL: expressao inicial (se houver)
+//   DECLARACAO_FUNCAO: LISTA (PARAMETRO...), CORPO
+//   COMANDO_IF: CONDICAO, LISTA (bloco if), LISTA (bloco else, se houver)
+//   COMANDO_WHILE: CONDICAO, LISTA (bloco)
+//   COMANDO_ECHO, COMANDO_ATRIBUICAO, CONDICAO, EXPRESSAO_UNARIA: a expressao
+//   EXPRESSAO_BINARIA: esquerda, direita
+//   COMANDO_CHAMADA, EXPRESSAO_CHAMADA: os argumentos
+public class ArvoreCompacta {
+
+    public static final int PROGRAMA = 0;
+    public static final int CORPO = 1;
+    public static final int LISTA = 2;
+    public static final int DECLARACAO_VARIAVEL = 3;
+    public static final int DECLARACAO_FUNCAO = 4;
+    public static final int DECLARACAO_ERRO = 5;
+    public static final int PARAMETRO = 6;
+    public static final int COMANDO_ECHO = 7;
+    public static final int COMANDO_IF = 8;
+    public static final int COMANDO_WHILE = 9;
+    public static final int COMANDO_ATRIBUICAO = 10;
+    public static final int COMANDO_CHAMADA = 11;
+    public static final int COMANDO_ERRO = 12;
+    public static final int CONDICAO = 13;
+    public static final int EXPRESSAO_BINARIA = 14;
+    public static final int EXPRESSAO_UNARIA = 15;
+    public static final int EXPRESSAO_VARIAVEL = 16;
+    public static final int EXPRESSAO_NUMERO = 17;
+    public static final int EXPRESSAO_LEITURA = 18;
+    public static final int EXPRESSAO_CHAMADA = 19;
+    // Filho null da AST de objetos
+    public static final int NULO = 20;
+
+    private int[] tipos;
+    private int[] primeirosFilhos;
+    private int[] proximosIrmaos;
+    private int[] dados;
+    private int quantidade;
+    private double[] valores;
+    private int quantidadeValores;
+    // Textos distintos da arvore; para nomes, 'idsNome' guarda o id do nome (-1 nos demais)
+    private String[] textos;
+    private int[] idsNome;
+    private int quantidadeTextos;
+    // So durante compactar: indice do texto de cada id de nome + 1 (0 = ainda nao visto), para os
+    // nomes nao passarem pelo mapa; operadores, mensagens e nomes sem id usam 'indicesTexto'
+    private int[] textosPorIdNome;
+    private Map<String, Integer> indicesTexto;
+    // Resolucao de variaveis anotada pela analise semantica nos nos da visao em objetos (ver
+    // ExpressaoVariavel): 0 = nao resolvida, senao (endereco + 1) * 2 + 1 se global. Criado com a
+    // visao e fora do formato binario, ja que o cache guarda a arvore antes da analise semantica
+    private int[] resolucoes;
+    // Tipo inferido de cada expressao da visao (ver Expressao): 0 = sem tipo, senao ordinal + 1
+    private byte[] tiposValor;
+    private static final TipoValor[] TIPOS_VALOR = TipoValor.values();
+    // Marca de filho null na pilha do Compactador
+    private static final Object NULO_FILHO = new Object();
+
+    private ArvoreCompacta() {
+        this.tipos = new int[256];
+        this.primeirosFilhos = new int[256];
+        this.proximosIrmaos = new int[256];
+        this.dados = new int[256];
+        this.valores = new double[16];
+        this.textos = new String[64];
+        this.idsNome = new int[64];
+        this.textosPorIdNome = new int[64];
+        this.indicesTexto = new HashMap<>();
+    }
+
+    // Corpos sob demanda sao carregados antes de entrar na arvore
+    public static ArvoreCompacta compactar(Programa programa) {
+        ArvoreCompacta arvore = new ArvoreCompacta();
+        arvore.new Compactador().compactar(programa);
+        arvore.ajustarTamanho();
+        return arvore;
+    }
+
+    // Descarta a folga deixada pelo crescimento dos vetores durante a construcao
+    private void ajustarTamanho() {
+        tipos = Arrays.copyOf(tipos, quantidade);
+        primeirosFilhos = Arrays.copyOf(primeirosFilhos, quantidade);
+        proximosIrmaos = Arrays.copyOf(proximosIrmaos, quantidade);
+        dados = Arrays.copyOf(dados, quantidade);
+        valores = Arrays.copyOf(valores, quantidadeValores);
+        textos = Arrays.copyOf(textos, quantidadeTextos);
+        idsNome = Arrays.copyOf(idsNome, quantidadeTextos);
+        textosPorIdNome = null;
+        indicesTexto = null;
+    }
+
+    public int quantidade() {
+        return quantidade;
+    }
+
+    public int raiz() {
+        return 0;
+    }
+
+    public int tipo(int no) {
+        return tipos[no];
+    }
+
+    // -1 se nao houver
+    public int primeiroFilho(int no) {
+        return primeirosFilhos[no];
+    }
+
+    // -1 se nao houver
+    public int proximoIrmao(int no) {
+        return proximosIrmaos[no];
+    }
+
+    // Nome, operador ou mensagem de erro do no
+    public String texto(int no) {
+        return textos[dados[no]];
+    }
+
+    public int idNome(int no) {
+        return idsNome[dados[no]];
+    }
+
+    public double valor(int no) {
+        return valores[dados[no]];
+    }
+
+    public int quantidadeFilhos(int no) {
+        int total = 0;
+        for (int filho = primeirosFilhos[no]; filho >= 0; filho = proximosIrmaos[filho]) {
+            total += 1;
+        }
+        return total;
+    }
+
+    // Memoria aproximada dos vetores, em bytes
+    public long bytesUsados() {
+        return 16L * tipos.length + 8L * valores.length + 4L * idsNome.length
+            + (resolucoes == null ? 0 : 4L * resolucoes.length)
+            + (tiposValor == null ? 0 : tiposValor.length);
+    }
+
+    int enderecoResolvido(int no) {
+        return (resolucoes[no] >> 1) - 1;
+    }
+
+    boolean globalResolvido(int no) {
+        return (resolucoes[no] & 1) != 0;
+    }
+
+    void guardarResolucao(int no, int endereco, boolean global) {
+        resolucoes[no] = (endereco + 1) * 2 + (global ? 1 : 0);
+    }
+
+    TipoValor tipoAnotado(int no) {
+        return tiposValor[no] == 0 ? null : TIPOS_VALOR[tiposValor[no] - 1];
+    }
+
+    void guardarTipo(int no, TipoValor tipo) {
+        tiposValor[no] = (byte) (tipo == null ? 0 : tipo.ordinal() + 1);
+    }
+
+    // --- Formato binario (cache de AST) ---
+    //
+    // quantidade, tipos (um byte por no), primeiros filhos, proximos irmaos, dados, quantidade de
+    // valores, valores, quantidade de textos, ids de nome e cada texto (tamanho + bytes UTF-8)
+
+    // Buffer pronto para leitura (posicao 0) com a arvore inteira
+    public ByteBuffer serializar() throws IOException {
+        byte[][] textosUtf8 = new byte[quantidadeTextos][];
+        long tamanho = 4L + quantidade + 12L * quantidade + 4L + 8L * quantidadeValores + 4L + 4L * quantidadeTextos;
+        for (int i = 0; i < quantidadeTextos; i++) {
+            textosUtf8[i] = textos[i].getBytes(StandardCharsets.UTF_8);
+            tamanho += 4L + textosUtf8[i].length;
+        }
+        if (tamanho > Integer.MAX_VALUE) {
+            throw new IOException("Arvore grande demais para gravar: " + tamanho + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) tamanho);
+        buffer.putInt(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            buffer.put((byte) tipos[i]);
+        }
+        colocarInteiros(buffer, primeirosFilhos, quantidade);
+        colocarInteiros(buffer, proximosIrmaos, quantidade);
+        colocarInteiros(buffer, dados, quantidade);
+        buffer.putInt(quantidadeValores);
+        buffer.asDoubleBuffer().put(valores, 0, quantidadeValores);
+        buffer.position(buffer.position() + 8 * quantidadeValores);
+        buffer.putInt(quantidadeTextos);
+        colocarInteiros(buffer, idsNome, quantidadeTextos);
+        for (byte[] texto : textosUtf8) {
+            buffer.putInt(texto.length);
+            buffer.put(texto);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Le a arvore gravada por serializar a partir da posicao atual do buffer; conteudo truncado ou com
+    // ligacoes fora dos vetores gera IOException
+    public static ArvoreCompacta ler(ByteBuffer buffer) throws IOException {
+        try {
+            ArvoreCompacta arvore = new ArvoreCompacta();
+            int quantidade = lerQuantidade(buffer, 13);
+            arvore.tipos = new int[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                arvore.tipos[i] = buffer.get();
+            }
+            arvore.primeirosFilhos = lerInteiros(buffer, quantidade);
+            arvore.proximosIrmaos = lerInteiros(buffer, quantidade);
+            arvore.dados = lerInteiros(buffer, quantidade);
+            arvore.quantidade = quantidade;
+            arvore.quantidadeValores = lerQuantidade(buffer, 8);
+            arvore.valores = new double[arvore.quantidadeValores];
+            buffer.asDoubleBuffer().get(arvore.valores);
+            buffer.position(buffer.position() + 8 * arvore.quantidadeValores);
+            arvore.quantidadeTextos = lerQuantidade(buffer, 8);
+            arvore.idsNome = lerInteiros(buffer, arvore.quantidadeTextos);
+            arvore.textos = new String[arvore.quantidadeTextos];
+            for (int i = 0; i < arvore.quantidadeTextos; i++) {
+                byte[] texto = new byte[lerQuantidade(buffer, 1)];
+                buffer.get(texto);
+                arvore.textos[i] = new String(texto, StandardCharsets.UTF_8);
+            }
+            arvore.indicesTexto = null;
+            arvore.validar();
+            return arvore;
+        } catch (RuntimeException e) {
+            throw new IOException("Arvore compacta invalida: " + e, e);
+        }
+    }
+
+    private static void colocarInteiros(ByteBuffer buffer, int[] vetor, int quantidade) {
+        buffer.asIntBuffer().put(vetor, 0, quantidade);
+        buffer.position(buffer.position() + 4 * quantidade);
+    }
+
+    private static int[] lerInteiros(ByteBuffer buffer, int quantidade) {
+        int[] vetor = new int[quantidade];
+        buffer.asIntBuffer().get(vetor);
+        buffer.position(buffer.position() + 4 * quantidade);
+        return vetor;
+    }
+
+    // Quantidade seguida de pelo menos bytesPorItem bytes por item
+    private static int lerQuantidade(ByteBuffer buffer, int bytesPorItem) throws IOException {
+        int quantidade = buffer.getInt();
+        if (quantidade < 0 || (long) quantidade * bytesPorItem > buffer.remaining()) {
+            throw new IOException("Quantidade invalida: " + quantidade);
+        }
+        return quantidade;
+    }
+
+    private void validar() throws IOException {
+        if (quantidade == 0 || tipos[0] != PROGRAMA) {
+            throw new IOException("Arvore sem PROGRAMA na raiz");
+        }
+        for (int no = 0; no < quantidade; no++) {
+            // Filhos e irmaos vem sempre depois do no (pre-ordem), o que tambem impede ciclos
+            if (tipos[no] < PROGRAMA || tipos[no] > NULO
+                || primeirosFilhos[no] < -1 || primeirosFilhos[no] >= quantidade
+                || (primeirosFilhos[no] >= 0 && primeirosFilhos[no] <= no)
+                || proximosIrmaos[no] < -1 || proximosIrmaos[no] >= quantidade
+                || (proximosIrmaos[no] >= 0 && proximosIrmaos[no] <= no)) {
+                throw new IOException("No invalido: " + no);
+            }
+            int limiteDado;
+            switch (tipos[no]) {
+                case EXPRESSAO_NUMERO:
+                    limiteDado = quantidadeValores;
+                    break;
+                case DECLARACAO_VARIAVEL:
+                case DECLARACAO_FUNCAO:
+                case DECLARACAO_ERRO:
+                case PARAMETRO:
+                case COMANDO_ATRIBUICAO:
+                case COMANDO_CHAMADA:
+                case COMANDO_ERRO:
+                case EXPRESSAO_BINARIA:
+                case EXPRESSAO_UNARIA:
+                case EXPRESSAO_VARIAVEL:
+                case EXPRESSAO_CHAMADA:
+                    limiteDado = quantidadeTextos;
+                    break;
+                default:
+                    limiteDado = Integer.MAX_VALUE;
+                    break;
+            }
+            if (dados[no] < 0 || dados[no] >= limiteDado) {
+                throw new IOException("Dado invalido no no " + no);
+            }
+        }
+    }
+
+    // --- Construcao a partir da AST de objetos ---
+
+    // Maior vetor que a JVM costuma aceitar
+    private static final int TAMANHO_MAXIMO = Integer.MAX_VALUE - 8;
+
+    // Tamanho dobrado de um vetor cheio; como em ArrayList, passar do maior vetor possivel e
+    // OutOfMemoryError, em vez de um tamanho negativo
+    private static int dobrar(int tamanho) {
+        if (tamanho >= TAMANHO_MAXIMO) {
+            throw new OutOfMemoryError("Arvore compacta maior que o maior vetor possivel");
+        }
+        return (int) Math.min(2L * tamanho, TAMANHO_MAXIMO);
+    }
+
+    private int novoNo(int tipo, int dado) {
+        if (quantidade == tipos.length) {
+            int tamanho = dobrar(quantidade);
+            tipos = Arrays.copyOf(tipos, tamanho);
+            primeirosFilhos = Arrays.copyOf(primeirosFilhos, tamanho);
+            proximosIrmaos = Arrays.copyOf(proximosIrmaos, tamanho);
+            dados = Arrays.copyOf(dados, tamanho);
+        }
+        int no = quantidade;
+        tipos[no] = tipo;
+        primeirosFilhos[no] = -1;
+        proximosIrmaos[no] = -1;
+        dados[no] = dado;
+        quantidade += 1;
+        return no;
+    }
+
+    private int indiceTexto(String texto, int idNome) {
+        if (idNome >= 0) {
+            if (idNome >= textosPorIdNome.length) {
+                textosPorIdNome = Arrays.copyOf(textosPorIdNome, Math.max(idNome + 1, dobrar(textosPorIdNome.length)));
+            }
+            if (textosPorIdNome[idNome] == 0) {
+                textosPorIdNome[idNome] = novoTexto(texto, idNome) + 1;
+            }
+            return textosPorIdNome[idNome] - 1;
+        }
+        Integer indice = indicesTexto.get(texto);
+        if (indice != null) {
+            return indice;
+        }
+        indice = novoTexto(texto, idNome);
+        indicesTexto.put(texto, indice);
+        return indice;
+    }
+
+    private int novoTexto(String texto, int idNome) {
+        if (quantidadeTextos == textos.length) {
+            textos = Arrays.copyOf(textos, dobrar(quantidadeTextos));
+            idsNome = Arrays.copyOf(idsNome, dobrar(quantidadeTextos));
+        }
+        textos[quantidadeTextos] = texto;
+        idsNome[quantidadeTextos] = idNome;
+        quantidadeTextos += 1;
+        return quantidadeTextos - 1;
+    }
+
+    private int indiceValor(double valor) {
+        if (quantidadeValores == valores.length) {
+            valores = Arrays.copyOf(valores, dobrar(quantidadeValores));
+        }
+        valores[quantidadeValores] = valor;
+        quantidadeValores += 1;
+        return quantidadeValores - 1;
+    }
+
+    // Percorre a AST de objetos com uma pilha explicita, sem recursao por nivel de aninhamento. Cada
+    // item da pilha (no, lista de nos ou NULO_FILHO) leva o nivel do pai; a visita de cada no cria o
+    // no e empilha os filhos do ultimo para o primeiro, entao os nos saem em pre-ordem. Em pre-ordem
+    // so os nos do caminho ate a raiz ainda ganham filhos, entao basta guardar, por nivel, o no do
+    // caminho e o ultimo filho ja ligado a ele
+    private class Compactador implements Visitante<Void> {
+
+        private Object[] itens = new Object[64];
+        private int[] pais = new int[64];
+        private int topo;
+        private int[] nosCaminho = new int[64];
+        private int[] ultimosFilhos = new int[64];
+        // Nivel do pai do item sendo visitado
+        private int pai;
+
+        // Cria o no como ultimo filho do no do caminho no nivel 'nivelPai' (a raiz tem nivelPai -1)
+        // e devolve o nivel dele
+        private int novoFilho(int nivelPai, int tipo, int dado) {
+            int no = novoNo(tipo, dado);
+            if (nivelPai >= 0) {
+                int anterior = ultimosFilhos[nivelPai];
+                if (anterior < 0) {
+                    primeirosFilhos[nosCaminho[nivelPai]] = no;
+                } else {
+                    proximosIrmaos[anterior] = no;
+                }
+                ultimosFilhos[nivelPai] = no;
+            }
+            int nivel = nivelPai + 1;
+            if (nivel == nosCaminho.length) {
+                nosCaminho = Arrays.copyOf(nosCaminho, dobrar(nivel));
+                ultimosFilhos = Arrays.copyOf(ultimosFilhos, dobrar(nivel));
+            }
+            nosCaminho[nivel] = no;
+            ultimosFilhos[nivel] = -1;
+            return nivel;
+        }
+
+        void compactar(Programa programa) {
+            empilhar(programa, -1);
+            while (topo > 0) {
+                topo -= 1;
+                Object item = itens[topo];
+                itens[topo] = null;
+                pai = pais[topo];
+                if (item instanceof NoArvoreSintaticaAbstrata) {
+                    ((NoArvoreSintaticaAbstrata) item).aceitar(this);
+                } else if (item instanceof List) {
+                    empilharTodos((List<?>) item, novoFilho(pai, LISTA, 0));
+                } else {
+                    novoFilho(pai, NULO, 0);
+                }
+            }
+        }
+
+        // Filho null da AST de objetos vira NULO
+        private void empilhar(Object item, int paiItem) {
+            if (topo == itens.length) {
+                itens = Arrays.copyOf(itens, dobrar(topo));
+                pais = Arrays.copyOf(pais, dobrar(topo));
+            }
+            itens[topo] = item == null ? NULO_FILHO : item;
+            pais[topo] = paiItem;
+            topo += 1;
+        }
+
+        private void empilharTodos(List<?> nos, int paiNos) {
+            for (int i = nos.size() - 1; i >= 0; i--) {
+                empilhar(nos.get(i), paiNos);
+            }
+        }
+
+        @Override
+        public Void visitarPrograma(Programa programa) {
+            int no = novoFilho(pai, PROGRAMA, 0);
+            empilhar(programa.corpo, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarCorpo(Corpo corpo) {
+            int no = novoFilho(pai, CORPO, 0);
+            empilhar(corpo.comandos, no);
+            empilhar(corpo.declaracoes, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoVariavel(DeclaracaoVariavel declaracao) {
+            int no = novoFilho(pai, DECLARACAO_VARIAVEL, indiceTexto(declaracao.nome, declaracao.idNome));
+            if (declaracao.expressaoInicial != null) {
+                empilhar(declaracao.expressaoInicial, no);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoFuncao(DeclaracaoFuncao declaracao) {
+            int no = novoFilho(pai, DECLARACAO_FUNCAO, indiceTexto(declaracao.nome, declaracao.idNome));
+            int parametros = novoFilho(no, LISTA, 0);
+            for (int i = 0; i < declaracao.parametros.size(); i++) {
+                novoFilho(parametros, PARAMETRO, indiceTexto(declaracao.parametros.get(i), declaracao.idsParametros[i]));
+            }
+            empilhar(declaracao.carregarCorpo(), no);
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoErro(DeclaracaoErro declaracao) {
+            novoFilho(pai, DECLARACAO_ERRO, indiceTexto(declaracao.mensagem, -1));
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoEcho(ComandoEcho comando) {
+            int no = novoFilho(pai, COMANDO_ECHO, 0);
+            empilhar(comando.expressao, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoIf(ComandoIf comando) {
+            int no = novoFilho(pai, COMANDO_IF, 0);
+            if (comando.blocoElse != null) {
+                empilhar(comando.blocoElse, no);
+            }
+            empilhar(comando.blocoIf, no);
+            empilhar(comando.condicao, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoWhile(ComandoWhile comando) {
+            int no = novoFilho(pai, COMANDO_WHILE, 0);
+            empilhar(comando.bloco, no);
+            empilhar(comando.condicao, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoAtribuicao(ComandoAtribuicao comando) {
+            int no = novoFilho(pai, COMANDO_ATRIBUICAO, indiceTexto(comando.variavel, comando.idVariavel));
+            empilhar(comando.expressao, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoChamadaFuncao(ComandoChamadaFuncao comando) {
+            int no = novoFilho(pai, COMANDO_CHAMADA, indiceTexto(comando.nomeFuncao, comando.idFuncao));
+            empilharTodos(comando.argumentos, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoErro(ComandoErro comando) {
+            novoFilho(pai, COMANDO_ERRO, indiceTexto(comando.mensagem, -1));
+            return null;
+        }
+
+        @Override
+        public Void visitarCondicao(Condicao condicao) {
+            int no = novoFilho(pai, CONDICAO, 0);
+            empilhar(condicao.expressao, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoBinaria(ExpressaoBinaria expressao) {
+            int no = novoFilho(pai, EXPRESSAO_BINARIA, indiceTexto(expressao.operador, -1));
+            empilhar(expressao.direita, no);
+            empilhar(expressao.esquerda, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoUnaria(ExpressaoUnaria expressao) {
+            int no = novoFilho(pai, EXPRESSAO_UNARIA, indiceTexto(expressao.operador, -1));
+            empilhar(expressao.operando, no);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoVariavel(ExpressaoVariavel expressao) {
+            novoFilho(pai, EXPRESSAO_VARIAVEL, indiceTexto(expressao.nome, expressao.idNome));
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoNumero(ExpressaoNumero expressao) {
+            novoFilho(pai, EXPRESSAO_NUMERO, indiceValor(expressao.valor));
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoLeitura(ExpressaoLeitura expressao) {
+            novoFilho(pai, EXPRESSAO_LEITURA, 0);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expressao) {
+            int no = novoFilho(pai, EXPRESSAO_CHAMADA, indiceTexto(expressao.nomeFuncao, expressao.idFuncao));
+            empilharTodos(expressao.argumentos, no);
+            return null;
+        }
+    }
+
+    // --- Visao em objetos, para ImprimaAST, AnalisadorSemantico e GeradorCodigo ---
+
+    // Programa cujas listas de comandos criam cada comando (e o que estiver dentro dele) a partir
+    // dos vetores a cada acesso, sem guardar; assim a arvore de objetos inteira nunca existe de uma
+    // vez. As declaracoes sao criadas uma unica vez, pois as analises anotam nelas (endereco,
+    // enderecoInicio); comandos e expressoes anotados guardam a anotacao em 'resolucoes'
+    public Programa programa() {
+        if (resolucoes == null) {
+            resolucoes = new int[quantidade];
+            tiposValor = new byte[quantidade];
+        }
+        return new Programa(corpo(primeirosFilhos[raiz()]));
+    }
+
+    private Corpo corpo(int no) {
+        int listaDeclaracoes = primeirosFilhos[no];
+        List<Declaracao> declaracoes = new ArrayList<>();
+        for (int filho = primeirosFilhos[listaDeclaracoes]; filho >= 0; filho = proximosIrmaos[filho]) {
+            declaracoes.add(declaracao(filho));
+        }
+        return new Corpo(declaracoes, new ComandosCompactos(proximosIrmaos[listaDeclaracoes]));
+    }
+
+    private Declaracao declaracao(int no) {
+        switch (tipos[no]) {
+            case DECLARACAO_VARIAVEL:
+                int inicial = primeirosFilhos[no];
+                return new DeclaracaoVariavel(texto(no), idNome(no), inicial < 0 ? null : expressao(inicial));
+            case DECLARACAO_FUNCAO:
+                int listaParametros = primeirosFilhos[no];
+                List<String> parametros = new ArrayList<>();
+                int[] idsParametros = new int[quantidadeFilhos(listaParametros)];
+                for (int filho = primeirosFilhos[listaParametros]; filho >= 0; filho = proximosIrmaos[filho]) {
+                    idsParametros[parametros.size()] = idNome(filho);
+                    parametros.add(texto(filho));
+                }
+                return new DeclaracaoFuncao(texto(no), idNome(no), parametros, idsParametros,
+                    corpo(proximosIrmaos[listaParametros]));
+            case DECLARACAO_ERRO:
+                return new DeclaracaoErro(texto(no));
+            default:
+                return null;
+        }
+    }
+
+    private Comando comando(int no) {
+        switch (tipos[no]) {
+            case COMANDO_ECHO:
+                return new ComandoEcho(expressao(primeirosFilhos[no]));
+            case COMANDO_IF:
+                int condicaoIf = primeirosFilhos[no];
+                int blocoIf = proximosIrmaos[condicaoIf];
+                int blocoElse = proximosIrmaos[blocoIf];
+                return new ComandoIf(condicao(condicaoIf), new ComandosCompactos(blocoIf),
+                    blocoElse < 0 ? null : new ComandosCompactos(blocoElse));
+            case COMANDO_WHILE:
+                int condicaoWhile = primeirosFilhos[no];
+                return new ComandoWhile(condicao(condicaoWhile), new ComandosCompactos(proximosIrmaos[condicaoWhile]));
+            case COMANDO_ATRIBUICAO:
+                return new ComandoAtribuicao(texto(no), idNome(no), expressao(primeirosFilhos[no]), this, no);
+            case COMANDO_CHAMADA:
+                return new ComandoChamadaFuncao(texto(no), idNome(no), argumentos(no));
+            case COMANDO_ERRO:
+                return new ComandoErro(texto(no));
+            default:
+                return null;
+        }
+    }
+
+    private Condicao condicao(int no) {
+        if (tipos[no] == NULO) {
+            return null;
+        }
+        return new Condicao(expressao(primeirosFilhos[no]));
+    }
+
+    private List<Expressao> argumentos(int no) {
+        List<Expressao> argumentos = new ArrayList<>();
+        for (int filho = primeirosFilhos[no]; filho >= 0; filho = proximosIrmaos[filho]) {
+            argumentos.add(expressao(filho));
+        }
+        return argumentos;
+    }
+
+    // Cria a expressao sem recursao por nivel: os nos a criar vao para 'pendentes' (uma vez antes
+    // dos filhos e outra, com ~no, depois deles) e as expressoes prontas para 'prontas', de onde o
+    // pai tira as dos filhos
+    private Expressao expressao(int raiz) {
+        switch (tipos[raiz]) {
+            case EXPRESSAO_VARIAVEL:
+            case EXPRESSAO_NUMERO:
+            case EXPRESSAO_LEITURA:
+            case NULO:
+                return folha(raiz);
+            default:
+                break;
+        }
+        int[] pendentes = new int[16];
+        int topoPendentes = 0;
+        Expressao[] prontas = new Expressao[8];
+        int topoProntas = 0;
+        pendentes[topoPendentes++] = raiz;
+        while (topoPendentes > 0) {
+            int no = pendentes[--topoPendentes];
+            if (no >= 0 && (tipos[no] == EXPRESSAO_BINARIA || tipos[no] == EXPRESSAO_UNARIA
+                || tipos[no] == EXPRESSAO_CHAMADA)) {
+                // Filhos empilhados do ultimo para o primeiro, para serem criados na ordem
+                int filhos = quantidadeFilhos(no);
+                if (topoPendentes + filhos + 1 > pendentes.length) {
+                    pendentes = Arrays.copyOf(pendentes, Math.max(pendentes.length * 2, topoPendentes + filhos + 1));
+                }
+                pendentes[topoPendentes++] = ~no;
+                int posicao = topoPendentes + filhos;
+                for (int filho = primeirosFilhos[no]; filho >= 0; filho = proximosIrmaos[filho]) {
+                    posicao -= 1;
+                    pendentes[posicao] = filho;
+                }
+                topoPendentes += filhos;
+                continue;
+            }
+            Expressao expressao;
+            if (no >= 0) {
+                expressao = folha(no);
+            } else {
+                no = ~no;
+                int filhos = quantidadeFilhos(no);
+                topoProntas -= filhos;
+                switch (tipos[no]) {
+                    case EXPRESSAO_BINARIA:
+                        expressao = new ExpressaoBinaria(prontas[topoProntas], texto(no), prontas[topoProntas + 1], this, no);
+                        break;
+                    case EXPRESSAO_UNARIA:
+                        expressao = new ExpressaoUnaria(texto(no), prontas[topoProntas], this, no);
+                        break;
+                    default:
+                        List<Expressao> argumentos = new ArrayList<>(filhos);
+                        for (int i = 0; i < filhos; i++) {
+                            argumentos.add(prontas[topoProntas + i]);
+                        }
+                        expressao = new ExpressaoChamadaFuncao(texto(no), idNome(no), argumentos, this, no);
+                        break;
+                }
+                Arrays.fill(prontas, topoProntas, topoProntas + filhos, null);
+            }
+            if (topoProntas == prontas.length) {
+                prontas = Arrays.copyOf(prontas, topoProntas * 2);
+            }
+            prontas[topoProntas++] = expressao;
+        }
+        return prontas[0];
+    }
+
+    private Expressao folha(int no) {
+        switch (tipos[no]) {
+            case EXPRESSAO_VARIAVEL:
+                return new ExpressaoVariavel(texto(no), idNome(no), this, no);
+            case EXPRESSAO_NUMERO:
+                return new ExpressaoNumero(valor(no), this, no);
+            case EXPRESSAO_LEITURA:
+                return new ExpressaoLeitura(this, no);
+            default:
+                return null;
+        }
+    }
+
+    // Comandos de uma LISTA; get(i) cria o comando de novo a cada chamada
+    private class ComandosCompactos extends AbstractList<Comando> implements RandomAccess {
+
+        private final int[] nos;
+
+        ComandosCompactos(int lista) {
+            this.nos = new int[quantidadeFilhos(lista)];
+            int i = 0;
+            for (int filho = primeirosFilhos[lista]; filho >= 0; filho = proximosIrmaos[filho]) {
+                nos[i] = filho;
+                i += 1;
+            }
+        }
+
+        @Override
+        public Comando get(int indice) {
+            return comando(nos[indice]);
+        }
+
+        @Override
+        public int size() {
+            return nos.length;
+        }
+    }
+}
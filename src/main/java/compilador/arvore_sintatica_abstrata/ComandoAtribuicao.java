@@ -3,10 +3,40 @@ package compilador.arvore_sintatica_abstrata;
 public class ComandoAtribuicao extends Comando {
     
     public final String variavel;
+    public final int idVariavel;
     public final Expressao expressao;
+    // Resolucao da variavel, como em ExpressaoVariavel
+    public int endereco = -1;
+    public boolean global;
+    private final ArvoreCompacta arvore;
+    private final int no;
 
-    public ComandoAtribuicao(String variavel, Expressao expressao) {
+    public ComandoAtribuicao(String variavel, int idVariavel, Expressao expressao) {
+        this(variavel, idVariavel, expressao, null, -1);
+    }
+
+    ComandoAtribuicao(String variavel, int idVariavel, Expressao expressao, ArvoreCompacta arvore, int no) {
         this.variavel = variavel;
+        this.idVariavel = idVariavel;
         this.expressao = expressao;
+        this.arvore = arvore;
+        this.no = no;
+        if (arvore != null) {
+            this.endereco = arvore.enderecoResolvido(no);
+            this.global = arvore.globalResolvido(no);
+        }
+    }
+
+    public void resolver(int endereco, boolean global) {
+        this.endereco = endereco;
+        this.global = global;
+        if (arvore != null) {
+            arvore.guardarResolucao(no, endereco, global);
+        }
+    }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarComandoAtribuicao(this);
     }
 }
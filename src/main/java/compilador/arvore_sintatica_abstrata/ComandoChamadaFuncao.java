@@ -5,10 +5,17 @@ import java.util.List;
 public class ComandoChamadaFuncao extends Comando {
     
     public final String nomeFuncao;
+    public final int idFuncao;
     public final List<Expressao> argumentos;
 
-    public ComandoChamadaFuncao(String nomeFuncao, List<Expressao> argumentos) {
+    public ComandoChamadaFuncao(String nomeFuncao, int idFuncao, List<Expressao> argumentos) {
         this.nomeFuncao = nomeFuncao;
+        this.idFuncao = idFuncao;
         this.argumentos = argumentos;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarComandoChamadaFuncao(this);
+    }
 }
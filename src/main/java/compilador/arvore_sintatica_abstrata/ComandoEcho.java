@@ -7,4 +7,9 @@ public class ComandoEcho extends Comando {
     public ComandoEcho(Expressao expressao) {
         this.expressao = expressao;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarComandoEcho(this);
+    }
 }
@@ -0,0 +1,16 @@
+package compilador.arvore_sintatica_abstrata;
+
+// Lugar de um comando com erro sintatico (so na analise com recuperacao de erros)
+public class ComandoErro extends Comando {
+
+    public final String mensagem;
+
+    public ComandoErro(String mensagem) {
+        this.mensagem = mensagem;
+    }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarComandoErro(this);
+    }
+}
@@ -13,4 +13,9 @@ public class ComandoIf extends Comando {
         this.blocoIf = blocoIf;
         this.blocoElse = blocoElse;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarComandoIf(this);
+    }
 }
@@ -11,4 +11,9 @@ public class ComandoWhile extends Comando {
         this.condicao = condicao;
         this.bloco = bloco;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarComandoWhile(this);
+    }
 }
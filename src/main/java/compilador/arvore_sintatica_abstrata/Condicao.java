@@ -7,4 +7,9 @@ public class Condicao extends NoArvoreSintaticaAbstrata {
     public Condicao(Expressao expressao) {
         this.expressao = expressao;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarCondicao(this);
+    }
 }
@@ -11,4 +11,9 @@ public class Corpo extends NoArvoreSintaticaAbstrata {
         this.declaracoes = declaracoes;
         this.comandos = comandos;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarCorpo(this);
+    }
 }
@@ -0,0 +1,8 @@
+package compilador.arvore_sintatica_abstrata;
+
+// Corpo de funcao que so e analisado sintaticamente quando alguem precisa dele
+// (ver AnalisadorSintatico.setCorposSobDemanda)
+public interface CorpoSobDemanda {
+
+    Corpo analisar();
+}
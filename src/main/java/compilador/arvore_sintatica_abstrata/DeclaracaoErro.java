@@ -0,0 +1,16 @@
+package compilador.arvore_sintatica_abstrata;
+
+// Lugar de uma declaracao com erro sintatico (so na analise com recuperacao de erros)
+public class DeclaracaoErro extends Declaracao {
+
+    public final String mensagem;
+
+    public DeclaracaoErro(String mensagem) {
+        this.mensagem = mensagem;
+    }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarDeclaracaoErro(this);
+    }
+}
@@ -5,13 +5,47 @@ import java.util.List;
 public class DeclaracaoFuncao extends Declaracao {
     
     public final String nome;
+    public final int idNome;
     public final List<String> parametros;
-    public final Corpo corpo;
+    public final int[] idsParametros;
+    // null enquanto um corpo sob demanda nao for carregado (ver carregarCorpo)
+    public Corpo corpo;
+    private CorpoSobDemanda corpoSobDemanda;
     public int enderecoInicio = -1;
+    // Funcoes com corpo sob demanda so sao analisadas e geradas se alguma chamada alcancavel a
+    // partir do corpo principal chega nelas (marcado pela analise semantica)
+    public boolean alcancada = true;
 
-    public DeclaracaoFuncao(String nome, List<String> parametros, Corpo corpo) {
+    public DeclaracaoFuncao(String nome, int idNome, List<String> parametros, int[] idsParametros, Corpo corpo) {
         this.nome = nome;
+        this.idNome = idNome;
         this.parametros = parametros;
+        this.idsParametros = idsParametros;
         this.corpo = corpo;
     }
+
+    public DeclaracaoFuncao(String nome, int idNome, List<String> parametros, int[] idsParametros,
+                            CorpoSobDemanda corpoSobDemanda) {
+        this(nome, idNome, parametros, idsParametros, (Corpo) null);
+        this.corpoSobDemanda = corpoSobDemanda;
+        this.alcancada = false;
+    }
+
+    public boolean corpoPendente() {
+        return corpo == null;
+    }
+
+    // Analisa o corpo sob demanda na primeira vez e devolve sempre o mesmo Corpo
+    public Corpo carregarCorpo() {
+        if (corpo == null && corpoSobDemanda != null) {
+            corpo = corpoSobDemanda.analisar();
+            corpoSobDemanda = null;
+        }
+        return corpo;
+    }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarDeclaracaoFuncao(this);
+    }
 }
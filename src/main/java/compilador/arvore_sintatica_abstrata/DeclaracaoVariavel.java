@@ -3,11 +3,20 @@ package compilador.arvore_sintatica_abstrata;
 public class DeclaracaoVariavel extends Declaracao {
     
     public final String nome;
+    public final int idNome;
     public final Expressao expressaoInicial;
     public int endereco = -1;
+    // Preenchido junto com o endereco: declarada no corpo principal (e nao numa funcao)
+    public boolean global;
 
-    public DeclaracaoVariavel(String nome, Expressao expressaoInicial) {
+    public DeclaracaoVariavel(String nome, int idNome, Expressao expressaoInicial) {
         this.nome = nome;
+        this.idNome = idNome;
         this.expressaoInicial = expressaoInicial;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarDeclaracaoVariavel(this);
+    }
 }
@@ -1,4 +1,30 @@
 package compilador.arvore_sintatica_abstrata;
 
 public abstract class Expressao extends NoArvoreSintaticaAbstrata {
+
+    // Preenchido pela inferencia de tipos via anotarTipo() (null antes dela)
+    public TipoValor tipo;
+    // Na visao da ArvoreCompacta o objeto e recriado a cada acesso, entao as anotacoes tambem
+    // ficam guardadas no no de onde ele veio (-1 na AST de objetos)
+    final ArvoreCompacta arvore;
+    final int no;
+
+    protected Expressao() {
+        this(null, -1);
+    }
+
+    Expressao(ArvoreCompacta arvore, int no) {
+        this.arvore = arvore;
+        this.no = no;
+        if (arvore != null) {
+            this.tipo = arvore.tipoAnotado(no);
+        }
+    }
+
+    public void anotarTipo(TipoValor tipo) {
+        this.tipo = tipo;
+        if (arvore != null) {
+            arvore.guardarTipo(no, tipo);
+        }
+    }
 }
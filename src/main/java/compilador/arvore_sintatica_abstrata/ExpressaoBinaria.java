@@ -7,8 +7,18 @@ public class ExpressaoBinaria extends Expressao {
     public final Expressao direita;
 
     public ExpressaoBinaria(Expressao esquerda, String operador, Expressao direita) {
+        this(esquerda, operador, direita, null, -1);
+    }
+
+    ExpressaoBinaria(Expressao esquerda, String operador, Expressao direita, ArvoreCompacta arvore, int no) {
+        super(arvore, no);
         this.esquerda = esquerda;
         this.operador = operador;
         this.direita = direita;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarExpressaoBinaria(this);
+    }
 }
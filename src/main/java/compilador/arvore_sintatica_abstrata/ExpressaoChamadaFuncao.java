@@ -5,10 +5,22 @@ import java.util.List;
 public class ExpressaoChamadaFuncao extends Expressao {
     
     public final String nomeFuncao;
+    public final int idFuncao;
     public final List<Expressao> argumentos;
 
-    public ExpressaoChamadaFuncao(String nomeFuncao, List<Expressao> argumentos) {
+    public ExpressaoChamadaFuncao(String nomeFuncao, int idFuncao, List<Expressao> argumentos) {
+        this(nomeFuncao, idFuncao, argumentos, null, -1);
+    }
+
+    ExpressaoChamadaFuncao(String nomeFuncao, int idFuncao, List<Expressao> argumentos, ArvoreCompacta arvore, int no) {
+        super(arvore, no);
         this.nomeFuncao = nomeFuncao;
+        this.idFuncao = idFuncao;
         this.argumentos = argumentos;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarExpressaoChamadaFuncao(this);
+    }
 }
@@ -1,4 +1,16 @@
 package compilador.arvore_sintatica_abstrata;
 
 public class ExpressaoLeitura extends Expressao {
+
+    public ExpressaoLeitura() {
+    }
+
+    ExpressaoLeitura(ArvoreCompacta arvore, int no) {
+        super(arvore, no);
+    }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarExpressaoLeitura(this);
+    }
 }
@@ -5,6 +5,16 @@ public class ExpressaoNumero extends Expressao {
     public final double valor;
 
     public ExpressaoNumero(double valor) {
+        this(valor, null, -1);
+    }
+
+    ExpressaoNumero(double valor, ArvoreCompacta arvore, int no) {
+        super(arvore, no);
         this.valor = valor;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarExpressaoNumero(this);
+    }
 }
@@ -6,7 +6,17 @@ public class ExpressaoUnaria extends Expressao {
     public final Expressao operando;
 
     public ExpressaoUnaria(String operador, Expressao operando) {
+        this(operador, operando, null, -1);
+    }
+
+    ExpressaoUnaria(String operador, Expressao operando, ArvoreCompacta arvore, int no) {
+        super(arvore, no);
         this.operador = operador;
         this.operando = operando;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarExpressaoUnaria(this);
+    }
 }
@@ -3,8 +3,36 @@ package compilador.arvore_sintatica_abstrata;
 public class ExpressaoVariavel extends Expressao {
     
     public final String nome;
+    public final int idNome;
+    // Preenchidos pela analise semantica via resolver(): endereco da variavel no escopo dela (-1
+    // enquanto nao resolvida) e se esse escopo e o global
+    public int endereco = -1;
+    public boolean global;
 
-    public ExpressaoVariavel(String nome) {
+    public ExpressaoVariavel(String nome, int idNome) {
+        this(nome, idNome, null, -1);
+    }
+
+    ExpressaoVariavel(String nome, int idNome, ArvoreCompacta arvore, int no) {
+        super(arvore, no);
         this.nome = nome;
+        this.idNome = idNome;
+        if (arvore != null) {
+            this.endereco = arvore.enderecoResolvido(no);
+            this.global = arvore.globalResolvido(no);
+        }
+    }
+
+    public void resolver(int endereco, boolean global) {
+        this.endereco = endereco;
+        this.global = global;
+        if (arvore != null) {
+            arvore.guardarResolucao(no, endereco, global);
+        }
+    }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarExpressaoVariavel(this);
     }
 }
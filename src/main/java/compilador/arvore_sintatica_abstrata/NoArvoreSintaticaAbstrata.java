@@ -1,4 +1,6 @@
 package compilador.arvore_sintatica_abstrata;
 
 public abstract class NoArvoreSintaticaAbstrata {
+
+    public abstract <R> R aceitar(Visitante<R> visitante);
 }
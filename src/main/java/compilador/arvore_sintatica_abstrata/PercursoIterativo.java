@@ -0,0 +1,189 @@
+package compilador.arvore_sintatica_abstrata;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Percorre a AST sem que a profundidade de if/while e expressoes aninhados fique limitada pela
+// pilha de chamadas. Os visitar* do visitante nao chamam aceitar nos filhos: pedem, na ordem em
+// que devem acontecer, os nos a visitar (visitar), as listas de nos (visitarTodos) e o que fazer
+// depois deles (depois). Depois de pedir o primeiro, a visita so pode pedir mais, sem fazer mais
+// nada por conta propria.
+//
+// Ate PROFUNDIDADE_RECURSIVA niveis cada pedido e atendido na hora, por recursao, que e o mais
+// rapido; abaixo disso os pedidos vao para uma pilha no heap e sao atendidos quando a visita
+// volta, o que da a mesma ordem.
+//
+// Cada no visitado leva um inteiro (dado) que o visitante le com dado() durante a visita, por
+// exemplo o nivel de indentacao ou se e a segunda passada pelo mesmo no.
+public final class PercursoIterativo {
+
+    private static final int PROFUNDIDADE_RECURSIVA = 256;
+
+    // Lista pendente na pilha: cada elemento e visitado so quando chega a vez dele
+    private static final class Sequencia {
+        final List<? extends NoArvoreSintaticaAbstrata> nos;
+        final int dado;
+        int proximo;
+
+        Sequencia(List<? extends NoArvoreSintaticaAbstrata> nos, int dado) {
+            this.nos = nos;
+            this.dado = dado;
+        }
+    }
+
+    private final Visitante<?> visitante;
+    // Pilha do que falta fazer (no, Sequencia ou Runnable) com o dado de cada item
+    private Object[] itens;
+    private int[] dados;
+    private int topo;
+    // Pedido pela visita em andamento, na ordem natural; vai para a pilha invertido
+    private Object[] agendados;
+    private int[] dadosAgendados;
+    private int quantidadeAgendados;
+    private int dadoAtual;
+    private int profundidade;
+
+    public PercursoIterativo(Visitante<?> visitante) {
+        this.visitante = visitante;
+        this.itens = new Object[64];
+        this.dados = new int[64];
+        this.agendados = new Object[16];
+        this.dadosAgendados = new int[16];
+    }
+
+    // Visita 'raiz' e tudo o que for pedido a partir dela; pode ser chamado de dentro de uma
+    // visita, e entao percorre so 'raiz' antes de voltar
+    public void percorrer(NoArvoreSintaticaAbstrata raiz, int dado) {
+        rodarNo(raiz, dado);
+    }
+
+    public void percorrer(NoArvoreSintaticaAbstrata raiz) {
+        rodarNo(raiz, 0);
+    }
+
+    // Dado do no sendo visitado
+    public int dado() {
+        return dadoAtual;
+    }
+
+    public void visitar(NoArvoreSintaticaAbstrata no) {
+        visitar(no, 0);
+    }
+
+    public void visitar(NoArvoreSintaticaAbstrata no, int dado) {
+        if (profundidade < PROFUNDIDADE_RECURSIVA) {
+            rodarNo(no, dado);
+        } else {
+            agendar(no, dado);
+        }
+    }
+
+    public void visitarTodos(List<? extends NoArvoreSintaticaAbstrata> nos) {
+        visitarTodos(nos, 0);
+    }
+
+    public void visitarTodos(List<? extends NoArvoreSintaticaAbstrata> nos, int dado) {
+        if (profundidade < PROFUNDIDADE_RECURSIVA) {
+            for (int i = 0; i < nos.size(); i++) {
+                rodarNo(nos.get(i), dado);
+            }
+        } else if (!nos.isEmpty()) {
+            agendar(new Sequencia(nos, dado), 0);
+        }
+    }
+
+    public void depois(Runnable acao) {
+        if (profundidade < PROFUNDIDADE_RECURSIVA) {
+            rodar(acao, 0);
+        } else {
+            agendar(acao, 0);
+        }
+    }
+
+    // Executa o item e, se ele pediu algo para depois, atende tudo pela pilha antes de voltar
+    private void rodar(Object item, int dado) {
+        int base = topo;
+        int inicioAgendados = quantidadeAgendados;
+        profundidade += 1;
+        executar(item, dado);
+        if (quantidadeAgendados > inicioAgendados) {
+            atenderAgendados(base, inicioAgendados);
+        }
+        profundidade -= 1;
+    }
+
+    // O mesmo que rodar para um no, sem descobrir o tipo do item (caso mais comum)
+    private void rodarNo(NoArvoreSintaticaAbstrata no, int dado) {
+        int base = topo;
+        int inicioAgendados = quantidadeAgendados;
+        int dadoAnterior = dadoAtual;
+        dadoAtual = dado;
+        profundidade += 1;
+        no.aceitar(visitante);
+        dadoAtual = dadoAnterior;
+        if (quantidadeAgendados > inicioAgendados) {
+            atenderAgendados(base, inicioAgendados);
+        }
+        profundidade -= 1;
+    }
+
+    private void atenderAgendados(int base, int inicioAgendados) {
+        descarregar(inicioAgendados);
+        while (topo > base) {
+            topo -= 1;
+            Object proximo = itens[topo];
+            int dadoProximo = dados[topo];
+            itens[topo] = null;
+            int inicio = quantidadeAgendados;
+            executar(proximo, dadoProximo);
+            descarregar(inicio);
+        }
+    }
+
+    private void executar(Object item, int dado) {
+        if (item instanceof NoArvoreSintaticaAbstrata) {
+            int dadoAnterior = dadoAtual;
+            dadoAtual = dado;
+            ((NoArvoreSintaticaAbstrata) item).aceitar(visitante);
+            dadoAtual = dadoAnterior;
+        } else if (item instanceof Sequencia) {
+            Sequencia sequencia = (Sequencia) item;
+            if (sequencia.proximo < sequencia.nos.size()) {
+                NoArvoreSintaticaAbstrata no = sequencia.nos.get(sequencia.proximo);
+                sequencia.proximo += 1;
+                empilhar(sequencia, 0);
+                empilhar(no, sequencia.dado);
+            }
+        } else {
+            ((Runnable) item).run();
+        }
+    }
+
+    private void agendar(Object item, int dado) {
+        if (quantidadeAgendados == agendados.length) {
+            agendados = Arrays.copyOf(agendados, quantidadeAgendados * 2);
+            dadosAgendados = Arrays.copyOf(dadosAgendados, quantidadeAgendados * 2);
+        }
+        agendados[quantidadeAgendados] = item;
+        dadosAgendados[quantidadeAgendados] = dado;
+        quantidadeAgendados += 1;
+    }
+
+    private void descarregar(int inicio) {
+        for (int i = quantidadeAgendados - 1; i >= inicio; i--) {
+            empilhar(agendados[i], dadosAgendados[i]);
+            agendados[i] = null;
+        }
+        quantidadeAgendados = inicio;
+    }
+
+    private void empilhar(Object item, int dado) {
+        if (topo == itens.length) {
+            itens = Arrays.copyOf(itens, topo * 2);
+            dados = Arrays.copyOf(dados, topo * 2);
+        }
+        itens[topo] = item;
+        dados[topo] = dado;
+        topo += 1;
+    }
+}
@@ -7,4 +7,9 @@ public class Programa extends NoArvoreSintaticaAbstrata {
     public Programa(Corpo corpo) {
         this.corpo = corpo;
     }
+
+    @Override
+    public <R> R aceitar(Visitante<R> visitante) {
+        return visitante.visitarPrograma(this);
+    }
 }
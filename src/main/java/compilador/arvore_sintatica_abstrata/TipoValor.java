@@ -0,0 +1,25 @@
+package compilador.arvore_sintatica_abstrata;
+
+// Tipo inferido de uma variavel ou expressao (ver semantico.InferenciaTipos). Na maquina todo valor
+// e double; o tipo diz o que se sabe dele: BOOLEANO so vale 0 ou 1, INTEIRO so valores inteiros e
+// REAL qualquer valor. Cada tipo contem os anteriores, entao juntar dois tipos e ficar com o maior
+public enum TipoValor {
+    BOOLEANO,
+    INTEIRO,
+    REAL;
+
+    public static TipoValor unir(TipoValor a, TipoValor b) {
+        return a.ordinal() >= b.ordinal() ? a : b;
+    }
+
+    // Tipo do literal pelo valor: os literais nao guardam se foram escritos com parte fracionaria
+    public static TipoValor doLiteral(double valor) {
+        if (valor == 0 || valor == 1) {
+            return BOOLEANO;
+        }
+        if (Math.rint(valor) == valor && Math.abs(valor) < 0x1p53) {
+            return INTEIRO;
+        }
+        return REAL;
+    }
+}
@@ -0,0 +1,42 @@
+package compilador.arvore_sintatica_abstrata;
+
+// Operacao sobre a AST com um metodo por tipo de no: no.aceitar(visitante) chama o metodo do tipo
+// do no, sem cadeia de instanceof
+public interface Visitante<R> {
+
+    R visitarPrograma(Programa programa);
+
+    R visitarCorpo(Corpo corpo);
+
+    R visitarDeclaracaoVariavel(DeclaracaoVariavel declaracao);
+
+    R visitarDeclaracaoFuncao(DeclaracaoFuncao declaracao);
+
+    R visitarDeclaracaoErro(DeclaracaoErro declaracao);
+
+    R visitarComandoEcho(ComandoEcho comando);
+
+    R visitarComandoIf(ComandoIf comando);
+
+    R visitarComandoWhile(ComandoWhile comando);
+
+    R visitarComandoAtribuicao(ComandoAtribuicao comando);
+
+    R visitarComandoChamadaFuncao(ComandoChamadaFuncao comando);
+
+    R visitarComandoErro(ComandoErro comando);
+
+    R visitarCondicao(Condicao condicao);
+
+    R visitarExpressaoBinaria(ExpressaoBinaria expressao);
+
+    R visitarExpressaoUnaria(ExpressaoUnaria expressao);
+
+    R visitarExpressaoVariavel(ExpressaoVariavel expressao);
+
+    R visitarExpressaoNumero(ExpressaoNumero expressao);
+
+    R visitarExpressaoLeitura(ExpressaoLeitura expressao);
+
+    R visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expressao);
+}
@@ -4,45 +4,42 @@ import compilador.Debug;
 import compilador.arvore_sintatica_abstrata.*;
 import compilador.semantico.Simbolo;
 import compilador.semantico.TabelaSimbolos;
-import compilador.semantico.TipoSimbolo;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-public class GeradorCodigo {
+public class GeradorCodigo implements Visitante<Void> {
 
     private final TabelaSimbolos tabelaGlobal;
-    private TabelaSimbolos tabelaAtual;
     private final List<Instrucao> instrucoes;
-    private final Map<String, FuncaoInfo> funcoesInfo;
     private int numVariaveisGlobais;
-
-    private static class FuncaoInfo {
-        final int enderecoInicio;
-
-        FuncaoInfo(int enderecoInicio) {
-            this.enderecoInicio = enderecoInicio;
-        }
-    }
+    // Comandos e expressoes sao percorridos sem recursao: a visita agenda os filhos e volta ao
+    // mesmo no com o dado DEPOIS para emitir o que vem depois deles
+    private PercursoIterativo percurso;
+    private static final int DEPOIS = 1;
+    // Passadas de um corpo pelas declaracoes (dado de cada declaracao)
+    private static final int ALOCAR = 2;
+    private static final int FUNCOES = 3;
+    private static final int INICIALIZAR = 4;
+    // DSVIs das funcoes do corpo sendo gerado, corrigidos depois da ultima funcao dele
+    private List<Integer> desviosFuncoes;
 
     public GeradorCodigo(TabelaSimbolos tabelaGlobal) {
         this.tabelaGlobal = tabelaGlobal;
-        this.tabelaAtual = tabelaGlobal;
         this.instrucoes = new ArrayList<>();
-        this.funcoesInfo = new HashMap<>();
         this.numVariaveisGlobais = 0;
     }
     public List<Instrucao> gerar(Programa ast) {
         Debug.gerador("=== Iniciando Geracao de Codigo ===");
         instrucoes.clear();
         emitir("INPP", null);
-        gerarPrograma(ast);
+        percurso = new PercursoIterativo(this);
+        percurso.percorrer(ast);
+        percurso = null;
         emitir("PARA", null);
         Debug.gerador("=== Geracao de Codigo Concluida: " + instrucoes.size() + " instrucoes ===");
         return new ArrayList<>(instrucoes);
@@ -68,185 +65,167 @@ public class GeradorCodigo {
     private void corrigirEndereco(int indice, int novoEndereco) {
         instrucoes.get(indice).argumento = String.valueOf(novoEndereco);
     }
-    private void gerarPrograma(Programa programa) {
+    @Override
+    public Void visitarPrograma(Programa programa) {
         numVariaveisGlobais = contarVariaveis(programa.corpo);
-        gerarCorpo(programa.corpo, true);
+        percurso.visitar(programa.corpo);
+        return null;
     }
-    private int gerarCorpo(Corpo corpo, boolean eGlobal) {
-        int numVariaveis = 0;
-
-        if (!eGlobal) {
-            for (Declaracao decl : corpo.declaracoes) {
-                if (decl instanceof DeclaracaoVariavel) {
-                    DeclaracaoVariavel declVar = (DeclaracaoVariavel) decl;
-                    if (tabelaAtual.buscarLocal(declVar.nome) == null) {
-                        Simbolo simbolo = new Simbolo(declVar.nome, TipoSimbolo.VARIAVEL, declVar.endereco, null, tabelaAtual.nomeEscopo);
-                        try {
-                            tabelaAtual.adicionar(simbolo);
-                        } catch (Exception e) {
-                            // Ignora a duplicacao de simbolos
-                        }
-                        if (declVar.endereco + 1 > tabelaAtual.proximoEndereco) {
-                            tabelaAtual.proximoEndereco = declVar.endereco + 1;
-                        }
-                    }
-                }
+    // Um corpo (o global ou o de uma funcao) passa tres vezes pelas declaracoes: ALME de cada
+    // variavel, codigo das funcoes (cada uma atras de um DSVI corrigido para depois de todas) e
+    // inicializacao das variaveis; so entao vem os comandos
+    @Override
+    public Void visitarCorpo(Corpo corpo) {
+        List<Integer> desviosAnteriores = desviosFuncoes;
+        List<Integer> desvios = new ArrayList<>();
+        desviosFuncoes = desvios;
+        percurso.visitarTodos(corpo.declaracoes, ALOCAR);
+        percurso.visitarTodos(corpo.declaracoes, FUNCOES);
+        percurso.depois(() -> {
+            int enderecoAposTodasFuncoes = enderecoAtual();
+            for (int indiceDesvio : desvios) {
+                corrigirEndereco(indiceDesvio, enderecoAposTodasFuncoes);
             }
-        }
-
-        for (Declaracao decl : corpo.declaracoes) {
-            if (decl instanceof DeclaracaoVariavel) {
+        });
+        percurso.visitarTodos(corpo.declaracoes, INICIALIZAR);
+        percurso.visitarTodos(corpo.comandos);
+        percurso.depois(() -> desviosFuncoes = desviosAnteriores);
+        return null;
+    }
+    @Override
+    public Void visitarDeclaracaoVariavel(DeclaracaoVariavel decl) {
+        switch (percurso.dado()) {
+            case ALOCAR:
                 emitir("ALME", "1");
-                numVariaveis += 1;
-            }
-        }
-
-        // Primeiro, gerar todas as funções (com DSVIs que serão corrigidos depois)
-        List<Integer> indicesDesvioFuncoes = new ArrayList<>();
-        for (Declaracao decl : corpo.declaracoes) {
-            if (decl instanceof DeclaracaoFuncao) {
-                int indiceDesvio = gerarDeclaracaoFuncaoComDesvio((DeclaracaoFuncao) decl);
-                indicesDesvioFuncoes.add(indiceDesvio);
-            }
-        }
-
-        // Corrigir todos os DSVIs para apontar para depois de todas as funções
-        int enderecoAposTodasFuncoes = enderecoAtual();
-        for (int indiceDesvio : indicesDesvioFuncoes) {
-            corrigirEndereco(indiceDesvio, enderecoAposTodasFuncoes);
-        }
-
-        // Gerar declarações de variáveis
-        for (Declaracao decl : corpo.declaracoes) {
-            if (decl instanceof DeclaracaoVariavel) {
-                gerarDeclaracaoVariavel((DeclaracaoVariavel) decl);
-            }
-        }
-
-        for (Comando cmd : corpo.comandos) {
-            gerarComando(cmd);
+                break;
+            case INICIALIZAR:
+                if (decl.expressaoInicial == null || ehZeroLiteral(decl.expressaoInicial)) {
+                    break;
+                }
+                if (decl.expressaoInicial instanceof ExpressaoLeitura) {
+                    emitir("LEIT", null, "#" + decl.nome);
+                } else {
+                    percurso.visitar(decl.expressaoInicial);
+                }
+                percurso.visitar(decl, DEPOIS);
+                break;
+            case DEPOIS:
+                emitir("ARMZ", String.valueOf(enderecoVariavel(decl.nome, decl.endereco, decl.global)));
+                break;
+            default:
+                break;
         }
-
-        return numVariaveis;
+        return null;
     }
-    private void gerarDeclaracaoVariavel(DeclaracaoVariavel decl) {
-        if (decl.expressaoInicial != null && !ehZeroLiteral(decl.expressaoInicial)) {
-            emitirAtribuicao(decl.nome, decl.expressaoInicial);
+    @Override
+    public Void visitarDeclaracaoFuncao(DeclaracaoFuncao decl) {
+        // Funcoes sob demanda que nenhuma chamada alcancou nao geram codigo
+        if (percurso.dado() != FUNCOES || !decl.alcancada) {
+            return null;
         }
-    }
-    private int gerarDeclaracaoFuncaoComDesvio(DeclaracaoFuncao decl) {
         Debug.gerador("--- Gerando funcao: " + decl.nome + " ---");
-        int indiceDesvio = emitir("DSVI", "0", "#funcao " + decl.nome);
+        desviosFuncoes.add(emitir("DSVI", "0", "#funcao " + decl.nome));
 
         int enderecoInicio = enderecoAtual();
         Debug.gerador("Funcao " + decl.nome + " inicia no endereco " + enderecoInicio);
-        funcoesInfo.put(decl.nome, new FuncaoInfo(enderecoInicio));
 
-        Simbolo simbolo = tabelaGlobal.buscar(decl.nome);
+        Simbolo simbolo = tabelaGlobal.buscar(decl.idNome);
         if (simbolo != null) {
             simbolo.enderecoInicio = enderecoInicio;
         }
 
-        TabelaSimbolos tabelaFuncao = new TabelaSimbolos(tabelaGlobal, decl.nome);
-        for (int i = 0; i < decl.parametros.size(); i++) {
-            String parametro = decl.parametros.get(i);
-            Simbolo simboloParam = new Simbolo(parametro, TipoSimbolo.PARAMETRO, i, null, decl.nome);
-            try {
-                tabelaFuncao.adicionar(simboloParam);
-            } catch (Exception e) {
-                // Ignorar duplicacao de simbolos
+        Corpo corpo = decl.carregarCorpo();
+        int totalDesalocar = contarVariaveis(corpo) + decl.parametros.size();
+        percurso.visitar(corpo);
+        percurso.depois(() -> {
+            if (totalDesalocar > 0) {
+                emitir("DESM", String.valueOf(totalDesalocar));
             }
-        }
-        tabelaFuncao.proximoEndereco = decl.parametros.size();
-
-        TabelaSimbolos tabelaAnterior = tabelaAtual;
-        tabelaAtual = tabelaFuncao;
-
-        int numLocais = gerarCorpo(decl.corpo, false);
-        int numParametros = decl.parametros.size();
-        int totalDesalocar = numLocais + numParametros;
-
-        if (totalDesalocar > 0) {
-            emitir("DESM", String.valueOf(totalDesalocar));
-        }
-
-        emitir("RTPR", null);
-
-        tabelaAtual = tabelaAnterior;
-
-        // Retorna o índice do DSVI para correção posterior
-        return indiceDesvio;
+            emitir("RTPR", null);
+        });
+        return null;
     }
-    private void gerarComando(Comando cmd) {
-        if (cmd instanceof ComandoEcho) {
-            gerarComandoEcho((ComandoEcho) cmd);
-        } else if (cmd instanceof ComandoIf) {
-            gerarComandoIf((ComandoIf) cmd);
-        } else if (cmd instanceof ComandoWhile) {
-            gerarComandoWhile((ComandoWhile) cmd);
-        } else if (cmd instanceof ComandoAtribuicao) {
-            gerarComandoAtribuicao((ComandoAtribuicao) cmd);
-        } else if (cmd instanceof ComandoChamadaFuncao) {
-            gerarComandoChamadaFuncao((ComandoChamadaFuncao) cmd);
-        }
+    // Com erros sintaticos a compilacao para antes do gerador; trechos com erro nao geram codigo
+    @Override
+    public Void visitarDeclaracaoErro(DeclaracaoErro decl) {
+        return null;
     }
-    private void gerarComandoEcho(ComandoEcho cmd) {
-        gerarExpressao(cmd.expressao);
-        emitir("IMPR", null);
+    @Override
+    public Void visitarComandoErro(ComandoErro cmd) {
+        return null;
     }
-    private void gerarComandoIf(ComandoIf cmd) {
-        gerarCondicao(cmd.condicao);
-        int indiceDsvf = emitir("DSVF", "0");
+    @Override
+    public Void visitarComandoEcho(ComandoEcho cmd) {
+        if (percurso.dado() == DEPOIS) {
+            emitir("IMPR", null);
+            return null;
+        }
+        percurso.visitar(cmd.expressao);
+        percurso.visitar(cmd, DEPOIS);
+        return null;
+    }
+    @Override
+    public Void visitarComandoIf(ComandoIf cmd) {
+        percurso.visitar(cmd.condicao);
+        percurso.depois(() -> {
+            int indiceDsvf = emitir("DSVF", "0");
 
-        for (Comando c : cmd.blocoIf) {
-            gerarComando(c);
-        }
+            percurso.visitarTodos(cmd.blocoIf);
 
-        if (cmd.blocoElse != null) {
-            int indiceDsvi = emitir("DSVI", "0");
-            corrigirEndereco(indiceDsvf, enderecoAtual());
+            percurso.depois(() -> {
+                if (cmd.blocoElse != null) {
+                    int indiceDsvi = emitir("DSVI", "0");
+                    corrigirEndereco(indiceDsvf, enderecoAtual());
 
-            for (Comando c : cmd.blocoElse) {
-                gerarComando(c);
-            }
+                    percurso.visitarTodos(cmd.blocoElse);
 
-            corrigirEndereco(indiceDsvi, enderecoAtual());
-        } else {
-            corrigirEndereco(indiceDsvf, enderecoAtual());
-        }
+                    percurso.depois(() -> corrigirEndereco(indiceDsvi, enderecoAtual()));
+                } else {
+                    corrigirEndereco(indiceDsvf, enderecoAtual());
+                }
+            });
+        });
+        return null;
     }
-    private void gerarComandoWhile(ComandoWhile cmd) {
+    @Override
+    public Void visitarComandoWhile(ComandoWhile cmd) {
         int enderecoInicio = enderecoAtual();
 
-        gerarCondicao(cmd.condicao);
-        int indiceDsvf = emitir("DSVF", "0");
+        percurso.visitar(cmd.condicao);
+        percurso.depois(() -> {
+            int indiceDsvf = emitir("DSVF", "0");
 
-        for (Comando c : cmd.bloco) {
-            gerarComando(c);
-        }
+            percurso.visitarTodos(cmd.bloco);
 
-        emitir("DSVI", String.valueOf(enderecoInicio));
-        corrigirEndereco(indiceDsvf, enderecoAtual());
-    }
-    private void gerarComandoAtribuicao(ComandoAtribuicao cmd) {
-        emitirAtribuicao(cmd.variavel, cmd.expressao);
+            percurso.depois(() -> {
+                emitir("DSVI", String.valueOf(enderecoInicio));
+                corrigirEndereco(indiceDsvf, enderecoAtual());
+            });
+        });
+        return null;
     }
-
-    private void emitirAtribuicao(String nomeVariavel, Expressao expressao) {
-        if (expressao instanceof ExpressaoLeitura) {
-            emitir("LEIT", null, "#" + nomeVariavel);
+    @Override
+    public Void visitarComandoAtribuicao(ComandoAtribuicao cmd) {
+        if (percurso.dado() == DEPOIS) {
+            emitir("ARMZ", String.valueOf(enderecoVariavel(cmd.variavel, cmd.endereco, cmd.global)));
+            return null;
+        }
+        if (cmd.expressao instanceof ExpressaoLeitura) {
+            emitir("LEIT", null, "#" + cmd.variavel);
         } else {
-            gerarExpressao(expressao);
+            percurso.visitar(cmd.expressao);
         }
-        int endereco = obterEnderecoVariavel(nomeVariavel);
-        emitir("ARMZ", String.valueOf(endereco));
+        percurso.visitar(cmd, DEPOIS);
+        return null;
     }
-    private void gerarComandoChamadaFuncao(ComandoChamadaFuncao cmd) {
+
+    @Override
+    public Void visitarComandoChamadaFuncao(ComandoChamadaFuncao cmd) {
         Debug.gerador("Gerando chamada de funcao: " + cmd.nomeFuncao);
-        Simbolo simbolo = tabelaGlobal.buscar(cmd.nomeFuncao);
+        Simbolo simbolo = tabelaGlobal.buscar(cmd.idFuncao);
         if (simbolo == null) {
             Debug.gerador("ERRO: Funcao " + cmd.nomeFuncao + " nao encontrada!");
-            return;
+            return null;
         }
 
         int indicePusher = emitir("PUSHER", "0");
@@ -255,21 +234,16 @@ public class GeradorCodigo {
             Debug.gerador("  Argumento " + i);
             Expressao argumento = cmd.argumentos.get(i);
             if (argumento instanceof ExpressaoVariavel) {
-                int endereco = obterEnderecoVariavel(((ExpressaoVariavel) argumento).nome);
+                ExpressaoVariavel variavel = (ExpressaoVariavel) argumento;
+                int endereco = enderecoVariavel(variavel.nome, variavel.endereco, variavel.global);
                 emitir("PARAM", String.valueOf(endereco));
             } else {
                 erroArgumentoNaoVariavel(cmd.nomeFuncao);
             }
         }
 
-        int enderecoFuncao = 0;
-        FuncaoInfo infoFuncao = funcoesInfo.get(cmd.nomeFuncao);
-        if (infoFuncao != null) {
-            enderecoFuncao = infoFuncao.enderecoInicio;
-        }
-        if (enderecoFuncao == 0 && simbolo.enderecoInicio > 0) {
-            enderecoFuncao = simbolo.enderecoInicio;
-        }
+        // A funcao e gerada (e o enderecoInicio do simbolo preenchido) antes de qualquer chamada a ela
+        int enderecoFuncao = Math.max(simbolo.enderecoInicio, 0);
         Debug.gerador("  Endereco da funcao: " + enderecoFuncao);
 
         emitir("CHPR", String.valueOf(enderecoFuncao));
@@ -277,30 +251,34 @@ public class GeradorCodigo {
         int endRetorno = enderecoAtual();
         Debug.gerador("  Endereco de retorno: " + endRetorno);
         corrigirEndereco(indicePusher, endRetorno);
+        return null;
     }
-    private void gerarCondicao(Condicao cond) {
-        gerarExpressao(cond.expressao);
+    @Override
+    public Void visitarCondicao(Condicao cond) {
+        percurso.visitar(cond.expressao);
+        return null;
     }
-    private void gerarExpressao(Expressao expr) {
-        if (expr instanceof ExpressaoLeitura) {
-            emitir("LEIT", null);
-        } else if (expr instanceof ExpressaoBinaria) {
-            gerarExpressaoBinaria((ExpressaoBinaria) expr);
-        } else if (expr instanceof ExpressaoUnaria) {
-            gerarExpressaoUnaria((ExpressaoUnaria) expr);
-        } else if (expr instanceof ExpressaoVariavel) {
-            int endereco = obterEnderecoVariavel(((ExpressaoVariavel) expr).nome);
-            emitir("CRVL", String.valueOf(endereco));
-        } else if (expr instanceof ExpressaoNumero) {
-            emitir("CRCT", formatarNumero(((ExpressaoNumero) expr).valor));
-        } else if (expr instanceof ExpressaoChamadaFuncao) {
-            gerarExpressaoChamadaFuncao((ExpressaoChamadaFuncao) expr);
-        }
+    @Override
+    public Void visitarExpressaoVariavel(ExpressaoVariavel expr) {
+        int endereco = enderecoVariavel(expr.nome, expr.endereco, expr.global);
+        emitir("CRVL", String.valueOf(endereco));
+        return null;
+    }
+    @Override
+    public Void visitarExpressaoNumero(ExpressaoNumero expr) {
+        emitir("CRCT", formatarNumero(expr.valor));
+        return null;
     }
-    private void gerarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expr) {
-        Simbolo simbolo = tabelaGlobal.buscar(expr.nomeFuncao);
+    @Override
+    public Void visitarExpressaoLeitura(ExpressaoLeitura expr) {
+        emitir("LEIT", null);
+        return null;
+    }
+    @Override
+    public Void visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expr) {
+        Simbolo simbolo = tabelaGlobal.buscar(expr.idFuncao);
         if (simbolo == null) {
-            return;
+            return null;
         }
 
         int indicePusher = emitir("PUSHER", "0");
@@ -308,29 +286,29 @@ public class GeradorCodigo {
         for (int i = 0; i < expr.argumentos.size(); i++) {
             Expressao argumento = expr.argumentos.get(i);
             if (argumento instanceof ExpressaoVariavel) {
-                int endereco = obterEnderecoVariavel(((ExpressaoVariavel) argumento).nome);
+                ExpressaoVariavel variavel = (ExpressaoVariavel) argumento;
+                int endereco = enderecoVariavel(variavel.nome, variavel.endereco, variavel.global);
                 emitir("PARAM", String.valueOf(endereco));
             } else {
                 erroArgumentoNaoVariavel(expr.nomeFuncao);
             }
         }
 
-        int enderecoFuncao = 0;
-        FuncaoInfo infoFuncao = funcoesInfo.get(expr.nomeFuncao);
-        if (infoFuncao != null) {
-            enderecoFuncao = infoFuncao.enderecoInicio;
-        }
-        if (enderecoFuncao == 0 && simbolo.enderecoInicio > 0) {
-            enderecoFuncao = simbolo.enderecoInicio;
-        }
+        int enderecoFuncao = Math.max(simbolo.enderecoInicio, 0);
 
         emitir("CHPR", String.valueOf(enderecoFuncao));
 
         corrigirEndereco(indicePusher, enderecoAtual());
+        return null;
     }
-    private void gerarExpressaoBinaria(ExpressaoBinaria expr) {
-        gerarExpressao(expr.esquerda);
-        gerarExpressao(expr.direita);
+    @Override
+    public Void visitarExpressaoBinaria(ExpressaoBinaria expr) {
+        if (percurso.dado() != DEPOIS) {
+            percurso.visitar(expr.esquerda);
+            percurso.visitar(expr.direita);
+            percurso.visitar(expr, DEPOIS);
+            return null;
+        }
 
         switch (expr.operador) {
             case "+":
@@ -372,27 +350,26 @@ public class GeradorCodigo {
             default:
                 break;
         }
+        return null;
     }
-    private void gerarExpressaoUnaria(ExpressaoUnaria expr) {
-        if ("-".equals(expr.operador)) {
-            gerarExpressao(expr.operando);
+    @Override
+    public Void visitarExpressaoUnaria(ExpressaoUnaria expr) {
+        if (percurso.dado() != DEPOIS) {
+            percurso.visitar(expr.operando);
+            percurso.visitar(expr, DEPOIS);
+        } else if ("-".equals(expr.operador)) {
             emitir("INVE", null);
         } else if ("!".equals(expr.operador)) {
-            gerarExpressao(expr.operando);
             emitir("NEGA", null);
-        } else {
-            gerarExpressao(expr.operando);
         }
+        return null;
     }
-    private int obterEnderecoVariavel(String nome) {
-        Simbolo simbolo = tabelaAtual.buscar(nome);
-        if (simbolo != null) {
-            if ("global".equals(simbolo.escopo)) {
-                return simbolo.endereco;
-            }
-            return numVariaveisGlobais + simbolo.endereco;
+    // Endereco resolvido pela analise semantica; as variaveis locais ficam depois das globais
+    private int enderecoVariavel(String nome, int endereco, boolean global) {
+        if (endereco < 0) {
+            throw new IllegalStateException("Variavel nao resolvida pela analise semantica: " + nome);
         }
-        throw new IllegalStateException("Variavel nao encontrada na tabela de simbolos: " + nome);
+        return global ? endereco : numVariaveisGlobais + endereco;
     }
 
     private int contarVariaveis(Corpo corpo) {
@@ -3,9 +3,7 @@ package compilador.lexico;
 import compilador.Debug;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,32 +41,62 @@ public class AnalisadorLexico {
         {"\\s+", "ESPACOEMBRANCO"}
     };
 
-    private static final Map<String, TipoToken> PALAVRAS_RESERVADAS = new HashMap<>();
-
-    static {
-        PALAVRAS_RESERVADAS.put("echo", TipoToken.ECHO);
-        PALAVRAS_RESERVADAS.put("if", TipoToken.IF);
-        PALAVRAS_RESERVADAS.put("else", TipoToken.ELSE);
-        PALAVRAS_RESERVADAS.put("while", TipoToken.WHILE);
-        PALAVRAS_RESERVADAS.put("function", TipoToken.FUNCTION);
-        PALAVRAS_RESERVADAS.put("floatval", TipoToken.FLOATVAL);
-        PALAVRAS_RESERVADAS.put("readline", TipoToken.READLINE);
-        PALAVRAS_RESERVADAS.put("PHP_EOL", TipoToken.PHP_EOL);
-    }
+    private static final double[] POTENCIAS_DE_DEZ = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
 
-    private final String codigoFonte;
+    private final FonteCodigo codigoFonte;
+    private final ModoLexico modo;
     private int posicao;
-    private int linha;
-    private int coluna;
+    // O automato registra as quebras de linha enquanto pula espacos e comentarios;
+    // linha e coluna de um token sao derivadas do seu deslocamento
+    private final IndiceLinhas indiceLinhas;
+    private final TabelaNomes nomes;
+    // Fim (exclusivo) da regiao escaneada pelo automato: o fim da fonte, exceto nos trechos
+    // do lexico incremental. Um comentario de bloco aberto antes do limite pode termina-lo depois.
+    private final int limite;
+    // Registra caracteres invalidos como tokens ERRO em vez de parar no primeiro
+    private boolean recuperarErros;
+    // Inicio do ultimo lexema reconhecido (o fim e a posicao atual)
+    private int inicioToken;
     private final Pattern regexMestre;
     private final List<String> gruposOrdenados;
+
     public AnalisadorLexico(String codigoFonte) {
+        this(new FonteTexto(codigoFonte), ModoLexico.AUTOMATO);
+    }
+
+    public AnalisadorLexico(String codigoFonte, ModoLexico modo) {
+        this(new FonteTexto(codigoFonte), modo);
+    }
+
+    // O modo REGEX trabalha sobre texto: uma fonte mapeada e decodificada antes
+    public AnalisadorLexico(FonteCodigo codigoFonte, ModoLexico modo) {
+        if (modo == ModoLexico.REGEX && !(codigoFonte instanceof FonteTexto)) {
+            codigoFonte = new FonteTexto(codigoFonte.toString());
+        }
         this.codigoFonte = codigoFonte;
+        this.modo = modo;
         this.posicao = 0;
-        this.linha = 1;
-        this.coluna = 1;
+        this.limite = codigoFonte.length();
+        this.indiceLinhas = modo == ModoLexico.REGEX ? IndiceLinhas.construir(codigoFonte) : new IndiceLinhas();
+        this.nomes = new TabelaNomes();
         this.gruposOrdenados = new ArrayList<>();
-        this.regexMestre = compilarRegex();
+        this.regexMestre = modo == ModoLexico.REGEX ? compilarRegex() : null;
+    }
+
+    // Automato restrito a [inicio, limite), registrando os nomes numa tabela ja existente (lexico
+    // incremental)
+    AnalisadorLexico(FonteCodigo codigoFonte, int inicio, int limite, TabelaNomes nomes) {
+        this.codigoFonte = codigoFonte;
+        this.modo = ModoLexico.AUTOMATO;
+        this.posicao = inicio;
+        this.limite = limite;
+        this.indiceLinhas = new IndiceLinhas(inicio);
+        this.nomes = nomes;
+        this.gruposOrdenados = new ArrayList<>();
+        this.regexMestre = null;
     }
     private Pattern compilarRegex() {
         StringBuilder builder = new StringBuilder();
@@ -85,16 +113,17 @@ public class AnalisadorLexico {
         }
         return Pattern.compile(builder.toString(), Pattern.DOTALL);
     }
-    private void atualizarPosicao(String texto) {
-        for (int i = 0; i < texto.length(); i++) {
-            char ch = texto.charAt(i);
-            if (ch == '\n') {
-                linha += 1;
-                coluna = 1;
-            } else {
-                coluna += 1;
-            }
-        }
+
+    public IndiceLinhas getIndiceLinhas() {
+        return indiceLinhas;
+    }
+
+    public TabelaNomes getTabelaNomes() {
+        return nomes;
+    }
+
+    public void setRecuperarErros(boolean recuperarErros) {
+        this.recuperarErros = recuperarErros;
     }
     private Token criarToken(String tipoStr, String valor, int linhaAtual, int colunaAtual) throws ErroLexico {
         if ("ESPACOEMBRANCO".equals(tipoStr) || "COMENTARIO".equals(tipoStr) || "COMENTARIOLINHA".equals(tipoStr)) {
@@ -103,16 +132,11 @@ public class AnalisadorLexico {
         }
 
         if ("IDENT".equals(tipoStr)) {
-            TipoToken reservado = PALAVRAS_RESERVADAS.get(valor);
-            if (reservado != null) {
-                return new Token(reservado, valor, linhaAtual, colunaAtual);
-            }
-            return new Token(TipoToken.IDENT, valor, linhaAtual, colunaAtual);
+            return new Token(PalavrasReservadas.classificar(valor, 0, valor.length()), valor, linhaAtual, colunaAtual);
         }
 
         if ("NUMERO".equals(tipoStr)) {
-            double numero = Double.parseDouble(valor);
-            return new Token(TipoToken.NUMERO, numero, linhaAtual, colunaAtual);
+            return new Token(Double.parseDouble(valor), linhaAtual, colunaAtual);
         }
 
         switch (tipoStr) {
@@ -169,12 +193,25 @@ public class AnalisadorLexico {
         }
     }
     public Token proximoToken() throws ErroLexico {
+        if (modo == ModoLexico.REGEX) {
+            return proximoTokenRegex();
+        }
+        return proximoTokenAutomato();
+    }
+
+    private Token proximoTokenRegex() throws ErroLexico {
         while (posicao < codigoFonte.length()) {
-            Matcher casador = regexMestre.matcher(codigoFonte);
+            Matcher casador = regexMestre.matcher(codigoFonte.toString());
             casador.region(posicao, codigoFonte.length());
             if (!casador.lookingAt()) {
-                char caractere = codigoFonte.charAt(posicao);
-                throw new ErroLexico("Caractere inesperado: '" + caractere + "'", linha, coluna);
+                if (recuperarErros) {
+                    int linhaErro = indiceLinhas.linha(posicao);
+                    int colunaErro = indiceLinhas.coluna(codigoFonte, posicao);
+                    inicioToken = posicao;
+                    posicao += codigoFonte.tamanhoCaractere(posicao);
+                    return new Token(TipoToken.ERRO, codigoFonte, inicioToken, posicao - inicioToken, linhaErro, colunaErro);
+                }
+                throw new ErroLexico(mensagemCaractereInesperado(codigoFonte, posicao), indiceLinhas.linha(posicao), indiceLinhas.coluna(codigoFonte, posicao));
             }
 
             String tipoTexto = null;
@@ -189,13 +226,13 @@ public class AnalisadorLexico {
             }
 
             if (tipoTexto == null) {
-                throw new ErroLexico("Token desconhecido", linha, coluna);
+                throw new ErroLexico("Token desconhecido", indiceLinhas.linha(posicao), indiceLinhas.coluna(codigoFonte, posicao));
             }
 
-            int linhaAtual = linha;
-            int colunaAtual = coluna;
+            int linhaAtual = indiceLinhas.linha(posicao);
+            int colunaAtual = indiceLinhas.coluna(codigoFonte, posicao);
 
-            atualizarPosicao(lexema);
+            inicioToken = posicao;
             posicao = casador.end();
 
             Token tokenGerado = criarToken(tipoTexto, lexema, linhaAtual, colunaAtual);
@@ -205,8 +242,342 @@ public class AnalisadorLexico {
             }
         }
 
-        Debug.lexico("Token: EOF [" + linha + ":" + coluna + "]");
-        return new Token(TipoToken.EOF, null, linha, coluna);
+        int linhaFinal = indiceLinhas.linha(posicao);
+        int colunaFinal = indiceLinhas.coluna(codigoFonte, posicao);
+        Debug.lexico("Token: EOF [" + linhaFinal + ":" + colunaFinal + "]");
+        inicioToken = posicao;
+        return new Token(TipoToken.EOF, null, linhaFinal, colunaFinal);
+    }
+
+    // Automato escrito a mao: percorre o codigo fonte uma unica vez e decide o tipo
+    // do token pelo primeiro caractere, sem grupos nomeados nem comparacao de strings.
+    // Reconhece exatamente a mesma linguagem de PADROES (mesma prioridade entre alternativas).
+    private Token proximoTokenAutomato() throws ErroLexico {
+        TipoToken tipo = escanearAutomato();
+        if (tipo == TipoToken.EOF) {
+            if (Debug.lexicoAtivo()) {
+                Debug.lexico("Token: EOF [" + linhaAtual() + ":" + colunaDe(posicao) + "]");
+            }
+            return new Token(TipoToken.EOF, null, linhaAtual(), colunaDe(posicao));
+        }
+
+        Token tokenGerado = criarTokenAutomato(tipo, inicioToken, posicao);
+        if (Debug.lexicoAtivo()) {
+            Debug.lexico("Token: " + tokenGerado.getTipo().name() + " = '" + tokenGerado.getValor() + "' [" + tokenGerado.getLinha() + ":" + tokenGerado.getColuna() + "]");
+        }
+        return tokenGerado;
+    }
+
+    // Avanca ate o fim do proximo token e devolve o seu tipo; o lexema fica em [inicioToken, posicao)
+    private TipoToken escanearAutomato() throws ErroLexico {
+        while (posicao < limite) {
+            int inicio = posicao;
+            char caractere = codigoFonte.charAt(inicio);
+            TipoToken tipo;
+
+            switch (caractere) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                case '\f':
+                case '\u000B':
+                    pularEspacos();
+                    continue;
+                case '/':
+                    if (caractereEm(inicio + 1) == '*') {
+                        int fimComentario = codigoFonte.indiceDe("*/", inicio + 2);
+                        if (fimComentario >= 0) {
+                            pularComentarioBloco(fimComentario + 2);
+                            continue;
+                        }
+                    } else if (caractereEm(inicio + 1) == '/') {
+                        pularComentarioLinha();
+                        continue;
+                    }
+                    tipo = TipoToken.DIV;
+                    posicao += 1;
+                    break;
+                case '<':
+                    if (codigoFonte.comecaCom("<?php", inicio)) {
+                        tipo = TipoToken.PHP_ABRE;
+                        posicao += 5;
+                    } else if (caractereEm(inicio + 1) == '=') {
+                        tipo = TipoToken.MENOR_IGUAL;
+                        posicao += 2;
+                    } else {
+                        tipo = TipoToken.MENOR;
+                        posicao += 1;
+                    }
+                    break;
+                case '>':
+                    if (caractereEm(inicio + 1) == '=') {
+                        tipo = TipoToken.MAIOR_IGUAL;
+                        posicao += 2;
+                    } else {
+                        tipo = TipoToken.MAIOR;
+                        posicao += 1;
+                    }
+                    break;
+                case '?':
+                    if (caractereEm(inicio + 1) != '>') {
+                        tipo = caractereInesperado(inicio);
+                        break;
+                    }
+                    tipo = TipoToken.PHP_FECHA;
+                    posicao += 2;
+                    break;
+                case '=':
+                    if (caractereEm(inicio + 1) == '=') {
+                        tipo = TipoToken.IGUAL;
+                        posicao += 2;
+                    } else {
+                        tipo = TipoToken.ATRIBUICAO;
+                        posicao += 1;
+                    }
+                    break;
+                case '!':
+                    if (caractereEm(inicio + 1) == '=') {
+                        tipo = TipoToken.DIFERENTE;
+                        posicao += 2;
+                    } else {
+                        tipo = TipoToken.NOT;
+                        posicao += 1;
+                    }
+                    break;
+                case '&':
+                    if (caractereEm(inicio + 1) != '&') {
+                        tipo = caractereInesperado(inicio);
+                        break;
+                    }
+                    tipo = TipoToken.AND;
+                    posicao += 2;
+                    break;
+                case '|':
+                    if (caractereEm(inicio + 1) != '|') {
+                        tipo = caractereInesperado(inicio);
+                        break;
+                    }
+                    tipo = TipoToken.OR;
+                    posicao += 2;
+                    break;
+                case '+':
+                    tipo = TipoToken.MAIS;
+                    posicao += 1;
+                    break;
+                case '-':
+                    tipo = TipoToken.MENOS;
+                    posicao += 1;
+                    break;
+                case '*':
+                    tipo = TipoToken.MULT;
+                    posicao += 1;
+                    break;
+                case ';':
+                    tipo = TipoToken.PONTO_VIRGULA;
+                    posicao += 1;
+                    break;
+                case ',':
+                    tipo = TipoToken.VIRGULA;
+                    posicao += 1;
+                    break;
+                case '.':
+                    tipo = TipoToken.PONTO;
+                    posicao += 1;
+                    break;
+                case '(':
+                    tipo = TipoToken.ABRE_PAREN;
+                    posicao += 1;
+                    break;
+                case ')':
+                    tipo = TipoToken.FECHA_PAREN;
+                    posicao += 1;
+                    break;
+                case '{':
+                    tipo = TipoToken.ABRE_CHAVE;
+                    posicao += 1;
+                    break;
+                case '}':
+                    tipo = TipoToken.FECHA_CHAVE;
+                    posicao += 1;
+                    break;
+                case '$':
+                    if (!ehInicioIdentificador(caractereEm(inicio + 1))) {
+                        tipo = caractereInesperado(inicio);
+                        break;
+                    }
+                    posicao = fimIdentificador(inicio + 2);
+                    tipo = TipoToken.VARIAVEL;
+                    break;
+                default:
+                    if (ehInicioIdentificador(caractere)) {
+                        posicao = fimIdentificador(inicio + 1);
+                        tipo = classificarIdentificador(inicio, posicao);
+                    } else if (ehDigito(caractere)) {
+                        posicao = fimNumero(inicio);
+                        tipo = TipoToken.NUMERO;
+                    } else {
+                        tipo = caractereInesperado(inicio);
+                    }
+                    break;
+            }
+
+            inicioToken = inicio;
+            return tipo;
+        }
+
+        inicioToken = posicao;
+        return TipoToken.EOF;
+    }
+
+    private TipoToken classificarIdentificador(int inicio, int fim) {
+        return PalavrasReservadas.classificar(codigoFonte, inicio, fim);
+    }
+
+    private Token criarTokenAutomato(TipoToken tipo, int inicio, int fim) {
+        int colunaAtual = colunaDe(inicio);
+        if (tipo == TipoToken.NUMERO) {
+            return new Token(decodificarNumero(inicio, fim), linhaAtual(), colunaAtual);
+        }
+        return new Token(tipo, codigoFonte, inicio, fim - inicio, linhaAtual(), colunaAtual);
+    }
+
+    // Literais NUMERO sao digitos com parte fracionaria opcional. Com ate 15 digitos a mantissa
+    // cabe exata num double e 10^casas (casas <= 22) tambem e exato, entao uma unica divisao
+    // da o mesmo resultado corretamente arredondado que Double.parseDouble.
+    private double decodificarNumero(int inicio, int fim) {
+        long mantissa = 0;
+        int digitos = 0;
+        int casasDecimais = -1;
+        for (int i = inicio; i < fim; i++) {
+            char caractere = codigoFonte.charAt(i);
+            if (caractere == '.') {
+                casasDecimais = 0;
+                continue;
+            }
+            if (mantissa != 0 || caractere != '0') {
+                digitos += 1;
+            }
+            if (digitos > 15) {
+                return Double.parseDouble(codigoFonte.texto(inicio, fim));
+            }
+            mantissa = mantissa * 10 + (caractere - '0');
+            if (casasDecimais >= 0) {
+                casasDecimais += 1;
+            }
+        }
+        if (casasDecimais <= 0) {
+            return mantissa;
+        }
+        if (casasDecimais > 22) {
+            return Double.parseDouble(codigoFonte.texto(inicio, fim));
+        }
+        return mantissa / POTENCIAS_DE_DEZ[casasDecimais];
+    }
+
+    private char caractereEm(int indice) {
+        return indice < codigoFonte.length() ? codigoFonte.charAt(indice) : '\0';
+    }
+
+    // Linha e coluna durante o escaneamento: o token atual esta sempre na ultima linha registrada
+    private int linhaAtual() {
+        return indiceLinhas.quantidadeLinhas();
+    }
+
+    private int colunaDe(int indice) {
+        return codigoFonte.unidadesUtf16(indiceLinhas.inicioUltimaLinha(), indice) + 1;
+    }
+
+    // No modo de recuperacao o caractere (inteiro, mesmo que ocupe varios indices) vira um token
+    // ERRO e o escaneamento continua logo depois dele, sem criar excecao
+    private TipoToken caractereInesperado(int indice) throws ErroLexico {
+        if (!recuperarErros) {
+            throw new ErroLexico(mensagemCaractereInesperado(codigoFonte, indice), linhaAtual(), colunaDe(indice));
+        }
+        posicao = indice + codigoFonte.tamanhoCaractere(indice);
+        return TipoToken.ERRO;
+    }
+
+    // O caractere inteiro, mesmo fora do BMP (dois char): um surrogate sozinho nao pode ser gravado
+    // em erros_lexicos.txt
+    static String mensagemCaractereInesperado(FonteCodigo fonte, int indice) {
+        return "Caractere inesperado: '" + fonte.texto(indice, indice + fonte.tamanhoCaractere(indice)) + "'";
+    }
+
+    private void novaLinha(int indiceQuebra) {
+        indiceLinhas.registrarLinha(indiceQuebra + 1);
+    }
+
+    private void pularEspacos() {
+        int linhaInicial = linhaAtual();
+        while (posicao < limite) {
+            char caractere = codigoFonte.charAt(posicao);
+            if (caractere == '\n') {
+                novaLinha(posicao);
+            } else if (caractere != ' ' && caractere != '\t' && caractere != '\r'
+                && caractere != '\f' && caractere != '\u000B') {
+                break;
+            }
+            posicao += 1;
+        }
+        if (Debug.lexicoAtivo()) {
+            Debug.lexico("Ignorando: ESPACOEMBRANCO na linha " + linhaInicial);
+        }
+    }
+
+    private void pularComentarioBloco(int fim) {
+        int linhaInicial = linhaAtual();
+        for (int i = posicao + 2; i < fim; i++) {
+            if (codigoFonte.charAt(i) == '\n') {
+                novaLinha(i);
+            }
+        }
+        posicao = fim;
+        if (Debug.lexicoAtivo()) {
+            Debug.lexico("Ignorando: COMENTARIO na linha " + linhaInicial);
+        }
+    }
+
+    private void pularComentarioLinha() {
+        int fim = codigoFonte.indiceDe('\n', posicao);
+        posicao = fim < 0 ? codigoFonte.length() : fim;
+        if (Debug.lexicoAtivo()) {
+            Debug.lexico("Ignorando: COMENTARIOLINHA na linha " + linhaAtual());
+        }
+    }
+
+    private int fimIdentificador(int indice) {
+        int tamanho = codigoFonte.length();
+        while (indice < tamanho && ehParteIdentificador(codigoFonte.charAt(indice))) {
+            indice += 1;
+        }
+        return indice;
+    }
+
+    private int fimNumero(int indice) {
+        int tamanho = codigoFonte.length();
+        while (indice < tamanho && ehDigito(codigoFonte.charAt(indice))) {
+            indice += 1;
+        }
+        if (indice + 1 < tamanho && codigoFonte.charAt(indice) == '.' && ehDigito(codigoFonte.charAt(indice + 1))) {
+            indice += 1;
+            while (indice < tamanho && ehDigito(codigoFonte.charAt(indice))) {
+                indice += 1;
+            }
+        }
+        return indice;
+    }
+
+    private static boolean ehDigito(char caractere) {
+        return caractere >= '0' && caractere <= '9';
+    }
+
+    private static boolean ehInicioIdentificador(char caractere) {
+        return (caractere >= 'a' && caractere <= 'z') || (caractere >= 'A' && caractere <= 'Z') || caractere == '_';
+    }
+
+    private static boolean ehParteIdentificador(char caractere) {
+        return ehInicioIdentificador(caractere) || ehDigito(caractere);
     }
 
         public List<Token> tokenizar() throws ErroLexico {
@@ -220,4 +591,65 @@ public class AnalisadorLexico {
         }
         return tokens;
     }
+
+    public TokenBuffer tokenizarBuffer() throws ErroLexico {
+        TokenBuffer tokens = new TokenBuffer(codigoFonte, indiceLinhas, nomes, codigoFonte.length() / 4);
+        if (modo == ModoLexico.REGEX) {
+            while (true) {
+                Token token = proximoTokenRegex();
+                int comprimento = posicao - inicioToken;
+                if (token.getTipo() == TipoToken.NUMERO) {
+                    tokens.adicionarNumero(inicioToken, comprimento, token.getNumero());
+                } else if (token.getTipo() == TipoToken.IDENT || token.getTipo() == TipoToken.VARIAVEL) {
+                    tokens.adicionarNome(token.getTipo(), inicioToken, comprimento, nomes.idDe(codigoFonte, inicioToken, posicao));
+                } else {
+                    tokens.adicionar(token.getTipo(), inicioToken, comprimento);
+                }
+                if (token.getTipo() == TipoToken.EOF) {
+                    tokens.ajustarCapacidade();
+                    return tokens;
+                }
+            }
+        }
+
+        escanearTokens(tokens);
+        tokens.adicionar(TipoToken.EOF, posicao, 0);
+        if (Debug.lexicoAtivo()) {
+            Debug.lexico("Token: " + tokens.token(tokens.tamanho() - 1));
+        }
+        tokens.ajustarCapacidade();
+        return tokens;
+    }
+
+    // Trecho [inicio, limite) sem o EOF final; a posicao onde o escaneamento parou fica em getPosicao()
+    TokenBuffer tokenizarTrecho() throws ErroLexico {
+        TokenBuffer tokens = new TokenBuffer(codigoFonte, indiceLinhas, nomes, (limite - posicao) / 4);
+        escanearTokens(tokens);
+        return tokens;
+    }
+
+    int getPosicao() {
+        return posicao;
+    }
+
+    private void escanearTokens(TokenBuffer tokens) throws ErroLexico {
+        while (true) {
+            TipoToken tipo = escanearAutomato();
+            if (tipo == TipoToken.EOF) {
+                return;
+            }
+            int comprimento = posicao - inicioToken;
+            if (tipo == TipoToken.NUMERO) {
+                double numero = decodificarNumero(inicioToken, posicao);
+                tokens.adicionarNumero(inicioToken, comprimento, numero);
+            } else if (tipo == TipoToken.IDENT || tipo == TipoToken.VARIAVEL) {
+                tokens.adicionarNome(tipo, inicioToken, comprimento, nomes.idDe(codigoFonte, inicioToken, posicao));
+            } else {
+                tokens.adicionar(tipo, inicioToken, comprimento);
+            }
+            if (Debug.lexicoAtivo()) {
+                Debug.lexico("Token: " + tokens.token(tokens.tamanho() - 1));
+            }
+        }
+    }
 }
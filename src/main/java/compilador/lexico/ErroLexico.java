@@ -3,7 +3,12 @@ package compilador.lexico;
 public class ErroLexico extends Exception {
     
     public ErroLexico(String mensagem, int linha, int coluna) {
-        super("Erro Lexico na linha " + linha + ", coluna " + coluna + ": " + mensagem);
+        super(formatar(mensagem, linha, coluna));
+    }
+
+    // Mesmo texto de getMessage(), para erros registrados sem lancar excecao (modo de recuperacao)
+    public static String formatar(String mensagem, int linha, int coluna) {
+        return "Erro Lexico na linha " + linha + ", coluna " + coluna + ": " + mensagem;
     }
 
 }
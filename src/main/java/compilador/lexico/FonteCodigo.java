@@ -0,0 +1,21 @@
+package compilador.lexico;
+
+// Codigo fonte visto pelo analisador lexico. Os indices sao as posicoes da propria fonte
+// (caracteres para texto em memoria, bytes para arquivo mapeado); colunas de mensagens e
+// de tokens sao sempre contadas em unidades UTF-16, como numa String.
+public interface FonteCodigo extends CharSequence {
+
+    String texto(int inicio, int fim);
+
+    int indiceDe(char caractere, int aPartirDe);
+
+    int indiceDe(String trecho, int aPartirDe);
+
+    boolean comecaCom(String trecho, int indice);
+
+    // Unidades UTF-16 em [inicio, fim)
+    int unidadesUtf16(int inicio, int fim);
+
+    // Quantos indices ocupa o caractere (ponto de codigo inteiro) que comeca na posicao
+    int tamanhoCaractere(int indice);
+}
@@ -0,0 +1,142 @@
+package compilador.lexico;
+
+import java.util.Arrays;
+
+// Fonte de um texto editado aos poucos (analise incremental). Os caracteres ficam num buffer com
+// uma lacuna na posicao da ultima edicao: edicoes seguidas no mesmo lugar (digitacao) so movem os
+// caracteres entre uma e outra, em vez de copiar o texto inteiro numa String nova a cada tecla.
+// Os indices sao os do texto, sem contar a lacuna.
+public class FonteEditavel implements FonteCodigo {
+
+    private static final int LACUNA_INICIAL = 1024;
+
+    private char[] buffer;
+    private int inicioLacuna;
+    private int fimLacuna;
+
+    public FonteEditavel(String texto) {
+        this.buffer = new char[texto.length() + LACUNA_INICIAL];
+        texto.getChars(0, texto.length(), buffer, 0);
+        this.inicioLacuna = texto.length();
+        this.fimLacuna = buffer.length;
+    }
+
+    // Troca [inicio, inicio + removidos) por 'inserido'
+    public void substituir(int inicio, int removidos, CharSequence inserido) {
+        moverLacuna(inicio);
+        fimLacuna += removidos;
+        if (fimLacuna - inicioLacuna < inserido.length()) {
+            crescer(inserido.length());
+        }
+        for (int k = 0; k < inserido.length(); k++) {
+            buffer[inicioLacuna + k] = inserido.charAt(k);
+        }
+        inicioLacuna += inserido.length();
+    }
+
+    private void moverLacuna(int posicao) {
+        if (posicao < inicioLacuna) {
+            int quantidade = inicioLacuna - posicao;
+            System.arraycopy(buffer, posicao, buffer, fimLacuna - quantidade, quantidade);
+            inicioLacuna -= quantidade;
+            fimLacuna -= quantidade;
+        } else if (posicao > inicioLacuna) {
+            int quantidade = posicao - inicioLacuna;
+            System.arraycopy(buffer, fimLacuna, buffer, inicioLacuna, quantidade);
+            inicioLacuna += quantidade;
+            fimLacuna += quantidade;
+        }
+    }
+
+    private void crescer(int minimo) {
+        int depois = buffer.length - fimLacuna;
+        int novoTamanho = Math.max(buffer.length * 2, length() + minimo + LACUNA_INICIAL);
+        char[] novo = Arrays.copyOf(buffer, novoTamanho);
+        System.arraycopy(buffer, fimLacuna, novo, novoTamanho - depois, depois);
+        buffer = novo;
+        fimLacuna = novoTamanho - depois;
+    }
+
+    @Override
+    public int length() {
+        return buffer.length - (fimLacuna - inicioLacuna);
+    }
+
+    @Override
+    public char charAt(int indice) {
+        return indice < inicioLacuna ? buffer[indice] : buffer[indice + fimLacuna - inicioLacuna];
+    }
+
+    @Override
+    public CharSequence subSequence(int inicio, int fim) {
+        return texto(inicio, fim);
+    }
+
+    @Override
+    public String texto(int inicio, int fim) {
+        if (fim <= inicioLacuna) {
+            return new String(buffer, inicio, fim - inicio);
+        }
+        if (inicio >= inicioLacuna) {
+            return new String(buffer, inicio + fimLacuna - inicioLacuna, fim - inicio);
+        }
+        StringBuilder construtor = new StringBuilder(fim - inicio);
+        construtor.append(buffer, inicio, inicioLacuna - inicio);
+        construtor.append(buffer, fimLacuna, fim - inicioLacuna);
+        return construtor.toString();
+    }
+
+    @Override
+    public int indiceDe(char caractere, int aPartirDe) {
+        int tamanho = length();
+        for (int i = Math.max(0, aPartirDe); i < tamanho; i++) {
+            if (charAt(i) == caractere) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int indiceDe(String trecho, int aPartirDe) {
+        int ultimo = length() - trecho.length();
+        for (int i = Math.max(0, aPartirDe); i <= ultimo; i++) {
+            if (comecaCom(trecho, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean comecaCom(String trecho, int indice) {
+        if (indice < 0 || indice + trecho.length() > length()) {
+            return false;
+        }
+        for (int k = 0; k < trecho.length(); k++) {
+            if (charAt(indice + k) != trecho.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int unidadesUtf16(int inicio, int fim) {
+        return fim - inicio;
+    }
+
+    @Override
+    public int tamanhoCaractere(int indice) {
+        if (Character.isHighSurrogate(charAt(indice)) && indice + 1 < length()
+            && Character.isLowSurrogate(charAt(indice + 1))) {
+            return 2;
+        }
+        return 1;
+    }
+
+    @Override
+    public String toString() {
+        return texto(0, length());
+    }
+}
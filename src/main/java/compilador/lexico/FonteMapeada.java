@@ -0,0 +1,120 @@
+package compilador.lexico;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Fonte lida direto de um arquivo mapeado em memoria, sem copiar o arquivo para o heap.
+// O arquivo e UTF-8: cada byte e exposto como um char (os tokens da linguagem sao ASCII) e
+// caracteres de varios bytes so aparecem em comentarios ou em erros, onde sao decodificados.
+public class FonteMapeada implements FonteCodigo {
+
+    private final ByteBuffer bytes;
+    private final int tamanho;
+
+    public FonteMapeada(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.tamanho = bytes.limit();
+    }
+
+    public static FonteMapeada mapear(Path caminho) throws IOException {
+        try (FileChannel canal = FileChannel.open(caminho, StandardOpenOption.READ)) {
+            long tamanhoArquivo = canal.size();
+            if (tamanhoArquivo > Integer.MAX_VALUE) {
+                throw new IOException("Arquivo grande demais para mapear: " + tamanhoArquivo + " bytes");
+            }
+            return new FonteMapeada(canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanhoArquivo));
+        }
+    }
+
+    @Override
+    public int length() {
+        return tamanho;
+    }
+
+    @Override
+    public char charAt(int indice) {
+        return (char) (bytes.get(indice) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int inicio, int fim) {
+        return texto(inicio, fim);
+    }
+
+    @Override
+    public String texto(int inicio, int fim) {
+        byte[] trecho = new byte[fim - inicio];
+        bytes.get(inicio, trecho);
+        return new String(trecho, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int indiceDe(char caractere, int aPartirDe) {
+        for (int i = Math.max(0, aPartirDe); i < tamanho; i++) {
+            if (bytes.get(i) == (byte) caractere) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int indiceDe(String trecho, int aPartirDe) {
+        int ultimo = tamanho - trecho.length();
+        for (int i = Math.max(0, aPartirDe); i <= ultimo; i++) {
+            if (comecaCom(trecho, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean comecaCom(String trecho, int indice) {
+        if (indice < 0 || indice + trecho.length() > tamanho) {
+            return false;
+        }
+        for (int i = 0; i < trecho.length(); i++) {
+            if (bytes.get(indice + i) != (byte) trecho.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Bytes de continuacao (10xxxxxx) nao contam; um caractere de 4 bytes vira um par substituto
+    @Override
+    public int unidadesUtf16(int inicio, int fim) {
+        int unidades = 0;
+        for (int i = inicio; i < fim; i++) {
+            int b = bytes.get(i) & 0xFF;
+            if ((b & 0xC0) != 0x80) {
+                unidades += (b & 0xF8) == 0xF0 ? 2 : 1;
+            }
+        }
+        return unidades;
+    }
+
+    @Override
+    public int tamanhoCaractere(int indice) {
+        int b = bytes.get(indice) & 0xFF;
+        int tamanhoSequencia = 1;
+        if ((b & 0xE0) == 0xC0) {
+            tamanhoSequencia = 2;
+        } else if ((b & 0xF0) == 0xE0) {
+            tamanhoSequencia = 3;
+        } else if ((b & 0xF8) == 0xF0) {
+            tamanhoSequencia = 4;
+        }
+        return Math.min(tamanhoSequencia, tamanho - indice);
+    }
+
+    @Override
+    public String toString() {
+        return texto(0, tamanho);
+    }
+}
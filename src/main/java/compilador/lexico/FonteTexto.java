@@ -0,0 +1,61 @@
+package compilador.lexico;
+
+// Fonte ja carregada em uma String
+public class FonteTexto implements FonteCodigo {
+
+    private final String texto;
+
+    public FonteTexto(String texto) {
+        this.texto = texto;
+    }
+
+    @Override
+    public int length() {
+        return texto.length();
+    }
+
+    @Override
+    public char charAt(int indice) {
+        return texto.charAt(indice);
+    }
+
+    @Override
+    public CharSequence subSequence(int inicio, int fim) {
+        return texto.subSequence(inicio, fim);
+    }
+
+    @Override
+    public String texto(int inicio, int fim) {
+        return texto.substring(inicio, fim);
+    }
+
+    @Override
+    public int indiceDe(char caractere, int aPartirDe) {
+        return texto.indexOf(caractere, aPartirDe);
+    }
+
+    @Override
+    public int indiceDe(String trecho, int aPartirDe) {
+        return texto.indexOf(trecho, aPartirDe);
+    }
+
+    @Override
+    public boolean comecaCom(String trecho, int indice) {
+        return texto.startsWith(trecho, indice);
+    }
+
+    @Override
+    public int unidadesUtf16(int inicio, int fim) {
+        return fim - inicio;
+    }
+
+    @Override
+    public int tamanhoCaractere(int indice) {
+        return Character.charCount(texto.codePointAt(indice));
+    }
+
+    @Override
+    public String toString() {
+        return texto;
+    }
+}
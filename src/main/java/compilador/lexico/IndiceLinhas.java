@@ -0,0 +1,106 @@
+package compilador.lexico;
+
+import java.util.Arrays;
+
+// Deslocamento de inicio de cada linha do codigo fonte. Linha e coluna de uma posicao sao
+// calculadas por busca binaria apenas quando alguem precisa delas (erros, tokens.txt, AST).
+public class IndiceLinhas {
+
+    private int[] inicios;
+    private int quantidade;
+
+    public IndiceLinhas() {
+        this(0);
+    }
+
+    // Indice de um trecho que comeca em 'inicioPrimeiraLinha' (lexico incremental)
+    IndiceLinhas(int inicioPrimeiraLinha) {
+        this.inicios = new int[64];
+        this.inicios[0] = inicioPrimeiraLinha;
+        this.quantidade = 1;
+    }
+
+    public static IndiceLinhas construir(CharSequence texto) {
+        IndiceLinhas indice = new IndiceLinhas();
+        int tamanho = texto.length();
+        for (int i = 0; i < tamanho; i++) {
+            if (texto.charAt(i) == '\n') {
+                indice.registrarLinha(i + 1);
+            }
+        }
+        return indice;
+    }
+
+    // Registra o inicio de uma nova linha; os inicios chegam em ordem crescente
+    void registrarLinha(int inicio) {
+        if (inicio <= inicios[quantidade - 1]) {
+            return;
+        }
+        if (quantidade == inicios.length) {
+            inicios = Arrays.copyOf(inicios, quantidade * 2);
+        }
+        inicios[quantidade] = inicio;
+        quantidade += 1;
+    }
+
+    // Ajusta o indice a troca de [inicio, inicio + removidos) do texto por 'inserido' (analise
+    // incremental): as linhas antes da edicao ficam, as de depois sao movidas e deslocadas
+    void substituir(int inicio, int removidos, CharSequence inserido) {
+        int deslocamento = inserido.length() - removidos;
+        int primeiraRemovida = linha(inicio);
+        int fimRemovidas = linha(inicio + removidos);
+        int novasLinhas = 0;
+        for (int k = 0; k < inserido.length(); k++) {
+            if (inserido.charAt(k) == '\n') {
+                novasLinhas += 1;
+            }
+        }
+        int novaQuantidade = quantidade - (fimRemovidas - primeiraRemovida) + novasLinhas;
+        if (novaQuantidade > inicios.length) {
+            inicios = Arrays.copyOf(inicios, Math.max(novaQuantidade, inicios.length * 2));
+        }
+        System.arraycopy(inicios, fimRemovidas, inicios, primeiraRemovida + novasLinhas, quantidade - fimRemovidas);
+        for (int i = primeiraRemovida + novasLinhas; i < novaQuantidade; i++) {
+            inicios[i] += deslocamento;
+        }
+        int proxima = primeiraRemovida;
+        for (int k = 0; k < inserido.length(); k++) {
+            if (inserido.charAt(k) == '\n') {
+                inicios[proxima] = inicio + k + 1;
+                proxima += 1;
+            }
+        }
+        quantidade = novaQuantidade;
+    }
+
+    public int quantidadeLinhas() {
+        return quantidade;
+    }
+
+    public int inicioUltimaLinha() {
+        return inicios[quantidade - 1];
+    }
+
+    public int linha(int deslocamento) {
+        int baixo = 0;
+        int alto = quantidade - 1;
+        while (baixo < alto) {
+            int meio = (baixo + alto + 1) >>> 1;
+            if (inicios[meio] <= deslocamento) {
+                baixo = meio;
+            } else {
+                alto = meio - 1;
+            }
+        }
+        return baixo + 1;
+    }
+
+    public int inicioLinha(int numeroLinha) {
+        return inicios[numeroLinha - 1];
+    }
+
+    // Coluna em unidades UTF-16, independente de a fonte ser indexada por caractere ou por byte
+    public int coluna(FonteCodigo fonte, int deslocamento) {
+        return fonte.unidadesUtf16(inicios[linha(deslocamento) - 1], deslocamento) + 1;
+    }
+}
@@ -0,0 +1,169 @@
+package compilador.lexico;
+
+import compilador.Debug;
+
+// Analise lexica de um texto que e editado aos poucos (integracao com editor). A cada edicao so
+// e escaneado de novo o trecho que ela pode ter alterado: o escaneamento recomeca no fim do
+// ultimo token que nao leu nenhum caractere da edicao e para assim que um token novo comeca na
+// mesma posicao (deslocada) de um token antigo que fica depois da edicao; dali em diante o texto
+// e o mesmo, entao os tokens tambem sao. O TokenBuffer e ajustado no lugar: os tokens antes do
+// trecho ficam onde estao e os de depois so sao movidos. A tabela de nomes e a mesma em todas as
+// edicoes, para que os ids continuem validos (a analise sintatica incremental reaproveita nos
+// que guardam ids).
+// Caracteres invalidos viram tokens ERRO, como no modo de recuperacao do AnalisadorLexico.
+public final class LexicoIncremental {
+
+    // O automato le no maximo 4 caracteres depois do fim de um token ('<' decidido contra "<?php")
+    private static final int ALCANCE_LEITURA = 4;
+    // Quantos caracteres depois da edicao sao escaneados antes de procurar a sincronia
+    private static final int JANELA_INICIAL = 256;
+
+    private final FonteEditavel fonte;
+    private TokenBuffer tokens;
+    // Tokens trocados pela ultima edicao: [primeiroAlterado, fimAlteradoAnterior) do buffer
+    // anterior viraram [primeiroAlterado, fimAlteradoNovo) do atual
+    private int primeiroAlterado;
+    private int fimAlteradoAnterior;
+    private int fimAlteradoNovo;
+
+    public LexicoIncremental(String texto) throws ErroLexico {
+        this.fonte = new FonteEditavel(texto);
+        this.tokens = analisarTudo(fonte);
+        this.primeiroAlterado = 0;
+        this.fimAlteradoAnterior = 0;
+        this.fimAlteradoNovo = tokens.tamanho();
+    }
+
+    // Texto atual (copia)
+    public String getTexto() {
+        return fonte.toString();
+    }
+
+    // O mesmo buffer em todas as edicoes, atualizado por editar()
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    public int primeiroAlterado() {
+        return primeiroAlterado;
+    }
+
+    public int fimAlteradoAnterior() {
+        return fimAlteradoAnterior;
+    }
+
+    public int fimAlteradoNovo() {
+        return fimAlteradoNovo;
+    }
+
+    // Troca [inicio, inicio + removidos) do texto por 'inserido'
+    public void editar(int inicio, int removidos, String inserido) throws ErroLexico {
+        if (inicio < 0 || removidos < 0 || inicio + removidos > fonte.length()) {
+            throw new IllegalArgumentException("Edicao fora do texto: inicio=" + inicio + " removidos=" + removidos
+                + " tamanho=" + fonte.length());
+        }
+        fonte.substituir(inicio, removidos, inserido);
+
+        // Com debug o texto inteiro e escaneado, para o log mostrar linhas e colunas corretas
+        if (Debug.lexicoAtivo()) {
+            int tamanhoAnterior = tokens.tamanho();
+            tokens = analisarTudo(fonte);
+            primeiroAlterado = 0;
+            fimAlteradoAnterior = tamanhoAnterior;
+            fimAlteradoNovo = tokens.tamanho();
+            return;
+        }
+
+        int deslocamento = inserido.length() - removidos;
+        int fimEdicao = inicio + removidos;
+        TabelaNomes nomes = tokens.getTabelaNomes();
+        int primeiro = primeiroTokenAlterado(tokens, inicio);
+        if (fechaComentario(fonte, inicio, inserido.length())) {
+            primeiro = Math.min(primeiro, primeiroComentarioAberto(tokens, primeiro));
+        }
+
+        // Escaneia em janelas crescentes ate sincronizar com um token antigo posterior a edicao
+        // (no pior caso, o EOF)
+        TokenBuffer novos = new TokenBuffer(fonte, new IndiceLinhas(), nomes, 0);
+        int posicao = primeiro == 0 ? 0 : tokens.inicio(primeiro - 1) + tokens.comprimento(primeiro - 1);
+        int ultimoAnterior = tokens.tamanho() - 1;
+        int antigo = primeiro;
+        int sincronia = -1;
+        long janela = JANELA_INICIAL;
+        while (sincronia < 0) {
+            int limite = (int) Math.min(fonte.length(), Math.max(posicao, inicio + inserido.length()) + janela);
+            AnalisadorLexico analisador = new AnalisadorLexico(fonte, posicao, limite, nomes);
+            analisador.setRecuperarErros(true);
+            TokenBuffer trecho = analisador.tokenizarTrecho();
+            int aproveitados = trecho.tamanho();
+            for (int i = 0; i < trecho.tamanho(); i++) {
+                int inicioNovo = trecho.inicio(i);
+                while (antigo < ultimoAnterior && tokens.inicio(antigo) + deslocamento < inicioNovo) {
+                    antigo += 1;
+                }
+                if (tokens.inicio(antigo) >= fimEdicao && tokens.inicio(antigo) + deslocamento == inicioNovo) {
+                    sincronia = antigo;
+                    aproveitados = i;
+                    break;
+                }
+            }
+            novos.acrescentar(trecho, 0, aproveitados);
+            posicao = analisador.getPosicao();
+            if (sincronia < 0 && posicao >= fonte.length()) {
+                sincronia = ultimoAnterior;
+            }
+            janela *= 2;
+        }
+
+        // O buffer e o indice de linhas sao ajustados no lugar: so os tokens e linhas depois da
+        // edicao sao movidos, com copias de bloco
+        tokens.getIndiceLinhas().substituir(inicio, removidos, inserido);
+        tokens.substituir(primeiro, sincronia, novos, deslocamento);
+        primeiroAlterado = primeiro;
+        fimAlteradoAnterior = sincronia;
+        fimAlteradoNovo = primeiro + novos.tamanho();
+    }
+
+    private static TokenBuffer analisarTudo(FonteCodigo fonte) throws ErroLexico {
+        AnalisadorLexico analisador = new AnalisadorLexico(fonte, ModoLexico.AUTOMATO);
+        analisador.setRecuperarErros(true);
+        return analisador.tokenizarBuffer();
+    }
+
+    // Primeiro token que pode ter lido algum caractere a partir de 'inicio' (o EOF no maximo)
+    private static int primeiroTokenAlterado(TokenBuffer tokens, int inicio) {
+        int baixo = 0;
+        int alto = tokens.tamanho() - 1;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (tokens.inicio(meio) + tokens.comprimento(meio) + ALCANCE_LEITURA <= inicio) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    // Um "*/" que nao existia pode fechar um "/*" sem fim anterior, que antes virou DIV e MULT
+    private static boolean fechaComentario(FonteCodigo texto, int inicio, int tamanhoInserido) {
+        int ate = Math.min(texto.length(), inicio + tamanhoInserido + 1);
+        for (int i = Math.max(0, inicio - 1); i + 1 < ate; i++) {
+            if (texto.charAt(i) == '*' && texto.charAt(i + 1) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Primeiro DIV seguido de MULT colado antes de 'ate' (o MULT pode ser o proprio 'ate')
+    private static int primeiroComentarioAberto(TokenBuffer tokens, int ate) {
+        for (int i = 0; i < ate && i + 1 < tokens.tamanho(); i++) {
+            if (tokens.tipo(i) == TipoToken.DIV && tokens.tipo(i + 1) == TipoToken.MULT
+                && tokens.inicio(i + 1) == tokens.inicio(i) + 1) {
+                return i;
+            }
+        }
+        return ate;
+    }
+}
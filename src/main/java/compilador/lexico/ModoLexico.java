@@ -0,0 +1,6 @@
+package compilador.lexico;
+
+public enum ModoLexico {
+    AUTOMATO,
+    REGEX
+}
@@ -0,0 +1,71 @@
+package compilador.lexico;
+
+// Reconhecedor das palavras reservadas direto do trecho do codigo fonte: decide pelo
+// comprimento e pelo primeiro caractere e confirma com uma unica comparacao, sem criar String.
+final class PalavrasReservadas {
+
+    private PalavrasReservadas() {
+    }
+
+    // Devolve o tipo da palavra reservada em [inicio, fim) ou IDENT se nao for reservada
+    static TipoToken classificar(CharSequence fonte, int inicio, int fim) {
+        switch (fim - inicio) {
+            case 2:
+                if (confere(fonte, inicio, "if")) {
+                    return TipoToken.IF;
+                }
+                break;
+            case 4:
+                if (fonte.charAt(inicio) == 'e') {
+                    if (confere(fonte, inicio, "echo")) {
+                        return TipoToken.ECHO;
+                    }
+                    if (confere(fonte, inicio, "else")) {
+                        return TipoToken.ELSE;
+                    }
+                }
+                break;
+            case 5:
+                if (confere(fonte, inicio, "while")) {
+                    return TipoToken.WHILE;
+                }
+                break;
+            case 7:
+                if (confere(fonte, inicio, "PHP_EOL")) {
+                    return TipoToken.PHP_EOL;
+                }
+                break;
+            case 8:
+                switch (fonte.charAt(inicio)) {
+                    case 'f':
+                        if (confere(fonte, inicio, "function")) {
+                            return TipoToken.FUNCTION;
+                        }
+                        if (confere(fonte, inicio, "floatval")) {
+                            return TipoToken.FLOATVAL;
+                        }
+                        break;
+                    case 'r':
+                        if (confere(fonte, inicio, "readline")) {
+                            return TipoToken.READLINE;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                break;
+            default:
+                break;
+        }
+        return TipoToken.IDENT;
+    }
+
+    private static boolean confere(CharSequence fonte, int inicio, String palavra) {
+        for (int i = 0; i < palavra.length(); i++) {
+            if (fonte.charAt(inicio + i) != palavra.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package compilador.lexico;
+
+import java.util.Arrays;
+
+// Nomes (identificadores e variaveis) de uma compilacao, cada um com um id inteiro denso.
+// O mesmo nome recebe sempre o mesmo id e a mesma instancia de String, criada uma unica vez;
+// a busca compara o trecho do codigo fonte diretamente, sem criar substring.
+public class TabelaNomes {
+
+    private String[] nomes;
+    private int[] hashes;
+    private int quantidade;
+    // Espalhamento com enderecamento aberto: cada posicao guarda id + 1 (0 = livre)
+    private int[] posicoes;
+
+    public TabelaNomes() {
+        this.nomes = new String[64];
+        this.hashes = new int[64];
+        this.posicoes = new int[128];
+        this.quantidade = 0;
+    }
+
+    public int idDe(CharSequence fonte, int inicio, int fim) {
+        int hash = hash(fonte, inicio, fim);
+        int posicao = procurar(hash, fonte, inicio, fim);
+        if (posicoes[posicao] != 0) {
+            return posicoes[posicao] - 1;
+        }
+        return inserir(fonte.subSequence(inicio, fim).toString(), hash, posicao);
+    }
+
+    private static int hash(CharSequence fonte, int inicio, int fim) {
+        int hash = 0;
+        for (int i = inicio; i < fim; i++) {
+            hash = 31 * hash + fonte.charAt(i);
+        }
+        return hash;
+    }
+
+    // Posicao do nome no espalhamento, ou a posicao livre onde ele entraria
+    private int procurar(int hash, CharSequence fonte, int inicio, int fim) {
+        int mascara = posicoes.length - 1;
+        int posicao = espalhar(hash) & mascara;
+        while (posicoes[posicao] != 0) {
+            int id = posicoes[posicao] - 1;
+            if (hashes[id] == hash && mesmoTrecho(nomes[id], fonte, inicio, fim)) {
+                return posicao;
+            }
+            posicao = (posicao + 1) & mascara;
+        }
+        return posicao;
+    }
+
+    public int idDe(String nome) {
+        return idDe(nome, 0, nome.length());
+    }
+
+    public String nome(int id) {
+        return nomes[id];
+    }
+
+    public int quantidade() {
+        return quantidade;
+    }
+
+    private int inserir(String nome, int hash, int posicao) {
+        if (quantidade == nomes.length) {
+            nomes = Arrays.copyOf(nomes, quantidade * 2);
+            hashes = Arrays.copyOf(hashes, quantidade * 2);
+        }
+        int id = quantidade;
+        nomes[id] = nome;
+        hashes[id] = hash;
+        posicoes[posicao] = id + 1;
+        quantidade += 1;
+        if (quantidade * 2 > posicoes.length) {
+            reespalhar();
+        }
+        return id;
+    }
+
+    private void reespalhar() {
+        posicoes = new int[posicoes.length * 2];
+        int mascara = posicoes.length - 1;
+        for (int id = 0; id < quantidade; id++) {
+            int posicao = espalhar(hashes[id]) & mascara;
+            while (posicoes[posicao] != 0) {
+                posicao = (posicao + 1) & mascara;
+            }
+            posicoes[posicao] = id + 1;
+        }
+    }
+
+    private static int espalhar(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean mesmoTrecho(String nome, CharSequence fonte, int inicio, int fim) {
+        if (nome.length() != fim - inicio) {
+            return false;
+        }
+        for (int i = 0; i < nome.length(); i++) {
+            if (fonte.charAt(inicio + i) != nome.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
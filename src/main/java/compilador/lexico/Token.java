@@ -3,13 +3,45 @@ package compilador.lexico;
 public class Token {
 
     private final TipoToken tipo;
-    private final Object valor;
+    private Object valor;
+    // Valor de um NUMERO, sem Double; getValor() so cria o Double se alguem pedir
+    private final double numero;
+    // Token preguicoso: o lexema so vira String quando getValor() e chamado
+    private final FonteCodigo fonte;
+    private final int inicio;
+    private final int comprimento;
     private final int linha;
     private final int coluna;
 
     public Token(TipoToken tipo, Object valor, int linha, int coluna) {
         this.tipo = tipo;
         this.valor = valor;
+        this.numero = valor instanceof Double ? (Double) valor : 0.0;
+        this.fonte = null;
+        this.inicio = -1;
+        this.comprimento = 0;
+        this.linha = linha;
+        this.coluna = coluna;
+    }
+
+    public Token(TipoToken tipo, FonteCodigo fonte, int inicio, int comprimento, int linha, int coluna) {
+        this.tipo = tipo;
+        this.valor = null;
+        this.numero = 0.0;
+        this.fonte = fonte;
+        this.inicio = inicio;
+        this.comprimento = comprimento;
+        this.linha = linha;
+        this.coluna = coluna;
+    }
+
+    public Token(double numero, int linha, int coluna) {
+        this.tipo = TipoToken.NUMERO;
+        this.valor = null;
+        this.numero = numero;
+        this.fonte = null;
+        this.inicio = -1;
+        this.comprimento = 0;
         this.linha = linha;
         this.coluna = coluna;
     }
@@ -19,9 +51,20 @@ public class Token {
     }
 
     public Object getValor() {
+        if (valor == null) {
+            if (tipo == TipoToken.NUMERO) {
+                valor = numero;
+            } else if (fonte != null) {
+                valor = fonte.texto(inicio, inicio + comprimento);
+            }
+        }
         return valor;
     }
 
+    public double getNumero() {
+        return numero;
+    }
+
     public int getLinha() {
         return linha;
     }
@@ -32,6 +75,6 @@ public class Token {
 
     @Override
     public String toString() {
-        return "Token(" + tipo.name() + ", " + String.valueOf(valor) + ", " + linha + ":" + coluna + ")";
+        return "Token(" + tipo.name() + ", " + String.valueOf(getValor()) + ", " + linha + ":" + coluna + ")";
     }
 }
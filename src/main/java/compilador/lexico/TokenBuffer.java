@@ -0,0 +1,320 @@
+package compilador.lexico;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Sequencia de tokens em arrays paralelos (um indice por token), sem um objeto Token por lexema.
+// O texto de cada token e recuperado do codigo fonte pelo par (inicio, comprimento) e a
+// linha/coluna pelo indice de linhas.
+// Os arrays sao paginados: crescer so acrescenta paginas, sem copiar os tokens ja lidos, e a
+// memoria ocupada acompanha o numero de tokens (importante para programas muito grandes).
+public class TokenBuffer {
+
+    private static final TipoToken[] TIPOS = TipoToken.values();
+    private static final int ORDINAL_IDENT = TipoToken.IDENT.ordinal();
+    private static final int ORDINAL_VARIAVEL = TipoToken.VARIAVEL.ordinal();
+    private static final int ORDINAL_NUMERO = TipoToken.NUMERO.ordinal();
+    private static final int ORDINAL_ERRO = TipoToken.ERRO.ordinal();
+
+    private static final int BITS_PAGINA = 13;
+    private static final int TAMANHO_PAGINA = 1 << BITS_PAGINA;
+    private static final int MASCARA_PAGINA = TAMANHO_PAGINA - 1;
+
+    private final FonteCodigo codigoFonte;
+    private final IndiceLinhas indiceLinhas;
+    private final TabelaNomes nomes;
+    private byte[][] tipos;
+    private int[][] inicios;
+    private int[][] comprimentos;
+    // Carga extra por token: para NUMERO, o indice do valor em 'numeros';
+    // para IDENT e VARIAVEL, o id do nome em 'nomes'
+    private int[][] valores;
+    private double[] numeros;
+    private int tamanho;
+    private int quantidadeNumeros;
+    private int quantidadeErros;
+    // Valores de 'numeros' que nenhum token usa mais (analise incremental)
+    private int numerosDescartados;
+
+    public TokenBuffer(FonteCodigo codigoFonte, IndiceLinhas indiceLinhas, TabelaNomes nomes, int capacidadeInicial) {
+        int paginas = Math.max(1, (capacidadeInicial >> BITS_PAGINA) + 1);
+        this.codigoFonte = codigoFonte;
+        this.indiceLinhas = indiceLinhas;
+        this.nomes = nomes;
+        this.tipos = new byte[paginas][];
+        this.inicios = new int[paginas][];
+        this.comprimentos = new int[paginas][];
+        this.valores = new int[paginas][];
+        this.numeros = new double[16];
+        this.tamanho = 0;
+        this.quantidadeNumeros = 0;
+    }
+
+    void adicionar(TipoToken tipo, int inicio, int comprimento) {
+        int pagina = tamanho >>> BITS_PAGINA;
+        int posicao = tamanho & MASCARA_PAGINA;
+        if (posicao == 0) {
+            novaPagina(pagina);
+        }
+        tipos[pagina][posicao] = (byte) tipo.ordinal();
+        inicios[pagina][posicao] = inicio;
+        comprimentos[pagina][posicao] = comprimento;
+        valores[pagina][posicao] = -1;
+        tamanho += 1;
+        if (tipo == TipoToken.ERRO) {
+            quantidadeErros += 1;
+        }
+    }
+
+    void adicionarNome(TipoToken tipo, int inicio, int comprimento, int idNome) {
+        adicionar(tipo, inicio, comprimento);
+        valores[(tamanho - 1) >>> BITS_PAGINA][(tamanho - 1) & MASCARA_PAGINA] = idNome;
+    }
+
+    void adicionarNumero(int inicio, int comprimento, double numero) {
+        if (quantidadeNumeros == numeros.length) {
+            numeros = Arrays.copyOf(numeros, Math.max(16, numeros.length * 2));
+        }
+        numeros[quantidadeNumeros] = numero;
+        adicionar(TipoToken.NUMERO, inicio, comprimento);
+        valores[(tamanho - 1) >>> BITS_PAGINA][(tamanho - 1) & MASCARA_PAGINA] = quantidadeNumeros;
+        quantidadeNumeros += 1;
+    }
+
+    // Acrescenta os tokens [de, ate) de 'origem', que usa a mesma tabela de nomes
+    void acrescentar(TokenBuffer origem, int de, int ate) {
+        for (int i = de; i < ate; i++) {
+            int tipo = origem.tipos[i >>> BITS_PAGINA][i & MASCARA_PAGINA];
+            if (tipo == ORDINAL_NUMERO) {
+                adicionarNumero(origem.inicio(i), origem.comprimento(i), origem.numero(i));
+            } else if (tipo == ORDINAL_IDENT || tipo == ORDINAL_VARIAVEL) {
+                adicionarNome(TIPOS[tipo], origem.inicio(i), origem.comprimento(i), origem.idNome(i));
+            } else {
+                adicionar(TIPOS[tipo], origem.inicio(i), origem.comprimento(i));
+            }
+        }
+    }
+
+    // Analise incremental: troca os tokens [de, ate) por todos os de 'trecho' (mesma tabela de
+    // nomes), move os seguintes com copias de bloco e soma 'deslocamento' ao inicio deles. Os
+    // valores dos NUMERO trocados ficam sem uso em 'numeros' ate a proxima compactacao.
+    void substituir(int de, int ate, TokenBuffer trecho, int deslocamento) {
+        for (int i = de; i < ate; i++) {
+            int tipo = tipos[i >>> BITS_PAGINA][i & MASCARA_PAGINA];
+            if (tipo == ORDINAL_NUMERO) {
+                numerosDescartados += 1;
+            } else if (tipo == ORDINAL_ERRO) {
+                quantidadeErros -= 1;
+            }
+        }
+        int novoTamanho = tamanho - (ate - de) + trecho.tamanho;
+        if (novoTamanho > 0) {
+            int ultimaPagina = (novoTamanho - 1) >>> BITS_PAGINA;
+            while (ultimaPagina >= tipos.length) {
+                crescerDiretorio();
+            }
+            for (int pagina = tamanho >>> BITS_PAGINA; pagina <= ultimaPagina; pagina++) {
+                criarPaginaSeFalta(pagina);
+            }
+        }
+        int destino = de + trecho.tamanho;
+        mover(ate, destino, tamanho - ate);
+        if (deslocamento != 0) {
+            for (int i = destino; i < novoTamanho; i++) {
+                inicios[i >>> BITS_PAGINA][i & MASCARA_PAGINA] += deslocamento;
+            }
+        }
+
+        // Os tokens do trecho sao escritos a partir de 'de' por adicionar*(), que escreve no fim
+        int tamanhoFinal = novoTamanho;
+        tamanho = de;
+        for (int i = 0; i < trecho.tamanho; i++) {
+            int tipo = trecho.tipos[i >>> BITS_PAGINA][i & MASCARA_PAGINA];
+            if (tipo == ORDINAL_NUMERO) {
+                adicionarNumero(trecho.inicio(i), trecho.comprimento(i), trecho.numero(i));
+            } else if (tipo == ORDINAL_IDENT || tipo == ORDINAL_VARIAVEL) {
+                adicionarNome(TIPOS[tipo], trecho.inicio(i), trecho.comprimento(i), trecho.idNome(i));
+            } else {
+                adicionar(TIPOS[tipo], trecho.inicio(i), trecho.comprimento(i));
+            }
+        }
+        tamanho = tamanhoFinal;
+        if (numerosDescartados > quantidadeNumeros / 2 + 1024) {
+            compactarNumeros();
+        }
+    }
+
+    // Move [origem, origem + quantidade) para 'destino' pagina a pagina; quando o destino fica
+    // depois da origem copia de tras para frente, como um memmove
+    private void mover(int origem, int destino, int quantidade) {
+        if (destino > origem) {
+            int restante = quantidade;
+            while (restante > 0) {
+                int fimOrigem = origem + restante;
+                int fimDestino = destino + restante;
+                int bloco = Math.min(restante, Math.min(((fimOrigem - 1) & MASCARA_PAGINA) + 1, ((fimDestino - 1) & MASCARA_PAGINA) + 1));
+                copiarBloco(fimOrigem - bloco, fimDestino - bloco, bloco);
+                restante -= bloco;
+            }
+        } else if (destino < origem) {
+            int copiados = 0;
+            while (copiados < quantidade) {
+                int de = origem + copiados;
+                int para = destino + copiados;
+                int bloco = Math.min(quantidade - copiados,
+                    Math.min(TAMANHO_PAGINA - (de & MASCARA_PAGINA), TAMANHO_PAGINA - (para & MASCARA_PAGINA)));
+                copiarBloco(de, para, bloco);
+                copiados += bloco;
+            }
+        }
+    }
+
+    private void copiarBloco(int origem, int destino, int quantidade) {
+        int paginaOrigem = origem >>> BITS_PAGINA;
+        int posicaoOrigem = origem & MASCARA_PAGINA;
+        int paginaDestino = destino >>> BITS_PAGINA;
+        int posicaoDestino = destino & MASCARA_PAGINA;
+        System.arraycopy(tipos[paginaOrigem], posicaoOrigem, tipos[paginaDestino], posicaoDestino, quantidade);
+        System.arraycopy(inicios[paginaOrigem], posicaoOrigem, inicios[paginaDestino], posicaoDestino, quantidade);
+        System.arraycopy(comprimentos[paginaOrigem], posicaoOrigem, comprimentos[paginaDestino], posicaoDestino, quantidade);
+        System.arraycopy(valores[paginaOrigem], posicaoOrigem, valores[paginaDestino], posicaoDestino, quantidade);
+    }
+
+    // Regrava 'numeros' so com os valores ainda referenciados, na ordem dos tokens
+    private void compactarNumeros() {
+        double[] compactados = new double[Math.max(16, quantidadeNumeros - numerosDescartados)];
+        int quantidade = 0;
+        for (int i = 0; i < tamanho; i++) {
+            if (tipos[i >>> BITS_PAGINA][i & MASCARA_PAGINA] == ORDINAL_NUMERO) {
+                compactados[quantidade] = numeros[valores[i >>> BITS_PAGINA][i & MASCARA_PAGINA]];
+                valores[i >>> BITS_PAGINA][i & MASCARA_PAGINA] = quantidade;
+                quantidade += 1;
+            }
+        }
+        numeros = compactados;
+        quantidadeNumeros = quantidade;
+        numerosDescartados = 0;
+    }
+
+    private void novaPagina(int pagina) {
+        if (pagina == tipos.length) {
+            crescerDiretorio();
+        }
+        criarPaginaSeFalta(pagina);
+    }
+
+    private void crescerDiretorio() {
+        int paginas = tipos.length * 2;
+        tipos = Arrays.copyOf(tipos, paginas);
+        inicios = Arrays.copyOf(inicios, paginas);
+        comprimentos = Arrays.copyOf(comprimentos, paginas);
+        valores = Arrays.copyOf(valores, paginas);
+    }
+
+    private void criarPaginaSeFalta(int pagina) {
+        if (tipos[pagina] != null) {
+            return;
+        }
+        tipos[pagina] = new byte[TAMANHO_PAGINA];
+        inicios[pagina] = new int[TAMANHO_PAGINA];
+        comprimentos[pagina] = new int[TAMANHO_PAGINA];
+        valores[pagina] = new int[TAMANHO_PAGINA];
+    }
+
+    // Libera a folga do array de numeros depois que o ultimo token foi adicionado
+    void ajustarCapacidade() {
+        if (quantidadeNumeros < numeros.length) {
+            numeros = Arrays.copyOf(numeros, quantidadeNumeros);
+        }
+    }
+
+    public int tamanho() {
+        return tamanho;
+    }
+
+    public TipoToken tipo(int indice) {
+        return TIPOS[tipos[indice >>> BITS_PAGINA][indice & MASCARA_PAGINA]];
+    }
+
+    public int inicio(int indice) {
+        return inicios[indice >>> BITS_PAGINA][indice & MASCARA_PAGINA];
+    }
+
+    public int comprimento(int indice) {
+        return comprimentos[indice >>> BITS_PAGINA][indice & MASCARA_PAGINA];
+    }
+
+    public int linha(int indice) {
+        return indiceLinhas.linha(inicio(indice));
+    }
+
+    public int coluna(int indice) {
+        return indiceLinhas.coluna(codigoFonte, inicio(indice));
+    }
+
+    // Tokens ERRO registrados pelo modo de recuperacao do analisador lexico
+    public int quantidadeErros() {
+        return quantidadeErros;
+    }
+
+    // Mensagens de todos os tokens ERRO, na ordem do codigo fonte
+    public List<String> mensagensErro() {
+        List<String> mensagens = new ArrayList<>();
+        for (int i = 0; i < tamanho && mensagens.size() < quantidadeErros; i++) {
+            if (tipo(i) == TipoToken.ERRO) {
+                mensagens.add(ErroLexico.formatar(AnalisadorLexico.mensagemCaractereInesperado(codigoFonte, inicio(i)), linha(i), coluna(i)));
+            }
+        }
+        return mensagens;
+    }
+
+    public IndiceLinhas getIndiceLinhas() {
+        return indiceLinhas;
+    }
+
+    public TabelaNomes getTabelaNomes() {
+        return nomes;
+    }
+
+    public int idNome(int indice) {
+        return valores[indice >>> BITS_PAGINA][indice & MASCARA_PAGINA];
+    }
+
+    public double numero(int indice) {
+        return numeros[valores[indice >>> BITS_PAGINA][indice & MASCARA_PAGINA]];
+    }
+
+    // Para nomes devolve a instancia unica guardada na tabela de nomes
+    public String texto(int indice) {
+        int tipo = tipos[indice >>> BITS_PAGINA][indice & MASCARA_PAGINA];
+        if (tipo == ORDINAL_IDENT || tipo == ORDINAL_VARIAVEL) {
+            return nomes.nome(idNome(indice));
+        }
+        int inicio = inicio(indice);
+        return codigoFonte.texto(inicio, inicio + comprimento(indice));
+    }
+
+    // Mesmo valor que Token.getValor(): Double para NUMERO, null para EOF e o lexema nos demais
+    public Object valor(int indice) {
+        TipoToken tipo = tipo(indice);
+        if (tipo == TipoToken.NUMERO) {
+            return numero(indice);
+        }
+        if (tipo == TipoToken.EOF) {
+            return null;
+        }
+        return texto(indice);
+    }
+
+    public Token token(int indice) {
+        int tipo = tipos[indice >>> BITS_PAGINA][indice & MASCARA_PAGINA];
+        if (tipo == ORDINAL_NUMERO) {
+            return new Token(numero(indice), linha(indice), coluna(indice));
+        }
+        if (tipo == TipoToken.EOF.ordinal()) {
+            return new Token(TipoToken.EOF, null, linha(indice), coluna(indice));
+        }
+        return new Token(TIPOS[tipo], codigoFonte, inicio(indice), comprimento(indice), linha(indice), coluna(indice));
+    }
+}
@@ -0,0 +1,109 @@
+package compilador.lexico;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Compara os tokens dos modos AUTOMATO e REGEX em cada programa (tipo, valor, linha e coluna de
+// cada token e as mensagens de erro lexico). Sem argumentos, verifica os arquivos .php de dados/
+public class VerificadorLexico {
+
+    public static void main(String[] args) {
+        List<Path> arquivos = new ArrayList<>();
+        try {
+            if (args.length == 0) {
+                arquivos.addAll(listarProgramas(Path.of("dados")));
+            } else {
+                for (String arg : args) {
+                    Path caminho = Path.of(arg);
+                    if (Files.isDirectory(caminho)) {
+                        arquivos.addAll(listarProgramas(caminho));
+                    } else {
+                        arquivos.add(caminho);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Erro ao listar programas: " + e.getMessage());
+            System.exit(2);
+        }
+
+        if (arquivos.isEmpty()) {
+            System.out.println("Nenhum programa encontrado.");
+            System.out.println("Uso: java -cp out compilador.lexico.VerificadorLexico [arquivo.php|pasta ...]");
+            System.exit(2);
+        }
+
+        int divergentes = 0;
+        for (Path arquivo : arquivos) {
+            try {
+                String codigo = Files.readString(arquivo, StandardCharsets.UTF_8);
+                List<String> automato = tokens(codigo, ModoLexico.AUTOMATO);
+                List<String> regex = tokens(codigo, ModoLexico.REGEX);
+                String diferenca = primeiraDiferenca(automato, regex);
+                if (diferenca == null) {
+                    System.out.println("OK " + arquivo + " (" + automato.size() + " tokens)");
+                } else {
+                    System.out.println("DIFERENTE " + arquivo + ": " + diferenca);
+                    divergentes++;
+                }
+            } catch (IOException e) {
+                System.out.println("ERRO " + arquivo + ": " + e.getMessage());
+                divergentes++;
+            }
+        }
+
+        System.out.println(arquivos.size() + " programa(s), " + divergentes + " com diferenca.");
+        if (divergentes > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static List<Path> listarProgramas(Path pasta) throws IOException {
+        List<Path> programas = new ArrayList<>();
+        try (DirectoryStream<Path> conteudo = Files.newDirectoryStream(pasta, "*.php")) {
+            for (Path programa : conteudo) {
+                programas.add(programa);
+            }
+        }
+        Collections.sort(programas);
+        return programas;
+    }
+
+    // Tokens de um modo como texto; erros lexicos entram no fim da lista para tambem serem comparados
+    private static List<String> tokens(String codigo, ModoLexico modo) {
+        List<String> saida = new ArrayList<>();
+        AnalisadorLexico analisador = new AnalisadorLexico(new FonteTexto(codigo), modo);
+        analisador.setRecuperarErros(true);
+        try {
+            TokenBuffer tokens = analisador.tokenizarBuffer();
+            for (int i = 0; i < tokens.tamanho(); i++) {
+                saida.add(tokens.token(i).toString());
+            }
+            for (String erro : tokens.mensagensErro()) {
+                saida.add("Erro Lexico: " + erro);
+            }
+        } catch (ErroLexico e) {
+            saida.add("Erro Lexico: " + e.getMessage());
+        }
+        return saida;
+    }
+
+    private static String primeiraDiferenca(List<String> automato, List<String> regex) {
+        int minimo = Math.min(automato.size(), regex.size());
+        for (int i = 0; i < minimo; i++) {
+            if (!automato.get(i).equals(regex.get(i))) {
+                return "item " + i + ": AUTOMATO " + automato.get(i) + " / REGEX " + regex.get(i);
+            }
+        }
+        if (automato.size() != regex.size()) {
+            return "AUTOMATO com " + automato.size() + " itens, REGEX com " + regex.size();
+        }
+        return null;
+    }
+}
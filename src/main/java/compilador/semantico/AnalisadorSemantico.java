@@ -8,12 +8,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class AnalisadorSemantico {
+public class AnalisadorSemantico implements Visitante<Void> {
     
     private TabelaSimbolos tabelaGlobal;
     private TabelaSimbolos tabelaAtual;
     private List<String> erros;
     private Map<String, TabelaSimbolos> tabelasPorEscopo;
+    private int funcoesNaoAnalisadas;
+    // Percurso da analise em andamento: os visitar* agendam os filhos em vez de visita-los
+    private PercursoIterativo percurso;
 
     public AnalisadorSemantico() {
         this.tabelaGlobal = null;
@@ -29,8 +32,11 @@ public class AnalisadorSemantico {
         erros = new ArrayList<>();
         tabelasPorEscopo = new HashMap<>();
         tabelasPorEscopo.put("global", tabelaGlobal);
+        funcoesNaoAnalisadas = 0;
 
-        analisarPrograma(ast);
+        percurso = new PercursoIterativo(this);
+        percurso.percorrer(ast);
+        percurso = null;
 
         if (!erros.isEmpty()) {
             Debug.semantico("Erros encontrados: " + erros.size());
@@ -43,46 +49,211 @@ public class AnalisadorSemantico {
     public Map<String, TabelaSimbolos> getTabelasPorEscopo() {
         return new HashMap<>(tabelasPorEscopo);
     }
+
+    // Funcoes com corpo sob demanda que nenhuma chamada alcancou: nem o corpo delas foi analisado
+    public int funcoesNaoAnalisadas() {
+        return funcoesNaoAnalisadas;
+    }
     private void erro(String mensagem) {
         erros.add(mensagem);
     }
 
-    private void analisarPrograma(Programa programa) {
-        analisarCorpo(programa.corpo);
+    @Override
+    public Void visitarPrograma(Programa programa) {
+        marcarFuncoesAlcancadas(programa.corpo);
+        percurso.visitar(programa.corpo);
+        return null;
     }
 
-    private void analisarCorpo(Corpo corpo) {
-        for (Declaracao decl : corpo.declaracoes) {
-            analisarDeclaracao(decl);
+    // Com corpos sob demanda, marca as funcoes alcancaveis por chamadas a partir do corpo principal,
+    // analisando sintaticamente o corpo de cada uma quando a primeira chamada chega nela. Depois a
+    // analise segue na ordem das declaracoes, pulando as demais, para que cada corpo veja so o que
+    // foi declarado antes dele, como na analise completa
+    private void marcarFuncoesAlcancadas(Corpo principal) {
+        Map<String, DeclaracaoFuncao> funcoes = new HashMap<>();
+        boolean sobDemanda = false;
+        for (Declaracao decl : principal.declaracoes) {
+            if (decl instanceof DeclaracaoFuncao) {
+                DeclaracaoFuncao funcao = (DeclaracaoFuncao) decl;
+                funcoes.putIfAbsent(funcao.nome, funcao);
+                sobDemanda |= !funcao.alcancada;
+            }
+        }
+        if (!sobDemanda) {
+            return;
         }
 
-        for (Comando cmd : corpo.comandos) {
-            analisarComando(cmd);
+        MarcadorChamadas marcador = new MarcadorChamadas(funcoes);
+        marcador.marcar(principal);
+        while (!marcador.pendentes.isEmpty()) {
+            DeclaracaoFuncao funcao = marcador.pendentes.remove(marcador.pendentes.size() - 1);
+            Debug.semantico("Analisando corpo sob demanda: " + funcao.nome);
+            marcador.marcar(funcao.carregarCorpo());
         }
     }
 
-    private void analisarDeclaracao(Declaracao decl) {
-        if (decl instanceof DeclaracaoVariavel) {
-            analisarDeclaracaoVariavel((DeclaracaoVariavel) decl);
-        } else if (decl instanceof DeclaracaoFuncao) {
-            analisarDeclaracaoFuncao((DeclaracaoFuncao) decl);
+    // Marca as funcoes chamadas num corpo (inicializacoes das variaveis e depois comandos, cada
+    // chamada antes dos argumentos), guardando em 'pendentes' as que ainda nao tinham sido
+    // alcancadas. Os corpos das funcoes declaradas nele nao sao percorridos: so entram quando
+    // alguma chamada chega na funcao
+    private static final class MarcadorChamadas implements Visitante<Void> {
+        final Map<String, DeclaracaoFuncao> funcoes;
+        final List<DeclaracaoFuncao> pendentes = new ArrayList<>();
+        final PercursoIterativo percurso = new PercursoIterativo(this);
+
+        MarcadorChamadas(Map<String, DeclaracaoFuncao> funcoes) {
+            this.funcoes = funcoes;
+        }
+
+        void marcar(Corpo corpo) {
+            percurso.percorrer(corpo);
+        }
+
+        private void marcarChamada(String nomeFuncao) {
+            DeclaracaoFuncao funcao = funcoes.get(nomeFuncao);
+            if (funcao != null && !funcao.alcancada) {
+                funcao.alcancada = true;
+                pendentes.add(funcao);
+            }
+        }
+
+        @Override
+        public Void visitarPrograma(Programa programa) {
+            percurso.visitar(programa.corpo);
+            return null;
+        }
+
+        @Override
+        public Void visitarCorpo(Corpo corpo) {
+            percurso.visitarTodos(corpo.declaracoes);
+            percurso.visitarTodos(corpo.comandos);
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoVariavel(DeclaracaoVariavel declaracao) {
+            if (declaracao.expressaoInicial != null) {
+                percurso.visitar(declaracao.expressaoInicial);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoFuncao(DeclaracaoFuncao declaracao) {
+            return null;
+        }
+
+        @Override
+        public Void visitarDeclaracaoErro(DeclaracaoErro declaracao) {
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoEcho(ComandoEcho comando) {
+            percurso.visitar(comando.expressao);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoIf(ComandoIf comando) {
+            percurso.visitar(comando.condicao);
+            percurso.visitarTodos(comando.blocoIf);
+            if (comando.blocoElse != null) {
+                percurso.visitarTodos(comando.blocoElse);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoWhile(ComandoWhile comando) {
+            percurso.visitar(comando.condicao);
+            percurso.visitarTodos(comando.bloco);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoAtribuicao(ComandoAtribuicao comando) {
+            percurso.visitar(comando.expressao);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoChamadaFuncao(ComandoChamadaFuncao comando) {
+            marcarChamada(comando.nomeFuncao);
+            percurso.visitarTodos(comando.argumentos);
+            return null;
+        }
+
+        @Override
+        public Void visitarComandoErro(ComandoErro comando) {
+            return null;
+        }
+
+        @Override
+        public Void visitarCondicao(Condicao condicao) {
+            percurso.visitar(condicao.expressao);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoBinaria(ExpressaoBinaria expressao) {
+            percurso.visitar(expressao.esquerda);
+            percurso.visitar(expressao.direita);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoUnaria(ExpressaoUnaria expressao) {
+            percurso.visitar(expressao.operando);
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoVariavel(ExpressaoVariavel expressao) {
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoNumero(ExpressaoNumero expressao) {
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoLeitura(ExpressaoLeitura expressao) {
+            return null;
+        }
+
+        @Override
+        public Void visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expressao) {
+            marcarChamada(expressao.nomeFuncao);
+            percurso.visitarTodos(expressao.argumentos);
+            return null;
         }
     }
 
-    private void analisarDeclaracaoVariavel(DeclaracaoVariavel decl) {
+    @Override
+    public Void visitarCorpo(Corpo corpo) {
+        percurso.visitarTodos(corpo.declaracoes);
+        percurso.visitarTodos(corpo.comandos);
+        return null;
+    }
+
+    @Override
+    public Void visitarDeclaracaoVariavel(DeclaracaoVariavel decl) {
         String nome = decl.nome;
         Debug.semantico("Analisando declaracao de variavel: " + nome + " (escopo: " + tabelaAtual.nomeEscopo + ")");
 
-        if (tabelaAtual.buscarLocal(nome) != null) {
+        if (tabelaAtual.buscarLocal(decl.idNome) != null) {
             erro("Variavel '" + nome + "' ja declarada neste escopo");
-            return;
+            return null;
         }
 
         int endereco = tabelaAtual.alocarEndereco();
         decl.endereco = endereco;
+        decl.global = tabelaAtual == tabelaGlobal;
         Debug.semantico("  Endereco alocado: " + endereco);
 
-        Simbolo simbolo = new Simbolo(nome, TipoSimbolo.VARIAVEL, endereco, null, tabelaAtual.nomeEscopo);
+        Simbolo simbolo = new Simbolo(nome, decl.idNome, TipoSimbolo.VARIAVEL, endereco, null, tabelaAtual.nomeEscopo);
 
         try {
             tabelaAtual.adicionar(simbolo);
@@ -93,20 +264,27 @@ public class AnalisadorSemantico {
 
         if (decl.expressaoInicial != null) {
             Debug.semantico("  Analisando expressao inicial");
-            analisarExpressao(decl.expressaoInicial);
+            percurso.visitar(decl.expressaoInicial);
         }
+        return null;
     }
 
-    private void analisarDeclaracaoFuncao(DeclaracaoFuncao decl) {
+    @Override
+    public Void visitarDeclaracaoFuncao(DeclaracaoFuncao decl) {
         String nome = decl.nome;
+        if (!decl.alcancada) {
+            Debug.semantico("Funcao nao chamada, corpo nao analisado: " + nome);
+            funcoesNaoAnalisadas += 1;
+            return null;
+        }
         Debug.semantico("Analisando declaracao de funcao: " + nome);
 
-        if (tabelaGlobal.buscarLocal(nome) != null) {
+        if (tabelaGlobal.buscarLocal(decl.idNome) != null) {
             erro("Funcao '" + nome + "' ja declarada");
-            return;
+            return null;
         }
 
-        Simbolo simboloFuncao = new Simbolo(nome, TipoSimbolo.FUNCAO, -1, decl.parametros, "global");
+        Simbolo simboloFuncao = new Simbolo(nome, decl.idNome, TipoSimbolo.FUNCAO, -1, decl.parametros, "global");
         Debug.semantico("  Parametros: " + decl.parametros);
 
         try {
@@ -120,9 +298,10 @@ public class AnalisadorSemantico {
         Debug.semantico("  Entrando no escopo da funcao: " + nome);
         tabelasPorEscopo.put(nome, tabelaFuncao);
 
-        for (String param : decl.parametros) {
+        for (int i = 0; i < decl.parametros.size(); i++) {
+            String param = decl.parametros.get(i);
             int endereco = tabelaFuncao.alocarEndereco();
-            Simbolo simboloParam = new Simbolo(param, TipoSimbolo.PARAMETRO, endereco, null, nome);
+            Simbolo simboloParam = new Simbolo(param, decl.idsParametros[i], TipoSimbolo.PARAMETRO, endereco, null, nome);
             Debug.semantico("  Parametro " + param + " -> endereco " + endereco);
             try {
                 tabelaFuncao.adicionar(simboloParam);
@@ -134,91 +313,113 @@ public class AnalisadorSemantico {
         TabelaSimbolos tabelaAnterior = tabelaAtual;
         tabelaAtual = tabelaFuncao;
 
-        analisarCorpo(decl.corpo);
+        percurso.visitar(decl.carregarCorpo());
+        percurso.depois(() -> {
+            simboloFuncao.numVariaveisLocais = tabelaFuncao.proximoEndereco;
+            Debug.semantico("  Variaveis locais da funcao: " + simboloFuncao.numVariaveisLocais);
+            Debug.semantico("  Saindo do escopo da funcao: " + nome);
 
-        simboloFuncao.numVariaveisLocais = tabelaFuncao.proximoEndereco;
-        Debug.semantico("  Variaveis locais da funcao: " + simboloFuncao.numVariaveisLocais);
-        Debug.semantico("  Saindo do escopo da funcao: " + nome);
-
-        tabelaAtual = tabelaAnterior;
+            tabelaFuncao.fechar();
+            tabelaAtual = tabelaAnterior;
+        });
+        return null;
     }
 
-    private void analisarComando(Comando cmd) {
-        if (cmd instanceof ComandoEcho) {
-            analisarComandoEcho((ComandoEcho) cmd);
-        } else if (cmd instanceof ComandoIf) {
-            analisarComandoIf((ComandoIf) cmd);
-        } else if (cmd instanceof ComandoWhile) {
-            analisarComandoWhile((ComandoWhile) cmd);
-        } else if (cmd instanceof ComandoAtribuicao) {
-            analisarComandoAtribuicao((ComandoAtribuicao) cmd);
-        } else if (cmd instanceof ComandoChamadaFuncao) {
-            analisarComandoChamadaFuncao((ComandoChamadaFuncao) cmd);
-        }
+    @Override
+    public Void visitarDeclaracaoErro(DeclaracaoErro decl) {
+        return null;
     }
 
-    private void analisarComandoEcho(ComandoEcho cmd) {
-        analisarExpressao(cmd.expressao);
+    @Override
+    public Void visitarComandoEcho(ComandoEcho cmd) {
+        percurso.visitar(cmd.expressao);
+        return null;
     }
 
-    private void analisarComandoIf(ComandoIf cmd) {
-        analisarCondicao(cmd.condicao);
-        for (Comando c : cmd.blocoIf) {
-            analisarComando(c);
-        }
+    @Override
+    public Void visitarComandoIf(ComandoIf cmd) {
+        percurso.visitar(cmd.condicao);
+        percurso.visitarTodos(cmd.blocoIf);
         if (cmd.blocoElse != null) {
-            for (Comando c : cmd.blocoElse) {
-                analisarComando(c);
-            }
+            percurso.visitarTodos(cmd.blocoElse);
         }
+        return null;
+    }
+
+    @Override
+    public Void visitarComandoWhile(ComandoWhile cmd) {
+        percurso.visitar(cmd.condicao);
+        percurso.visitarTodos(cmd.bloco);
+        return null;
     }
 
-    private void analisarComandoWhile(ComandoWhile cmd) {
-        analisarCondicao(cmd.condicao);
-        for (Comando c : cmd.bloco) {
-            analisarComando(c);
+    @Override
+    public Void visitarComandoAtribuicao(ComandoAtribuicao cmd) {
+        Simbolo simbolo = verificarVariavelDeclarada(cmd.variavel, cmd.idVariavel);
+        if (simbolo != null) {
+            cmd.resolver(simbolo.endereco, ehGlobal(simbolo, cmd.idVariavel));
         }
+        percurso.visitar(cmd.expressao);
+        return null;
+    }
+
+    @Override
+    public Void visitarComandoChamadaFuncao(ComandoChamadaFuncao cmd) {
+        validarChamadaFuncao(cmd.nomeFuncao, cmd.idFuncao, cmd.argumentos);
+        return null;
     }
 
-    private void analisarComandoAtribuicao(ComandoAtribuicao cmd) {
-        verificarVariavelDeclarada(cmd.variavel);
-        analisarExpressao(cmd.expressao);
+    @Override
+    public Void visitarComandoErro(ComandoErro cmd) {
+        return null;
     }
 
-    private void analisarComandoChamadaFuncao(ComandoChamadaFuncao cmd) {
-        validarChamadaFuncao(cmd.nomeFuncao, cmd.argumentos);
+    @Override
+    public Void visitarCondicao(Condicao cond) {
+        percurso.visitar(cond.expressao);
+        return null;
     }
 
-    private void analisarCondicao(Condicao cond) {
-        analisarExpressao(cond.expressao);
+    @Override
+    public Void visitarExpressaoBinaria(ExpressaoBinaria bin) {
+        percurso.visitar(bin.esquerda);
+        percurso.visitar(bin.direita);
+        return null;
     }
 
-    private void analisarExpressao(Expressao expr) {
-        if (expr instanceof ExpressaoLeitura) {
-            return;
-        }
-        if (expr instanceof ExpressaoBinaria) {
-            ExpressaoBinaria bin = (ExpressaoBinaria) expr;
-            analisarExpressao(bin.esquerda);
-            analisarExpressao(bin.direita);
-        } else if (expr instanceof ExpressaoUnaria) {
-            ExpressaoUnaria un = (ExpressaoUnaria) expr;
-            analisarExpressao(un.operando);
-        } else if (expr instanceof ExpressaoVariavel) {
-            verificarVariavelDeclarada(((ExpressaoVariavel) expr).nome);
-        } else if (expr instanceof ExpressaoNumero) {
-            return;
-        } else if (expr instanceof ExpressaoChamadaFuncao) {
-            analisarExpressaoChamadaFuncao((ExpressaoChamadaFuncao) expr);
+    @Override
+    public Void visitarExpressaoUnaria(ExpressaoUnaria un) {
+        percurso.visitar(un.operando);
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoVariavel(ExpressaoVariavel expr) {
+        Simbolo simbolo = verificarVariavelDeclarada(expr.nome, expr.idNome);
+        if (simbolo != null) {
+            expr.resolver(simbolo.endereco, ehGlobal(simbolo, expr.idNome));
         }
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoNumero(ExpressaoNumero expr) {
+        return null;
     }
 
-    private void analisarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expr) {
-        validarChamadaFuncao(expr.nomeFuncao, expr.argumentos);
+    @Override
+    public Void visitarExpressaoLeitura(ExpressaoLeitura expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expr) {
+        validarChamadaFuncao(expr.nomeFuncao, expr.idFuncao, expr.argumentos);
+        return null;
     }
 
-    private void validarChamadaFuncao(String nomeFuncao, List<Expressao> argumentos) {
-        Simbolo simbolo = tabelaGlobal.buscar(nomeFuncao);
+    private void validarChamadaFuncao(String nomeFuncao, int idFuncao, List<Expressao> argumentos) {
+        Simbolo simbolo = tabelaGlobal.buscar(idFuncao);
 
         if (simbolo == null) {
             erro("Funcao '" + nomeFuncao + "' nao declarada");
@@ -237,12 +438,10 @@ public class AnalisadorSemantico {
             erro("Funcao '" + nomeFuncao + "' espera " + numParams + " argumento(s), mas recebeu " + numArgs);
         }
 
-        for (Expressao arg : argumentos) {
-            analisarExpressao(arg);
-        }
+        percurso.visitarTodos(argumentos);
     }
-    private Simbolo verificarVariavelDeclarada(String nome) {
-        Simbolo simbolo = tabelaAtual.buscar(nome);
+    private Simbolo verificarVariavelDeclarada(String nome, int idNome) {
+        Simbolo simbolo = tabelaAtual.buscar(idNome);
 
         if (simbolo == null) {
             erro("Variavel '" + nome + "' nao declarada");
@@ -256,15 +455,20 @@ public class AnalisadorSemantico {
 
         return simbolo;
     }
-    public int obterEnderecoVariavel(String nome) {
-        Simbolo simbolo = tabelaAtual.buscar(nome);
+    // Achado pelo buscar() de tabelaAtual: e global se nao veio do escopo da funcao
+    private boolean ehGlobal(Simbolo simbolo, int idNome) {
+        return tabelaAtual == tabelaGlobal || tabelaAtual.buscarLocal(idNome) != simbolo;
+    }
+
+    public int obterEnderecoVariavel(int idNome) {
+        Simbolo simbolo = tabelaAtual.buscar(idNome);
         if (simbolo != null && (simbolo.tipo == TipoSimbolo.VARIAVEL || simbolo.tipo == TipoSimbolo.PARAMETRO)) {
             return simbolo.endereco;
         }
         return -1;
     }
-    public Simbolo obterInfoFuncao(String nome) {
-        Simbolo simbolo = tabelaGlobal.buscar(nome);
+    public Simbolo obterInfoFuncao(int idNome) {
+        Simbolo simbolo = tabelaGlobal.buscar(idNome);
         if (simbolo != null && simbolo.tipo == TipoSimbolo.FUNCAO) {
             return simbolo;
         }
@@ -0,0 +1,374 @@
+package compilador.semantico;
+
+import compilador.Debug;
+import compilador.arvore_sintatica_abstrata.*;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Inferencia de tipos depois da analise semantica: classifica cada variavel e cada expressao como
+// BOOLEANO, INTEIRO ou REAL (ver TipoValor), anota o tipo nas expressoes da AST (anotarTipo) e nos
+// simbolos das variaveis e parametros (tipoValor), para que as etapas seguintes possam escolher
+// caminhos especializados.
+//
+// O tipo de uma variavel junta o de tudo o que pode ser guardado nela: o zero inicial, a expressao
+// inicial, as atribuicoes e, nos parametros, os argumentos de cada chamada. Uma expressao e REAL se
+// e leitura (floatval(readline())), divisao, chamada de funcao (que nao deixa valor conhecido) ou
+// literal fracionario; BOOLEANO se e comparacao, '&&' ou '||'; '+', '-' e '*' dao pelo menos
+// INTEIRO e '!' mantem o tipo do operando (a maquina calcula 1 - x).
+//
+// Sao duas passadas pela AST. A primeira guarda, para cada variavel, o tipo que as expressoes
+// guardadas nela tem por conta propria e de quais variaveis ela recebe o tipo (as lidas fora de
+// comparacoes, divisoes e argumentos); os tipos sobem por essas ligacoes ate nao mudarem, e cada
+// variavel sobe no maximo duas vezes. A segunda anota cada expressao, depois dos filhos dela.
+public class InferenciaTipos implements Visitante<Void> {
+
+    private static final TipoValor[] TIPOS = TipoValor.values();
+    // Dado da volta a uma expressao depois dos filhos, na segunda passada. Na primeira o dado e a
+    // variavel que recebe o valor da expressao + 1 (0 = nenhuma)
+    private static final int DEPOIS = -1;
+
+    private final TabelaSimbolos tabelaGlobal;
+    private final Map<String, TabelaSimbolos> tabelasPorEscopo;
+    // Variaveis numeradas: as globais pelo endereco e as de cada funcao a partir da base dela
+    private final Map<Simbolo, Integer> basesFuncoes;
+    // Ordinal do TipoValor de cada variavel
+    private byte[] tipos;
+    // Ligacoes origem -> destino: o destino recebe o tipo da origem
+    private int[] origens;
+    private int[] destinos;
+    private int quantidadeLigacoes;
+    private int baseLocal;
+    private boolean anotando;
+    private PercursoIterativo percurso;
+
+    public InferenciaTipos(TabelaSimbolos tabelaGlobal, Map<String, TabelaSimbolos> tabelasPorEscopo) {
+        this.tabelaGlobal = tabelaGlobal;
+        this.tabelasPorEscopo = tabelasPorEscopo;
+        this.basesFuncoes = new IdentityHashMap<>();
+    }
+
+    public void inferir(Programa ast) {
+        Debug.semantico("=== Iniciando Inferencia de Tipos ===");
+        int quantidade = numerarVariaveis(ast.corpo);
+        tipos = new byte[quantidade];
+        origens = new int[16];
+        destinos = new int[16];
+        quantidadeLigacoes = 0;
+
+        percurso = new PercursoIterativo(this);
+        anotando = false;
+        percurso.percorrer(ast);
+        propagar();
+        anotando = true;
+        percurso.percorrer(ast);
+        percurso = null;
+
+        anotarSimbolos();
+        Debug.semantico("=== Inferencia de Tipos Concluida: " + quantidade + " variaveis, "
+            + quantidadeLigacoes + " ligacoes ===");
+    }
+
+    private int numerarVariaveis(Corpo principal) {
+        int total = tabelaGlobal.proximoEndereco;
+        for (Declaracao decl : principal.declaracoes) {
+            if (decl instanceof DeclaracaoFuncao && ((DeclaracaoFuncao) decl).alcancada) {
+                Simbolo funcao = tabelaGlobal.buscar(((DeclaracaoFuncao) decl).idNome);
+                if (funcao != null && funcao.tipo == TipoSimbolo.FUNCAO && !basesFuncoes.containsKey(funcao)) {
+                    basesFuncoes.put(funcao, total);
+                    total += funcao.numVariaveisLocais;
+                }
+            }
+        }
+        return total;
+    }
+
+    // Sobe o tipo de cada destino ate o maior tipo das origens dele, com uma pilha de variaveis
+    // cujo tipo subiu; as ligacoes sao agrupadas por origem antes
+    private void propagar() {
+        int quantidade = tipos.length;
+        int[] inicios = new int[quantidade + 1];
+        for (int i = 0; i < quantidadeLigacoes; i++) {
+            inicios[origens[i] + 1] += 1;
+        }
+        for (int v = 0; v < quantidade; v++) {
+            inicios[v + 1] += inicios[v];
+        }
+        int[] saidas = new int[quantidadeLigacoes];
+        int[] proxima = Arrays.copyOf(inicios, quantidade);
+        for (int i = 0; i < quantidadeLigacoes; i++) {
+            saidas[proxima[origens[i]]] = destinos[i];
+            proxima[origens[i]] += 1;
+        }
+
+        int[] pilha = new int[3 * quantidade];
+        int topo = 0;
+        for (int v = quantidade - 1; v >= 0; v--) {
+            pilha[topo] = v;
+            topo += 1;
+        }
+        while (topo > 0) {
+            topo -= 1;
+            int origem = pilha[topo];
+            for (int i = inicios[origem]; i < inicios[origem + 1]; i++) {
+                int destino = saidas[i];
+                if (tipos[origem] > tipos[destino]) {
+                    tipos[destino] = tipos[origem];
+                    pilha[topo] = destino;
+                    topo += 1;
+                }
+            }
+        }
+    }
+
+    private void anotarSimbolos() {
+        for (int i = 0; i < tabelaGlobal.quantidade(); i++) {
+            Simbolo simbolo = tabelaGlobal.simbolo(i);
+            if (simbolo.tipo != TipoSimbolo.FUNCAO) {
+                simbolo.tipoValor = TIPOS[tipos[simbolo.endereco]];
+            }
+        }
+        for (Map.Entry<Simbolo, Integer> funcao : basesFuncoes.entrySet()) {
+            TabelaSimbolos tabela = tabelasPorEscopo.get(funcao.getKey().nome);
+            if (tabela == null || tabela == tabelaGlobal) {
+                continue;
+            }
+            for (int i = 0; i < tabela.quantidade(); i++) {
+                Simbolo simbolo = tabela.simbolo(i);
+                simbolo.tipoValor = TIPOS[tipos[funcao.getValue() + simbolo.endereco]];
+            }
+        }
+    }
+
+    // --- Regras de tipo, usadas pelas duas passadas ---
+
+    static TipoValor tipoBinaria(String operador, TipoValor esquerda, TipoValor direita) {
+        switch (operador) {
+            case "+":
+            case "-":
+            case "*":
+                return TipoValor.unir(TipoValor.INTEIRO, TipoValor.unir(esquerda, direita));
+            case "/":
+                return TipoValor.REAL;
+            default:
+                return TipoValor.BOOLEANO;
+        }
+    }
+
+    // Operadores cujo resultado tem pelo menos o tipo dos operandos
+    private static boolean repassaOperandos(String operador) {
+        return "+".equals(operador) || "-".equals(operador) || "*".equals(operador);
+    }
+
+    static TipoValor tipoUnaria(String operador, TipoValor operando) {
+        if ("-".equals(operador)) {
+            return TipoValor.unir(TipoValor.INTEIRO, operando);
+        }
+        return operando;
+    }
+
+    // --- Primeira passada ---
+
+    private void contribuir(int dado, TipoValor tipo) {
+        if (dado > 0 && tipo.ordinal() > tipos[dado - 1]) {
+            tipos[dado - 1] = (byte) tipo.ordinal();
+        }
+    }
+
+    private void ligar(int origem, int dado) {
+        if (dado <= 0 || origem == dado - 1) {
+            return;
+        }
+        if (quantidadeLigacoes == origens.length) {
+            origens = Arrays.copyOf(origens, quantidadeLigacoes * 2);
+            destinos = Arrays.copyOf(destinos, quantidadeLigacoes * 2);
+        }
+        origens[quantidadeLigacoes] = origem;
+        destinos[quantidadeLigacoes] = dado - 1;
+        quantidadeLigacoes += 1;
+    }
+
+    // --- Percurso ---
+
+    private int indiceVariavel(boolean global, int endereco) {
+        return global ? endereco : baseLocal + endereco;
+    }
+
+    @Override
+    public Void visitarPrograma(Programa programa) {
+        baseLocal = 0;
+        percurso.visitar(programa.corpo);
+        return null;
+    }
+
+    @Override
+    public Void visitarCorpo(Corpo corpo) {
+        percurso.visitarTodos(corpo.declaracoes);
+        percurso.visitarTodos(corpo.comandos);
+        return null;
+    }
+
+    @Override
+    public Void visitarDeclaracaoVariavel(DeclaracaoVariavel decl) {
+        if (decl.expressaoInicial != null) {
+            percurso.visitar(decl.expressaoInicial, anotando ? 0 : indiceVariavel(decl.global, decl.endereco) + 1);
+        }
+        return null;
+    }
+
+    // As variaveis locais do corpo de uma funcao sao numeradas a partir da base dela
+    @Override
+    public Void visitarDeclaracaoFuncao(DeclaracaoFuncao decl) {
+        Integer base = decl.alcancada ? basesFuncoes.get(tabelaGlobal.buscar(decl.idNome)) : null;
+        if (base == null) {
+            return null;
+        }
+        int baseAnterior = baseLocal;
+        baseLocal = base;
+        percurso.visitar(decl.carregarCorpo());
+        percurso.depois(() -> baseLocal = baseAnterior);
+        return null;
+    }
+
+    @Override
+    public Void visitarDeclaracaoErro(DeclaracaoErro decl) {
+        return null;
+    }
+
+    @Override
+    public Void visitarComandoEcho(ComandoEcho cmd) {
+        percurso.visitar(cmd.expressao);
+        return null;
+    }
+
+    @Override
+    public Void visitarComandoIf(ComandoIf cmd) {
+        percurso.visitar(cmd.condicao);
+        percurso.visitarTodos(cmd.blocoIf);
+        if (cmd.blocoElse != null) {
+            percurso.visitarTodos(cmd.blocoElse);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitarComandoWhile(ComandoWhile cmd) {
+        percurso.visitar(cmd.condicao);
+        percurso.visitarTodos(cmd.bloco);
+        return null;
+    }
+
+    @Override
+    public Void visitarComandoAtribuicao(ComandoAtribuicao cmd) {
+        percurso.visitar(cmd.expressao, anotando ? 0 : indiceVariavel(cmd.global, cmd.endereco) + 1);
+        return null;
+    }
+
+    @Override
+    public Void visitarComandoChamadaFuncao(ComandoChamadaFuncao cmd) {
+        visitarArgumentos(cmd.idFuncao, cmd.argumentos);
+        return null;
+    }
+
+    // Na primeira passada cada argumento vai para o parametro correspondente da funcao chamada
+    private void visitarArgumentos(int idFuncao, List<Expressao> argumentos) {
+        Simbolo funcao = tabelaGlobal.buscar(idFuncao);
+        Integer base = funcao == null ? null : basesFuncoes.get(funcao);
+        for (int i = 0; i < argumentos.size(); i++) {
+            int alvo = !anotando && base != null && i < funcao.parametros.size() ? base + i + 1 : 0;
+            percurso.visitar(argumentos.get(i), alvo);
+        }
+    }
+
+    @Override
+    public Void visitarComandoErro(ComandoErro cmd) {
+        return null;
+    }
+
+    @Override
+    public Void visitarCondicao(Condicao cond) {
+        percurso.visitar(cond.expressao);
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoBinaria(ExpressaoBinaria expr) {
+        if (anotando) {
+            if (percurso.dado() == DEPOIS) {
+                expr.anotarTipo(tipoBinaria(expr.operador, expr.esquerda.tipo, expr.direita.tipo));
+                return null;
+            }
+            percurso.visitar(expr.esquerda);
+            percurso.visitar(expr.direita);
+            percurso.visitar(expr, DEPOIS);
+            return null;
+        }
+        int alvo = percurso.dado();
+        contribuir(alvo, tipoBinaria(expr.operador, TipoValor.BOOLEANO, TipoValor.BOOLEANO));
+        int alvoOperandos = repassaOperandos(expr.operador) ? alvo : 0;
+        percurso.visitar(expr.esquerda, alvoOperandos);
+        percurso.visitar(expr.direita, alvoOperandos);
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoUnaria(ExpressaoUnaria expr) {
+        if (anotando) {
+            if (percurso.dado() == DEPOIS) {
+                expr.anotarTipo(tipoUnaria(expr.operador, expr.operando.tipo));
+                return null;
+            }
+            percurso.visitar(expr.operando);
+            percurso.visitar(expr, DEPOIS);
+            return null;
+        }
+        int alvo = percurso.dado();
+        contribuir(alvo, tipoUnaria(expr.operador, TipoValor.BOOLEANO));
+        percurso.visitar(expr.operando, alvo);
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoVariavel(ExpressaoVariavel expr) {
+        int indice = indiceVariavel(expr.global, expr.endereco);
+        if (anotando) {
+            expr.anotarTipo(TIPOS[tipos[indice]]);
+        } else {
+            ligar(indice, percurso.dado());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoNumero(ExpressaoNumero expr) {
+        if (anotando) {
+            expr.anotarTipo(TipoValor.doLiteral(expr.valor));
+        } else {
+            contribuir(percurso.dado(), TipoValor.doLiteral(expr.valor));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoLeitura(ExpressaoLeitura expr) {
+        if (anotando) {
+            expr.anotarTipo(TipoValor.REAL);
+        } else {
+            contribuir(percurso.dado(), TipoValor.REAL);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitarExpressaoChamadaFuncao(ExpressaoChamadaFuncao expr) {
+        if (anotando) {
+            expr.anotarTipo(TipoValor.REAL);
+        } else {
+            contribuir(percurso.dado(), TipoValor.REAL);
+        }
+        visitarArgumentos(expr.idFuncao, expr.argumentos);
+        return null;
+    }
+}
@@ -1,20 +1,27 @@
 package compilador.semantico;
 
+import compilador.arvore_sintatica_abstrata.TipoValor;
+
 import java.util.ArrayList;
 import java.util.List;
 
 public class Simbolo {
 
     public final String nome;
+    // Id do nome na TabelaNomes da compilacao; e por ele que a TabelaSimbolos acha o simbolo
+    public final int idNome;
     public final TipoSimbolo tipo;
     public int endereco;
     public List<String> parametros;
     public int numVariaveisLocais;
     public int enderecoInicio;
     public String escopo;
+    // Variaveis e parametros: tipo dado pela InferenciaTipos (null antes dela)
+    public TipoValor tipoValor;
 
-    public Simbolo(String nome, TipoSimbolo tipo, int endereco, List<String> parametros, String escopo) {
+    public Simbolo(String nome, int idNome, TipoSimbolo tipo, int endereco, List<String> parametros, String escopo) {
         this.nome = nome;
+        this.idNome = idNome;
         this.tipo = tipo;
         this.endereco = endereco;
         this.parametros = parametros == null ? new ArrayList<>() : new ArrayList<>(parametros);
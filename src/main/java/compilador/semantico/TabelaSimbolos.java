@@ -1,41 +1,89 @@
 package compilador.semantico;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
+// Simbolos de um escopo, achados pelo id do nome (ver TabelaNomes) em vetores: cada simbolo ocupa
+// uma posicao densa em 'simbolos', na ordem da declaracao, e 'posicaoPorNome' leva o id do nome a
+// essa posicao + 1 (0 = nao declarado aqui), sem espalhar o nome a cada busca.
+//
+// Um vetor indexado por id em cada funcao custaria funcoes x nomes, entao as tabelas de funcao
+// pegam o vetor emprestado da raiz e o devolvem em fechar(), limpando so as posicoes que usaram.
+// Depois de fechada a tabela continua valendo, mas a busca passa a percorrer os simbolos dela.
 public class TabelaSimbolos {
-    
-    private final Map<String, Simbolo> simbolos;
+
+    private Simbolo[] simbolos;
+    private int quantidade;
+    private int[] posicaoPorNome;
     private final TabelaSimbolos pai;
+    private final TabelaSimbolos raiz;
+    // So na raiz: vetores devolvidos pelas tabelas fechadas, todos zerados
+    private final ArrayDeque<int[]> vetoresLivres;
     public final String nomeEscopo;
     public int proximoEndereco;
 
     public TabelaSimbolos(TabelaSimbolos pai, String nomeEscopo) {
-        this.simbolos = new HashMap<>();
+        this.simbolos = new Simbolo[8];
+        this.quantidade = 0;
         this.pai = pai;
         this.nomeEscopo = nomeEscopo;
         this.proximoEndereco = 0;
+        if (pai == null) {
+            this.raiz = this;
+            this.vetoresLivres = new ArrayDeque<>();
+            this.posicaoPorNome = new int[64];
+        } else {
+            this.raiz = pai.raiz;
+            this.vetoresLivres = null;
+            this.posicaoPorNome = raiz.emprestarVetor();
+        }
     }
+
     public void adicionar(Simbolo simbolo) throws ErroTabelaSimbolos {
-        if (simbolos.containsKey(simbolo.nome)) {
+        if (buscarLocal(simbolo.idNome) != null) {
             throw new ErroTabelaSimbolos("Simbolo '" + simbolo.nome + "' ja declarado neste escopo");
         }
-        simbolos.put(simbolo.nome, simbolo);
+        if (posicaoPorNome == null) {
+            throw new IllegalStateException("Tabela de simbolos fechada: " + nomeEscopo);
+        }
+        if (quantidade == simbolos.length) {
+            simbolos = Arrays.copyOf(simbolos, quantidade * 2);
+        }
+        if (simbolo.idNome >= posicaoPorNome.length) {
+            posicaoPorNome = Arrays.copyOf(posicaoPorNome, Math.max(simbolo.idNome + 1, posicaoPorNome.length * 2));
+        }
+        simbolos[quantidade] = simbolo;
+        quantidade += 1;
+        posicaoPorNome[simbolo.idNome] = quantidade;
     }
 
-    public Simbolo buscar(String nome) {
-        Simbolo simbolo = simbolos.get(nome);
-        if (simbolo != null) {
-            return simbolo;
-        }
-        if (pai != null) {
-            return pai.buscar(nome);
+    public Simbolo buscar(int idNome) {
+        for (TabelaSimbolos tabela = this; tabela != null; tabela = tabela.pai) {
+            Simbolo simbolo = tabela.buscarLocal(idNome);
+            if (simbolo != null) {
+                return simbolo;
+            }
         }
         return null;
     }
 
-    public Simbolo buscarLocal(String nome) {
-        return simbolos.get(nome);
+    // Um id negativo e de um nome que nao entrou na tabela de nomes, entao nunca foi declarado
+    public Simbolo buscarLocal(int idNome) {
+        if (idNome < 0) {
+            return null;
+        }
+        if (posicaoPorNome != null) {
+            if (idNome >= posicaoPorNome.length || posicaoPorNome[idNome] == 0) {
+                return null;
+            }
+            return simbolos[posicaoPorNome[idNome] - 1];
+        }
+        for (int i = 0; i < quantidade; i++) {
+            if (simbolos[i].idNome == idNome) {
+                return simbolos[i];
+            }
+        }
+        return null;
     }
 
     public int alocarEndereco() {
@@ -43,7 +91,34 @@ public class TabelaSimbolos {
         proximoEndereco += 1;
         return endereco;
     }
-    public Map<String, Simbolo> getTodosSimbolos() {
-        return new HashMap<>(simbolos);
+
+    // Quantidade de simbolos do escopo; simbolo(posicao) os da na ordem da declaracao
+    public int quantidade() {
+        return quantidade;
+    }
+
+    public Simbolo simbolo(int posicao) {
+        return simbolos[posicao];
+    }
+
+    // Devolve o vetor de busca a raiz quando o escopo de funcao termina
+    public void fechar() {
+        if (pai == null || posicaoPorNome == null) {
+            return;
+        }
+        for (int i = 0; i < quantidade; i++) {
+            posicaoPorNome[simbolos[i].idNome] = 0;
+        }
+        raiz.devolverVetor(posicaoPorNome);
+        posicaoPorNome = null;
+    }
+
+    private int[] emprestarVetor() {
+        int[] vetor = vetoresLivres.poll();
+        return vetor != null ? vetor : new int[64];
+    }
+
+    private void devolverVetor(int[] vetor) {
+        vetoresLivres.push(vetor);
     }
 }
@@ -0,0 +1,81 @@
+package compilador.sintatico;
+
+import compilador.Debug;
+import compilador.arvore_sintatica_abstrata.Programa;
+import compilador.lexico.ErroLexico;
+import compilador.lexico.LexicoIncremental;
+import compilador.lexico.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Analise lexica e sintatica de um texto editado aos poucos (integracao com editor). Cada edicao
+// escaneia so os tokens que mudaram (LexicoIncremental) e, no corpo principal, as funcoes e os
+// comandos cuja faixa de tokens nao foi tocada sao reaproveitados da ultima analise, com o seu
+// Corpo e todas as subarvores; o resto e analisado de novo. A AST e os erros sao os mesmos de
+// analisar o texto inteiro.
+public class AnalisadorIncremental {
+
+    private final LexicoIncremental lexico;
+    // Nos do corpo principal da ultima analise bem sucedida, com as faixas ja ajustadas as
+    // edicoes feitas depois dela
+    private List<NoAnalisado> nosPrincipais;
+
+    public AnalisadorIncremental(String texto) throws ErroLexico {
+        this.lexico = new LexicoIncremental(texto);
+        this.nosPrincipais = new ArrayList<>();
+    }
+
+    public String getTexto() {
+        return lexico.getTexto();
+    }
+
+    public TokenBuffer getTokens() {
+        return lexico.getTokens();
+    }
+
+    // Erros lexicos do texto atual, no formato de ErroLexico
+    public List<String> errosLexicos() {
+        return lexico.getTokens().mensagensErro();
+    }
+
+    // Troca [inicio, inicio + removidos) do texto por 'inserido' e analisa o resultado
+    public Programa editar(int inicio, int removidos, String inserido) throws ErroLexico, ErroSintatico {
+        lexico.editar(inicio, removidos, inserido);
+        ajustarNos(lexico.primeiroAlterado(), lexico.fimAlteradoAnterior(), lexico.fimAlteradoNovo());
+        return analisar();
+    }
+
+    // Como na compilacao completa, so ha analise sintatica sem erros lexicos: com eles devolve null
+    public Programa analisar() throws ErroSintatico {
+        TokenBuffer tokens = lexico.getTokens();
+        if (tokens.quantidadeErros() > 0) {
+            return null;
+        }
+        // Com debug nada e reaproveitado, para o log mostrar todas as regras
+        List<NoAnalisado> reaproveitaveis = Debug.sintaticoAtivo() ? new ArrayList<>() : nosPrincipais;
+        AnalisadorSintatico analisador = new AnalisadorSintatico(tokens, reaproveitaveis);
+        Programa programa = analisador.analisar();
+        nosPrincipais = analisador.getNosPrincipais();
+        return programa;
+    }
+
+    // Descarta os nos que leram algum token trocado e desloca os que ficam depois da edicao
+    private void ajustarNos(int primeiroAlterado, int fimAlteradoAnterior, int fimAlteradoNovo) {
+        int deslocamento = fimAlteradoNovo - fimAlteradoAnterior;
+        Iterator<NoAnalisado> iterador = nosPrincipais.iterator();
+        while (iterador.hasNext()) {
+            NoAnalisado no = iterador.next();
+            if (no.fimToken < primeiroAlterado) {
+                continue;
+            }
+            if (no.primeiroToken >= fimAlteradoAnterior) {
+                no.primeiroToken += deslocamento;
+                no.fimToken += deslocamento;
+                continue;
+            }
+            iterador.remove();
+        }
+    }
+}
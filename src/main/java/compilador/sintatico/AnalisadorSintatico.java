@@ -4,13 +4,14 @@ import compilador.Debug;
 import compilador.arvore_sintatica_abstrata.*;
 import compilador.lexico.ErroLexico;
 import compilador.lexico.AnalisadorLexico;
-import compilador.lexico.Token;
+import compilador.lexico.TabelaNomes;
 import compilador.lexico.TipoToken;
+import compilador.lexico.TokenBuffer;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 
 public class AnalisadorSintatico {
     
@@ -22,104 +23,326 @@ public class AnalisadorSintatico {
         TipoToken.IDENT
     };
 
-    private final AnalisadorLexico analisadorLexico;
-    private Token tokenAtual;
+    private final TokenBuffer tokens;
+    private final TabelaNomes nomes;
+    // Indice do token atual em 'tokens'; nunca passa do EOF final
+    private int atual;
+    // So na analise incremental (null fora dela): os nos do corpo principal desta analise e os
+    // da analise anterior que ainda valem, em ordem de token
+    private List<NoAnalisado> nosPrincipais;
+    private List<NoAnalisado> reaproveitaveis;
+    private int proximoReaproveitavel;
+    // Recuperacao de erros (modo panico): em vez de parar no primeiro erro, registra o erro, pula
+    // ate um ponto seguro e continua; o comando ou declaracao com erro vira um ComandoErro ou
+    // DeclaracaoErro na AST
+    private boolean recuperarErros;
+    private final List<ErroSintatico> erros = new ArrayList<>();
+    private int tokenUltimoErro = -1;
+    // Corpos das funcoes guardados so como faixa de tokens e analisados quando pedidos
+    private boolean corposSobDemanda;
 
     public AnalisadorSintatico(AnalisadorLexico analisadorLexico) throws ErroLexico {
-        this.analisadorLexico = analisadorLexico;
-        this.tokenAtual = this.analisadorLexico.proximoToken();
+        this(analisadorLexico.tokenizarBuffer());
     }
+
+    public AnalisadorSintatico(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.nomes = tokens.getTabelaNomes();
+        this.atual = 0;
+    }
+
+    AnalisadorSintatico(TokenBuffer tokens, List<NoAnalisado> reaproveitaveis) {
+        this(tokens);
+        this.nosPrincipais = new ArrayList<>();
+        this.reaproveitaveis = reaproveitaveis;
+        this.proximoReaproveitavel = 0;
+    }
+
+    List<NoAnalisado> getNosPrincipais() {
+        return nosPrincipais;
+    }
+
+    public void setRecuperarErros(boolean recuperarErros) {
+        this.recuperarErros = recuperarErros;
+    }
+
+    // Erros registrados pela recuperacao, em ordem de posicao (os de corpos sob demanda vem
+    // depois, na ordem em que os corpos foram analisados)
+    public List<ErroSintatico> getErros() {
+        return erros;
+    }
+
+    public int quantidadeErros() {
+        return erros.size();
+    }
+
+    // Cada funcao tem so o cabecalho analisado; o corpo vira um CorpoSobDemanda, analisado na
+    // primeira vez que DeclaracaoFuncao.carregarCorpo e chamado. Os erros desses corpos entram em
+    // getErros() quando eles sao analisados, mesmo sem recuperacao de erros. Desligado no debug
+    // sintatico e na analise incremental
+    public void setCorposSobDemanda(boolean corposSobDemanda) {
+        this.corposSobDemanda = corposSobDemanda;
+    }
+
+    // No da analise anterior que comeca no token atual; a analise continua logo depois dele
+    private NoArvoreSintaticaAbstrata reaproveitar() {
+        if (reaproveitaveis == null) {
+            return null;
+        }
+        while (proximoReaproveitavel < reaproveitaveis.size()
+            && reaproveitaveis.get(proximoReaproveitavel).primeiroToken < atual) {
+            proximoReaproveitavel += 1;
+        }
+        if (proximoReaproveitavel == reaproveitaveis.size()
+            || reaproveitaveis.get(proximoReaproveitavel).primeiroToken != atual) {
+            return null;
+        }
+        NoAnalisado reaproveitado = reaproveitaveis.get(proximoReaproveitavel);
+        proximoReaproveitavel += 1;
+        nosPrincipais.add(reaproveitado);
+        atual = reaproveitado.fimToken;
+        return reaproveitado.no;
+    }
+
+    private void registrar(NoArvoreSintaticaAbstrata no, int primeiroToken) {
+        if (nosPrincipais != null) {
+            nosPrincipais.add(new NoAnalisado(no, primeiroToken, atual));
+        }
+    }
+
     private void erro(String mensagem) throws ErroSintatico {
-        throw new ErroSintatico(mensagem, tokenAtual);
+        throw new ErroSintatico(mensagem, tokens.token(atual));
+    }
+
+    // Com recuperacao, um erro fora de comandos e declaracoes ('<?php', '?>' e o que vem depois)
+    // so e registrado e a analise segue como se o token esperado estivesse ali
+    private void erroOuRegistro(String mensagem) throws ErroSintatico {
+        if (!recuperarErros) {
+            erro(mensagem);
+        }
+        registrarErro(new ErroSintatico(mensagem, tokens.token(atual)));
+    }
+
+    private void registrarErro(ErroSintatico erro) {
+        // Um erro no mesmo token do anterior e consequencia dele: a recuperacao parou ali
+        if (atual == tokenUltimoErro) {
+            return;
+        }
+        Debug.sintatico("Erro registrado: " + erro.getMessage());
+        erros.add(erro);
+        tokenUltimoErro = atual;
+    }
+
+    private void recuperar(ErroSintatico erro, int inicio, int profundidadeRegras) {
+        Debug.restaurarProfundidadeRegras(profundidadeRegras);
+        registrarErro(erro);
+        sincronizar(inicio);
+    }
+
+    // Pula tokens ate um ponto seguro: logo depois de um ';' ou de um bloco '{ ... }' (com o
+    // 'else' que o segue) aberto durante o pulo, ou antes de '}', 'function', 'if', 'while', '?>'
+    // ou do EOF. Se o erro foi no primeiro token do comando, pula ao menos esse token
+    private void sincronizar(int inicio) {
+        int chaves = 0;
+        while (!verificar(TipoToken.EOF)) {
+            TipoToken tipo = tokens.tipo(atual);
+            if (atual > inicio && (tipo == TipoToken.PHP_FECHA
+                || chaves == 0 && (tipo == TipoToken.FECHA_CHAVE || tipo == TipoToken.FUNCTION
+                    || tipo == TipoToken.IF || tipo == TipoToken.WHILE))) {
+                break;
+            }
+            atual += 1;
+            if (tipo == TipoToken.ABRE_CHAVE) {
+                chaves += 1;
+            } else if (tipo == TipoToken.FECHA_CHAVE && chaves > 0) {
+                chaves -= 1;
+                if (chaves == 0 && !verificar(TipoToken.ELSE)) {
+                    break;
+                }
+            } else if (tipo == TipoToken.PONTO_VIRGULA && chaves == 0) {
+                break;
+            }
+        }
+        Debug.sintatico("Recuperacao: analise continua em " + tokens.tipo(atual).name());
     }
 
-    private Token consumir(TipoToken tipoEsperado) throws ErroSintatico, ErroLexico {
-        if (tokenAtual.getTipo() == tipoEsperado) {
-            Token tokenConsumido = tokenAtual;
-            Debug.sintatico("Consumindo: " + tipoEsperado.name() + " = '" + tokenConsumido.getValor() + "'");
-            tokenAtual = analisadorLexico.proximoToken();
-            return tokenConsumido;
+    private int consumir(TipoToken tipoEsperado) throws ErroSintatico {
+        if (tokens.tipo(atual) == tipoEsperado) {
+            int indiceConsumido = atual;
+            if (Debug.sintaticoAtivo()) {
+                Debug.sintatico("Consumindo: " + tipoEsperado.name() + " = '" + tokens.valor(indiceConsumido) + "'");
+            }
+            if (atual < tokens.tamanho() - 1) {
+                atual += 1;
+            }
+            return indiceConsumido;
         }
         erro("Esperado " + tipoEsperado.name());
-        return null;
+        return -1;
     }
     private boolean verificar(TipoToken tipo) {
-        return tokenAtual.getTipo() == tipo;
+        return tokens.tipo(atual) == tipo;
     }
     private boolean verificarVarios(TipoToken... tipos) {
-        TipoToken atual = tokenAtual.getTipo();
+        TipoToken tipoAtual = tokens.tipo(atual);
         for (TipoToken tipo : tipos) {
-            if (atual == tipo) {
+            if (tipoAtual == tipo) {
                 return true;
             }
         }
         return false;
     }
 
-    public Programa analisar() throws ErroSintatico, ErroLexico {
+    public Programa analisar() throws ErroSintatico {
         return analisarPrograma();
     }
 
-    private Programa analisarPrograma() throws ErroSintatico, ErroLexico {
+    private Programa analisarPrograma() throws ErroSintatico {
         Debug.entrarRegra("<programa>");
-        consumir(TipoToken.PHP_ABRE);
+        if (verificar(TipoToken.PHP_ABRE)) {
+            consumir(TipoToken.PHP_ABRE);
+        } else {
+            erroOuRegistro("Esperado PHP_ABRE");
+        }
         Corpo corpo = analisarCorpo();
-        consumir(TipoToken.PHP_FECHA);
+        if (verificar(TipoToken.PHP_FECHA)) {
+            consumir(TipoToken.PHP_FECHA);
+        } else {
+            erroOuRegistro("Esperado PHP_FECHA");
+        }
 
         if (!verificar(TipoToken.EOF)) {
-            erro("Codigo inesperado apos '?>'");
+            erroOuRegistro("Codigo inesperado apos '?>'");
         }
 
         Debug.sairRegra("<programa>");
         return new Programa(corpo);
     }
 
-    private Corpo analisarCorpo() throws ErroSintatico, ErroLexico {
+    private Corpo analisarCorpo() throws ErroSintatico {
         Debug.entrarRegra("<corpo>");
         Corpo corpo = analisarCorpoComDeclaracoes(true);
         Debug.sairRegra("<corpo>");
         return corpo;
     }
 
-    private Corpo analisarCorpoComDeclaracoes(boolean permiteFuncoes) throws ErroSintatico, ErroLexico {
+    private Corpo analisarCorpoComDeclaracoes(boolean permiteFuncoes) throws ErroSintatico {
         List<Declaracao> declaracoes = new ArrayList<>();
         List<Comando> comandos = new ArrayList<>();
-        Set<String> variaveisDeclaradas = new HashSet<>();
+        // Indexado pelo id do nome da variavel
+        BitSet variaveisDeclaradas = new BitSet();
 
         boolean emDeclaracoes = true;
         while (emDeclaracoes) {
             if (permiteFuncoes && verificar(TipoToken.FUNCTION)) {
-                declaracoes.add(analisarDcF());
+                declaracoes.add(analisarDeclaracao(true));
                 continue;
             }
             if (verificar(TipoToken.VARIAVEL)) {
-                String nome = (String) tokenAtual.getValor();
-                if (variaveisDeclaradas.contains(nome)) {
+                int idNome = tokens.idNome(atual);
+                if (variaveisDeclaradas.get(idNome)) {
                     emDeclaracoes = false;
                     continue;
                 }
-                declaracoes.add(analisarDcV());
-                variaveisDeclaradas.add(nome);
+                declaracoes.add(analisarDeclaracao(false));
+                variaveisDeclaradas.set(idNome);
                 continue;
             }
             emDeclaracoes = false;
         }
 
-        comandos.addAll(analisarComandos());
+        comandos.addAll(permiteFuncoes ? analisarComandosPrincipais() : analisarComandos());
         return new Corpo(declaracoes, comandos);
     }
 
-    private DeclaracaoVariavel analisarDcV() throws ErroSintatico, ErroLexico {
+    // Funcoes e comandos do corpo principal nao dependem do que veio antes deles, entao podem
+    // ser reaproveitados pela analise incremental; as declaracoes de variavel nao (se '$x = ...'
+    // declara ou atribui depende das variaveis ja declaradas) e sao sempre analisadas de novo
+    private DeclaracaoFuncao analisarDcFPrincipal() throws ErroSintatico {
+        NoArvoreSintaticaAbstrata reaproveitado = reaproveitar();
+        if (reaproveitado != null) {
+            return (DeclaracaoFuncao) reaproveitado;
+        }
+        int primeiroToken = atual;
+        DeclaracaoFuncao declaracao = analisarDcF();
+        registrar(declaracao, primeiroToken);
+        return declaracao;
+    }
+
+    private List<Comando> analisarComandosPrincipais() throws ErroSintatico {
+        List<Comando> comandos = new ArrayList<>();
+        while (true) {
+            while (verificarVarios(TIPOS_COMANDO)) {
+                NoArvoreSintaticaAbstrata reaproveitado = reaproveitar();
+                if (reaproveitado != null) {
+                    comandos.add((Comando) reaproveitado);
+                    continue;
+                }
+                int primeiroToken = atual;
+                Comando comando = analisarComandoRecuperando();
+                registrar(comando, primeiroToken);
+                comandos.add(comando);
+            }
+            if (!recuperarErros || verificarVarios(TipoToken.PHP_FECHA, TipoToken.EOF)) {
+                return comandos;
+            }
+            comandos.add(recuperarSobra(TipoToken.PHP_FECHA));
+        }
+    }
+
+    // Token que nao continua a lista de comandos e nao e o 'fechamento' dela (sem recuperacao, o
+    // erro de esperar o fechamento): uma funcao fora do lugar no corpo principal e analisada e
+    // descartada, qualquer outra coisa e pulada
+    private Comando recuperarSobra(TipoToken fechamento) throws ErroSintatico {
+        ErroSintatico erro = new ErroSintatico("Esperado " + fechamento.name(), tokens.token(atual));
+        if (verificar(TipoToken.FUNCTION)) {
+            registrarErro(erro);
+            analisarDeclaracao(true);
+        } else {
+            recuperar(erro, atual, Debug.profundidadeRegras());
+        }
+        return new ComandoErro(erro.getMessage());
+    }
+
+    private Declaracao analisarDeclaracao(boolean funcao) throws ErroSintatico {
+        int inicio = atual;
+        int profundidadeRegras = Debug.profundidadeRegras();
+        try {
+            return funcao ? analisarDcFPrincipal() : analisarDcV();
+        } catch (ErroSintatico e) {
+            if (!recuperarErros) {
+                throw e;
+            }
+            recuperar(e, inicio, profundidadeRegras);
+            return new DeclaracaoErro(e.getMessage());
+        }
+    }
+
+    private Comando analisarComandoRecuperando() throws ErroSintatico {
+        int inicio = atual;
+        int profundidadeRegras = Debug.profundidadeRegras();
+        try {
+            return analisarComando();
+        } catch (ErroSintatico e) {
+            if (!recuperarErros) {
+                throw e;
+            }
+            recuperar(e, inicio, profundidadeRegras);
+            return new ComandoErro(e.getMessage());
+        }
+    }
+
+    private DeclaracaoVariavel analisarDcV() throws ErroSintatico {
         Debug.entrarRegra("<dc_v>");
-        Token tokenVariavel = consumir(TipoToken.VARIAVEL);
-        String nome = (String) tokenVariavel.getValor();
+        int tokenVariavel = consumir(TipoToken.VARIAVEL);
+        String nome = tokens.texto(tokenVariavel);
         Debug.sintatico("Declarando variavel: " + nome);
         Expressao expressaoInicial = analisarAtribuicaoOpcional();
         Debug.sairRegra("<dc_v>");
-        return new DeclaracaoVariavel(nome, expressaoInicial);
+        return new DeclaracaoVariavel(nome, tokens.idNome(tokenVariavel), expressaoInicial);
     }
 
-    private Expressao analisarAtribuicaoOpcional() throws ErroSintatico, ErroLexico {
+    private Expressao analisarAtribuicaoOpcional() throws ErroSintatico {
         if (verificar(TipoToken.ATRIBUICAO)) {
             consumir(TipoToken.ATRIBUICAO);
             Expressao expressao = analisarExpressao();
@@ -130,69 +353,140 @@ public class AnalisadorSintatico {
         return null;
     }
 
-    private DeclaracaoFuncao analisarDcF() throws ErroSintatico, ErroLexico {
+    private DeclaracaoFuncao analisarDcF() throws ErroSintatico {
         Debug.entrarRegra("<dc_f>");
         consumir(TipoToken.FUNCTION);
-        Token tokenNomeFuncao = consumir(TipoToken.IDENT);
-        String nome = (String) tokenNomeFuncao.getValor();
+        int tokenNomeFuncao = consumir(TipoToken.IDENT);
+        String nome = tokens.texto(tokenNomeFuncao);
         Debug.sintatico("Declarando funcao: " + nome);
-        List<String> parametros = analisarParametros();
+        List<String> parametros = new ArrayList<>();
+        int[] idsParametros = analisarParametros(parametros);
         Debug.sintatico("Parametros: " + parametros);
         consumir(TipoToken.ABRE_CHAVE);
+        int fimCorpo = corposSobDemanda && nosPrincipais == null && !Debug.sintaticoAtivo() ? fimDoCorpo(atual) : -1;
+        if (fimCorpo >= 0) {
+            int inicioCorpo = atual;
+            atual = fimCorpo;
+            consumir(TipoToken.FECHA_CHAVE);
+            Debug.sairRegra("<dc_f>");
+            return new DeclaracaoFuncao(nome, tokens.idNome(tokenNomeFuncao), parametros, idsParametros,
+                () -> analisarCorpoAdiado(inicioCorpo, fimCorpo));
+        }
         Corpo corpo = analisarCorpoF();
         consumir(TipoToken.FECHA_CHAVE);
         Debug.sairRegra("<dc_f>");
-        return new DeclaracaoFuncao(nome, parametros, corpo);
+        return new DeclaracaoFuncao(nome, tokens.idNome(tokenNomeFuncao), parametros, idsParametros, corpo);
+    }
+
+    // Indice do '}' que fecha o corpo iniciado em 'inicio', ou -1 se antes dele vier um 'function',
+    // '?>' ou o fim (corpo com erro, analisado na hora para relatar os erros como sempre)
+    private int fimDoCorpo(int inicio) {
+        int profundidade = 0;
+        for (int i = inicio; ; i++) {
+            switch (tokens.tipo(i)) {
+                case ABRE_CHAVE:
+                    profundidade += 1;
+                    break;
+                case FECHA_CHAVE:
+                    if (profundidade == 0) {
+                        return i;
+                    }
+                    profundidade -= 1;
+                    break;
+                case FUNCTION:
+                case PHP_FECHA:
+                case EOF:
+                    return -1;
+                default:
+                    break;
+            }
+        }
     }
 
-    private List<String> analisarParametros() throws ErroSintatico, ErroLexico {
+    // Analisa o corpo [inicio, fim) de um CorpoSobDemanda com os mesmos tokens e nomes; um erro
+    // vai para getErros() e o corpo fica so com o ComandoErro
+    private Corpo analisarCorpoAdiado(int inicio, int fim) {
+        int atualAnterior = atual;
+        int ultimoErroAnterior = tokenUltimoErro;
+        atual = inicio;
+        tokenUltimoErro = -1;
+        Corpo corpo;
+        try {
+            corpo = analisarCorpoF();
+            if (atual != fim) {
+                erro("Esperado FECHA_CHAVE");
+            }
+        } catch (ErroSintatico e) {
+            registrarErro(e);
+            List<Comando> comandos = new ArrayList<>();
+            comandos.add(new ComandoErro(e.getMessage()));
+            corpo = new Corpo(new ArrayList<>(), comandos);
+        }
+        atual = atualAnterior;
+        tokenUltimoErro = ultimoErroAnterior;
+        return corpo;
+    }
+
+    // Preenche 'parametros' com os nomes e devolve os ids correspondentes
+    private int[] analisarParametros(List<String> parametros) throws ErroSintatico {
         consumir(TipoToken.ABRE_PAREN);
-        List<String> parametros = new ArrayList<>();
+        int[] idsParametros = new int[0];
 
         if (verificar(TipoToken.VARIAVEL)) {
-            parametros = analisarListaPar();
+            idsParametros = analisarListaPar(parametros);
         }
 
         consumir(TipoToken.FECHA_PAREN);
-        return parametros;
+        return idsParametros;
     }
 
-    private List<String> analisarListaPar() throws ErroSintatico, ErroLexico {
-        List<String> parametros = new ArrayList<>();
-        Token tokenParametro = consumir(TipoToken.VARIAVEL);
-        parametros.add((String) tokenParametro.getValor());
+    private int[] analisarListaPar(List<String> parametros) throws ErroSintatico {
+        int[] idsParametros = new int[4];
+        int tokenParametro = consumir(TipoToken.VARIAVEL);
+        parametros.add(tokens.texto(tokenParametro));
+        idsParametros[0] = tokens.idNome(tokenParametro);
 
         while (verificar(TipoToken.VIRGULA)) {
             consumir(TipoToken.VIRGULA);
             tokenParametro = consumir(TipoToken.VARIAVEL);
-            parametros.add((String) tokenParametro.getValor());
+            if (parametros.size() == idsParametros.length) {
+                idsParametros = Arrays.copyOf(idsParametros, idsParametros.length * 2);
+            }
+            idsParametros[parametros.size()] = tokens.idNome(tokenParametro);
+            parametros.add(tokens.texto(tokenParametro));
         }
 
-        return parametros;
+        return Arrays.copyOf(idsParametros, parametros.size());
     }
 
-    private Corpo analisarCorpoF() throws ErroSintatico, ErroLexico {
+    private Corpo analisarCorpoF() throws ErroSintatico {
         return analisarCorpoComDeclaracoes(false);
     }
 
-    private List<Comando> analisarComandos() throws ErroSintatico, ErroLexico {
+    private List<Comando> analisarComandos() throws ErroSintatico {
         List<Comando> comandos = new ArrayList<>();
-        while (verificarVarios(TIPOS_COMANDO)) {
-            comandos.add(analisarComando());
+        while (true) {
+            while (verificarVarios(TIPOS_COMANDO)) {
+                comandos.add(analisarComandoRecuperando());
+            }
+            // Uma funcao dentro de um bloco indica um '}' esquecido: o erro fica para quem fecha
+            if (!recuperarErros || verificarVarios(TipoToken.FECHA_CHAVE, TipoToken.PHP_FECHA, TipoToken.EOF,
+                TipoToken.FUNCTION)) {
+                break;
+            }
+            comandos.add(recuperarSobra(TipoToken.FECHA_CHAVE));
         }
 
         return comandos;
     }
 
-    private Comando analisarComando() throws ErroSintatico, ErroLexico {
+    private Comando analisarComando() throws ErroSintatico {
         Debug.entrarRegra("<comando>");
         Comando cmd = null;
         if (verificar(TipoToken.ECHO)) {
             cmd = analisarComandoEcho();
-        } else if (verificar(TipoToken.IF)) {
-            cmd = analisarComandoIf();
-        } else if (verificar(TipoToken.WHILE)) {
-            cmd = analisarComandoWhile();
+        } else if (verificarVarios(TipoToken.IF, TipoToken.WHILE)) {
+            cmd = analisarComandoComBloco();
         } else if (verificar(TipoToken.VARIAVEL)) {
             cmd = analisarComandoVariavel();
         } else if (verificar(TipoToken.IDENT)) {
@@ -204,7 +498,7 @@ public class AnalisadorSintatico {
         return cmd;
     }
 
-    private ComandoEcho analisarComandoEcho() throws ErroSintatico, ErroLexico {
+    private ComandoEcho analisarComandoEcho() throws ErroSintatico {
         consumir(TipoToken.ECHO);
         Expressao expressao = analisarExpressao();
         consumir(TipoToken.PONTO);
@@ -213,69 +507,138 @@ public class AnalisadorSintatico {
         return new ComandoEcho(expressao);
     }
 
-    private ComandoIf analisarComandoIf() throws ErroSintatico, ErroLexico {
-        consumir(TipoToken.IF);
-        consumir(TipoToken.ABRE_PAREN);
-        Condicao condicao = analisarCondicao();
-        consumir(TipoToken.FECHA_PAREN);
-        consumir(TipoToken.ABRE_CHAVE);
-        List<Comando> blocoIf = analisarComandos();
-        consumir(TipoToken.FECHA_CHAVE);
-        List<Comando> blocoElse = analisarPfalsa();
-        return new ComandoIf(condicao, blocoIf, blocoElse);
-    }
+    // if/while aninhados sao analisados sem uma chamada recursiva por nivel: os blocos abertos
+    // ficam numa pilha explicita e cada if/while de dentro de um bloco e tratado aqui mesmo, com
+    // a mesma recuperacao de erro (ComandoErro no lugar do comando inteiro) e o mesmo log de
+    // debug de analisarComandoRecuperando e analisarComando. A arvore e os erros sao os mesmos
+    // da descida recursiva:
+    //   <if>    -> if '(' <condicao> ')' '{' <comandos> '}' [else '{' <comandos> '}']
+    //   <while> -> while '(' <condicao> ')' '{' <comandos> '}'
+    private static final class Bloco {
+        boolean eWhile;
+        boolean noElse;
+        Condicao condicao;
+        List<Comando> blocoIf;
+        List<Comando> comandos;
+        // Para a recuperacao do comando, como em analisarComandoRecuperando
+        int inicio;
+        int profundidadeRegras;
+    }
+
+    private Comando analisarComandoComBloco() throws ErroSintatico {
+        // Erros do if/while de fora vao para quem chamou, como antes
+        Bloco bloco = abrirBloco(atual, Debug.profundidadeRegras());
+        List<Bloco> abertos = new ArrayList<>();
+        while (true) {
+            if (verificarVarios(TipoToken.IF, TipoToken.WHILE)) {
+                int inicio = atual;
+                int profundidadeRegras = Debug.profundidadeRegras();
+                Debug.entrarRegra("<comando>");
+                try {
+                    Bloco interno = abrirBloco(inicio, profundidadeRegras);
+                    abertos.add(bloco);
+                    bloco = interno;
+                } catch (ErroSintatico e) {
+                    if (!recuperarErros) {
+                        throw e;
+                    }
+                    recuperar(e, inicio, profundidadeRegras);
+                    bloco.comandos.add(new ComandoErro(e.getMessage()));
+                }
+                continue;
+            }
+            if (verificarVarios(TIPOS_COMANDO)) {
+                bloco.comandos.add(analisarComandoRecuperando());
+                continue;
+            }
+            // Uma funcao dentro de um bloco indica um '}' esquecido: o erro fica para quem fecha
+            if (recuperarErros && !verificarVarios(TipoToken.FECHA_CHAVE, TipoToken.PHP_FECHA, TipoToken.EOF,
+                TipoToken.FUNCTION)) {
+                bloco.comandos.add(recuperarSobra(TipoToken.FECHA_CHAVE));
+                continue;
+            }
 
-    private List<Comando> analisarPfalsa() throws ErroSintatico, ErroLexico {
-        if (verificar(TipoToken.ELSE)) {
-            consumir(TipoToken.ELSE);
-            consumir(TipoToken.ABRE_CHAVE);
-            List<Comando> comandos = analisarComandos();
-            consumir(TipoToken.FECHA_CHAVE);
-            return comandos;
+            Comando comando;
+            try {
+                consumir(TipoToken.FECHA_CHAVE);
+                if (!bloco.eWhile && !bloco.noElse && verificar(TipoToken.ELSE)) {
+                    consumir(TipoToken.ELSE);
+                    consumir(TipoToken.ABRE_CHAVE);
+                    bloco.noElse = true;
+                    bloco.blocoIf = bloco.comandos;
+                    bloco.comandos = new ArrayList<>();
+                    continue;
+                }
+                if (bloco.eWhile) {
+                    comando = new ComandoWhile(bloco.condicao, bloco.comandos);
+                } else if (bloco.noElse) {
+                    comando = new ComandoIf(bloco.condicao, bloco.blocoIf, bloco.comandos);
+                } else {
+                    comando = new ComandoIf(bloco.condicao, bloco.comandos, null);
+                }
+            } catch (ErroSintatico e) {
+                if (abertos.isEmpty() || !recuperarErros) {
+                    throw e;
+                }
+                recuperar(e, bloco.inicio, bloco.profundidadeRegras);
+                bloco = abertos.remove(abertos.size() - 1);
+                bloco.comandos.add(new ComandoErro(e.getMessage()));
+                continue;
+            }
+            if (abertos.isEmpty()) {
+                return comando;
+            }
+            Debug.sairRegra("<comando>");
+            bloco = abertos.remove(abertos.size() - 1);
+            bloco.comandos.add(comando);
         }
-        return null;
     }
 
-    private ComandoWhile analisarComandoWhile() throws ErroSintatico, ErroLexico {
-        consumir(TipoToken.WHILE);
+    // Cabecalho do if/while ate o '{' do bloco
+    private Bloco abrirBloco(int inicio, int profundidadeRegras) throws ErroSintatico {
+        Bloco bloco = new Bloco();
+        bloco.eWhile = verificar(TipoToken.WHILE);
+        bloco.inicio = inicio;
+        bloco.profundidadeRegras = profundidadeRegras;
+        consumir(bloco.eWhile ? TipoToken.WHILE : TipoToken.IF);
         consumir(TipoToken.ABRE_PAREN);
-        Condicao condicao = analisarCondicao();
+        bloco.condicao = analisarCondicao();
         consumir(TipoToken.FECHA_PAREN);
         consumir(TipoToken.ABRE_CHAVE);
-        List<Comando> bloco = analisarComandos();
-        consumir(TipoToken.FECHA_CHAVE);
-        return new ComandoWhile(condicao, bloco);
+        bloco.comandos = new ArrayList<>();
+        return bloco;
     }
 
-    private Comando analisarComandoVariavel() throws ErroSintatico, ErroLexico {
-        Token tokenVariavel = consumir(TipoToken.VARIAVEL);
-        String nome = (String) tokenVariavel.getValor();
+    private Comando analisarComandoVariavel() throws ErroSintatico {
+        int tokenVariavel = consumir(TipoToken.VARIAVEL);
+        String nome = tokens.texto(tokenVariavel);
 
         if (verificar(TipoToken.ATRIBUICAO)) {
             consumir(TipoToken.ATRIBUICAO);
             Expressao expressao = analisarExpressao();
             consumir(TipoToken.PONTO_VIRGULA);
-            return new ComandoAtribuicao(nome, expressao);
+            return new ComandoAtribuicao(nome, tokens.idNome(tokenVariavel), expressao);
         }
         if (verificar(TipoToken.ABRE_PAREN)) {
             List<Expressao> argumentos = analisarListaArg();
             consumir(TipoToken.PONTO_VIRGULA);
-            String nomeFuncao = nome.startsWith("$") ? nome.substring(1) : nome;
-            return new ComandoChamadaFuncao(nomeFuncao, argumentos);
+            // $f(...) chama a funcao 'f': o nome sem '$' tambem entra na tabela de nomes
+            int idFuncao = nome.startsWith("$") ? nomes.idDe(nome, 1, nome.length()) : tokens.idNome(tokenVariavel);
+            return new ComandoChamadaFuncao(nomes.nome(idFuncao), idFuncao, argumentos);
         }
         erro("Esperado '=' ou '(' apos variavel");
         return null;
     }
 
-    private ComandoChamadaFuncao analisarComandoIdent() throws ErroSintatico, ErroLexico {
-        Token tokenIdentificador = consumir(TipoToken.IDENT);
-        String nomeFuncao = (String) tokenIdentificador.getValor();
+    private ComandoChamadaFuncao analisarComandoIdent() throws ErroSintatico {
+        int tokenIdentificador = consumir(TipoToken.IDENT);
+        String nomeFuncao = tokens.texto(tokenIdentificador);
         List<Expressao> argumentos = analisarListaArg();
         consumir(TipoToken.PONTO_VIRGULA);
-        return new ComandoChamadaFuncao(nomeFuncao, argumentos);
+        return new ComandoChamadaFuncao(nomeFuncao, tokens.idNome(tokenIdentificador), argumentos);
     }
 
-    private List<Expressao> analisarListaArg() throws ErroSintatico, ErroLexico {
+    private List<Expressao> analisarListaArg() throws ErroSintatico {
         consumir(TipoToken.ABRE_PAREN);
         List<Expressao> argumentos = new ArrayList<>();
 
@@ -287,7 +650,7 @@ public class AnalisadorSintatico {
         return argumentos;
     }
 
-    private List<Expressao> analisarArgumentos() throws ErroSintatico, ErroLexico {
+    private List<Expressao> analisarArgumentos() throws ErroSintatico {
         List<Expressao> argumentos = new ArrayList<>();
         argumentos.add(analisarExpressao());
 
@@ -299,199 +662,355 @@ public class AnalisadorSintatico {
         return argumentos;
     }
 
-    private Condicao analisarCondicao() throws ErroSintatico, ErroLexico {
-        Expressao expressao = analisarDisjuncao();
+    // Condicoes e expressoes sao analisadas por precedencia de operadores, com pilhas explicitas
+    // de operandos, de operadores e de quadros (um por parentese ou chamada de funcao aberta) em
+    // vez de uma chamada recursiva por nivel da gramatica: expressoes muito aninhadas nao estouram
+    // a pilha do Java e uma expressao longa nao passa por seis metodos a cada operando. A arvore,
+    // os erros e o log de debug sao os mesmos da descida recursiva pela gramatica:
+    //   <condicao>  -> <negacao> (('&&' | '||') <negacao>)*          && antes de ||
+    //   <negacao>   -> '!' <negacao>
+    //                | '(' <condicao> ')' (('*' | '/') <fator>)* (('+' | '-') <termo>)* [<relacional> <expressao>]
+    //                | <expressao> [<relacional> <expressao>]
+    //   <expressao> -> floatval(readline()) | <termo> (('+' | '-') <termo>)*
+    //   <termo>     -> ['-'] <fator> (('*' | '/') <fator>)*
+    //   <fator>     -> variavel | numero | ident '(' [<expressao> (',' <expressao>)*] ')' | '(' <expressao> ')'
+    private static final int OP_OU = 0;
+    private static final int OP_E = 1;
+    private static final int OP_NAO = 2;
+    private static final int OP_IGUAL = 3;
+    private static final int OP_DIFERENTE = 4;
+    private static final int OP_MAIOR_IGUAL = 5;
+    private static final int OP_MENOR_IGUAL = 6;
+    private static final int OP_MAIOR = 7;
+    private static final int OP_MENOR = 8;
+    private static final int OP_MAIS = 9;
+    private static final int OP_MENOS = 10;
+    private static final int OP_MULT = 11;
+    private static final int OP_DIV = 12;
+    private static final int OP_NEGATIVO = 13;
+
+    private static final int PRECEDENCIA_RELACIONAL = 4;
+    private static final int[] PRECEDENCIA = {1, 2, 3, 4, 4, 4, 4, 4, 4, 5, 5, 6, 6, 7};
+    private static final String[] SIMBOLO = {"||", "&&", "!", "==", "!=", ">=", "<=", ">", "<", "+", "-", "*", "/", "-"};
+
+    // O que o proximo token pode ser
+    private static final int ESPERA_NEGACAO = 0;
+    private static final int ESPERA_EXPRESSAO = 1;
+    private static final int ESPERA_TERMO = 2;
+    private static final int ESPERA_FATOR = 3;
+    private static final int ESPERA_OPERADOR = 4;
+
+    private static final int QUADRO_CONDICAO = 0;
+    private static final int QUADRO_EXPRESSAO = 1;
+    private static final int QUADRO_PARENTESES_CONDICAO = 2;
+    private static final int QUADRO_PARENTESES = 3;
+    private static final int QUADRO_CHAMADA = 4;
+
+    private static final class Quadro {
+        int tipo;
+        int baseOperadores;
+        // Estado do quadro de fora, restaurado quando este fecha
+        boolean aritmeticaFechada;
+        boolean relacaoDisponivel;
+        boolean expressaoAberta;
+        // So em QUADRO_CHAMADA
+        String nomeFuncao;
+        int idFuncao;
+        List<Expressao> argumentos;
+    }
+
+    private Expressao[] operandos = new Expressao[16];
+    private int quantidadeOperandos;
+    private int[] operadores = new int[16];
+    private int quantidadeOperadores;
+    private Quadro[] quadros = new Quadro[8];
+    private int quantidadeQuadros;
+
+    private Condicao analisarCondicao() throws ErroSintatico {
+        Expressao expressao = analisarPorPrecedencia(QUADRO_CONDICAO);
         return new Condicao(expressao);
     }
 
-    private Expressao analisarDisjuncao() throws ErroSintatico, ErroLexico {
-        Expressao esquerda = analisarConjuncao();
-        while (verificar(TipoToken.OR)) {
-            consumir(TipoToken.OR);
-            Expressao direita = analisarConjuncao();
-            esquerda = new ExpressaoBinaria(esquerda, "||", direita);
+    private Expressao analisarExpressao() throws ErroSintatico {
+        return analisarPorPrecedencia(QUADRO_EXPRESSAO);
+    }
+
+    private Expressao analisarPorPrecedencia(int tipoRaiz) throws ErroSintatico {
+        // Uma expressao nunca contem comandos, entao nao ha duas analises abertas ao mesmo tempo;
+        // pilhas deixadas por um erro sintatico anterior sao simplesmente descartadas
+        quantidadeOperandos = 0;
+        quantidadeOperadores = 0;
+        quantidadeQuadros = 0;
+        Quadro quadro = abrirQuadro(tipoRaiz);
+
+        // Estado do quadro atual:
+        // aritmeticaFechada: a expressao foi floatval(readline()) e nao aceita + - * /
+        // relacaoDisponivel: a negacao atual ainda nao usou seu operador relacional
+        // expressaoAberta: ha uma regra <expressao> aberta no log de debug
+        boolean aritmeticaFechada = false;
+        boolean relacaoDisponivel = true;
+        boolean expressaoAberta = false;
+        int estado;
+        if (tipoRaiz == QUADRO_CONDICAO) {
+            estado = ESPERA_NEGACAO;
+        } else {
+            Debug.entrarRegra("<expressao>");
+            expressaoAberta = true;
+            estado = ESPERA_EXPRESSAO;
+        }
+
+        while (true) {
+            switch (estado) {
+                case ESPERA_NEGACAO:
+                    if (verificar(TipoToken.NOT)) {
+                        consumir(TipoToken.NOT);
+                        empilharOperador(OP_NAO);
+                    } else if (verificar(TipoToken.ABRE_PAREN)) {
+                        consumir(TipoToken.ABRE_PAREN);
+                        quadro = abrirQuadro(QUADRO_PARENTESES_CONDICAO);
+                        guardarEstado(quadro, aritmeticaFechada, relacaoDisponivel, expressaoAberta);
+                    } else {
+                        Debug.entrarRegra("<expressao>");
+                        expressaoAberta = true;
+                        estado = ESPERA_EXPRESSAO;
+                    }
+                    break;
+
+                case ESPERA_EXPRESSAO:
+                    if (verificar(TipoToken.FLOATVAL)) {
+                        Debug.sintatico("floatval(readline())");
+                        consumir(TipoToken.FLOATVAL);
+                        consumir(TipoToken.ABRE_PAREN);
+                        consumir(TipoToken.READLINE);
+                        consumir(TipoToken.ABRE_PAREN);
+                        consumir(TipoToken.FECHA_PAREN);
+                        consumir(TipoToken.FECHA_PAREN);
+                        empilharOperando(new ExpressaoLeitura());
+                        aritmeticaFechada = true;
+                        estado = ESPERA_OPERADOR;
+                    } else {
+                        estado = ESPERA_TERMO;
+                    }
+                    break;
+
+                case ESPERA_TERMO:
+                    if (verificar(TipoToken.MENOS)) {
+                        consumir(TipoToken.MENOS);
+                        empilharOperador(OP_NEGATIVO);
+                    }
+                    estado = ESPERA_FATOR;
+                    break;
+
+                case ESPERA_FATOR:
+                    if (verificar(TipoToken.VARIAVEL)) {
+                        int token = consumir(TipoToken.VARIAVEL);
+                        empilharOperando(new ExpressaoVariavel(tokens.texto(token), tokens.idNome(token)));
+                        estado = ESPERA_OPERADOR;
+                    } else if (verificar(TipoToken.NUMERO)) {
+                        int token = consumir(TipoToken.NUMERO);
+                        empilharOperando(new ExpressaoNumero(tokens.numero(token)));
+                        estado = ESPERA_OPERADOR;
+                    } else if (verificar(TipoToken.IDENT)) {
+                        int token = consumir(TipoToken.IDENT);
+                        String nomeFuncao = tokens.texto(token);
+                        consumir(TipoToken.ABRE_PAREN);
+                        if (verificar(TipoToken.FECHA_PAREN)) {
+                            consumir(TipoToken.FECHA_PAREN);
+                            empilharOperando(new ExpressaoChamadaFuncao(nomeFuncao, tokens.idNome(token), new ArrayList<>()));
+                            estado = ESPERA_OPERADOR;
+                        } else {
+                            quadro = abrirQuadro(QUADRO_CHAMADA);
+                            guardarEstado(quadro, aritmeticaFechada, relacaoDisponivel, expressaoAberta);
+                            quadro.nomeFuncao = nomeFuncao;
+                            quadro.idFuncao = tokens.idNome(token);
+                            quadro.argumentos = new ArrayList<>();
+                            Debug.entrarRegra("<expressao>");
+                            expressaoAberta = true;
+                            estado = ESPERA_EXPRESSAO;
+                        }
+                    } else if (verificar(TipoToken.ABRE_PAREN)) {
+                        consumir(TipoToken.ABRE_PAREN);
+                        quadro = abrirQuadro(QUADRO_PARENTESES);
+                        guardarEstado(quadro, aritmeticaFechada, relacaoDisponivel, expressaoAberta);
+                        Debug.entrarRegra("<expressao>");
+                        expressaoAberta = true;
+                        estado = ESPERA_EXPRESSAO;
+                    } else {
+                        erro("Esperado variavel, numero, chamada de funcao ou '('");
+                    }
+                    break;
+
+                case ESPERA_OPERADOR:
+                    TipoToken tipo = tokens.tipo(atual);
+                    int operador = aritmeticaFechada ? -1 : operadorAritmetico(tipo);
+                    if (operador >= 0) {
+                        reduzir(PRECEDENCIA[operador], quadro.baseOperadores);
+                        consumir(tipo);
+                        empilharOperador(operador);
+                        estado = operador == OP_MULT || operador == OP_DIV ? ESPERA_FATOR : ESPERA_TERMO;
+                        break;
+                    }
+                    if (expressaoAberta) {
+                        Debug.sairRegra("<expressao>");
+                        expressaoAberta = false;
+                    }
+
+                    if (quadro.tipo == QUADRO_CONDICAO || quadro.tipo == QUADRO_PARENTESES_CONDICAO) {
+                        operador = operadorCondicao(tipo);
+                        if (operador >= 0 && (PRECEDENCIA[operador] != PRECEDENCIA_RELACIONAL || relacaoDisponivel)) {
+                            reduzir(PRECEDENCIA[operador], quadro.baseOperadores);
+                            consumir(tipo);
+                            empilharOperador(operador);
+                            aritmeticaFechada = false;
+                            if (PRECEDENCIA[operador] == PRECEDENCIA_RELACIONAL) {
+                                relacaoDisponivel = false;
+                                Debug.entrarRegra("<expressao>");
+                                expressaoAberta = true;
+                                estado = ESPERA_EXPRESSAO;
+                            } else {
+                                relacaoDisponivel = true;
+                                estado = ESPERA_NEGACAO;
+                            }
+                            break;
+                        }
+                    }
+
+                    // Nada mais continua a expressao deste quadro
+                    reduzir(0, quadro.baseOperadores);
+                    Expressao resultado = operandos[--quantidadeOperandos];
+                    operandos[quantidadeOperandos] = null;
+                    if (quadro.tipo == QUADRO_CONDICAO || quadro.tipo == QUADRO_EXPRESSAO) {
+                        quantidadeQuadros -= 1;
+                        return resultado;
+                    }
+                    if (quadro.tipo == QUADRO_PARENTESES_CONDICAO) {
+                        if (!verificar(TipoToken.FECHA_PAREN)) {
+                            erro("Esperado FECHA_PAREN");
+                        }
+                        consumir(TipoToken.FECHA_PAREN);
+                    } else if (quadro.tipo == QUADRO_PARENTESES) {
+                        consumir(TipoToken.FECHA_PAREN);
+                    } else {
+                        quadro.argumentos.add(resultado);
+                        if (verificar(TipoToken.VIRGULA)) {
+                            consumir(TipoToken.VIRGULA);
+                            aritmeticaFechada = false;
+                            Debug.entrarRegra("<expressao>");
+                            expressaoAberta = true;
+                            estado = ESPERA_EXPRESSAO;
+                            break;
+                        }
+                        consumir(TipoToken.FECHA_PAREN);
+                        resultado = new ExpressaoChamadaFuncao(quadro.nomeFuncao, quadro.idFuncao, quadro.argumentos);
+                        quadro.argumentos = null;
+                    }
+
+                    // O parentese ou chamada vira um operando do quadro de fora
+                    aritmeticaFechada = quadro.aritmeticaFechada;
+                    relacaoDisponivel = quadro.relacaoDisponivel;
+                    expressaoAberta = quadro.expressaoAberta;
+                    quantidadeQuadros -= 1;
+                    quadro = quadros[quantidadeQuadros - 1];
+                    empilharOperando(resultado);
+                    estado = ESPERA_OPERADOR;
+                    break;
+            }
         }
-        return esquerda;
     }
 
-    private Expressao analisarConjuncao() throws ErroSintatico, ErroLexico {
-        Expressao esquerda = analisarNegacao();
-        while (verificar(TipoToken.AND)) {
-            consumir(TipoToken.AND);
-            Expressao direita = analisarNegacao();
-            esquerda = new ExpressaoBinaria(esquerda, "&&", direita);
+    private Quadro abrirQuadro(int tipo) {
+        if (quantidadeQuadros == quadros.length) {
+            quadros = Arrays.copyOf(quadros, quadros.length * 2);
         }
-        return esquerda;
-    }
-
-    private Expressao analisarNegacao() throws ErroSintatico, ErroLexico {
-        if (verificar(TipoToken.NOT)) {
-            consumir(TipoToken.NOT);
-            Expressao operando = analisarNegacao();
-            return new ExpressaoUnaria("!", operando);
+        Quadro quadro = quadros[quantidadeQuadros];
+        if (quadro == null) {
+            quadro = new Quadro();
+            quadros[quantidadeQuadros] = quadro;
         }
-        if (verificar(TipoToken.ABRE_PAREN)) {
-            consumir(TipoToken.ABRE_PAREN);
-            Expressao expressao = analisarDisjuncao();
-            if (!verificar(TipoToken.FECHA_PAREN)) {
-                erro("Esperado FECHA_PAREN");
-            }
-            consumir(TipoToken.FECHA_PAREN);
-
-            // Permite continuar uma expressao aritmetica apos parenteses
-            Expressao aritmetica = analisarMaisFatores(expressao);
-            aritmetica = analisarOutrosTermos(aritmetica);
-            if (verificarRelacional()) {
-                return analisarRelacaoComEsquerda(aritmetica);
-            }
-            return aritmetica;
-        }
-        return analisarRelacao();
-    }
-
-    private Expressao analisarRelacao() throws ErroSintatico, ErroLexico {
-        Expressao esquerda = analisarExpressao();
-        return analisarRelacaoComEsquerda(esquerda);
-    }
-    private boolean verificarRelacional() {
-        return verificarVarios(
-            TipoToken.IGUAL,
-            TipoToken.DIFERENTE,
-            TipoToken.MAIOR_IGUAL,
-            TipoToken.MENOR_IGUAL,
-            TipoToken.MAIOR,
-            TipoToken.MENOR
-        );
-    }
-
-    private Expressao analisarRelacaoComEsquerda(Expressao esquerda) throws ErroSintatico, ErroLexico {
-        if (verificar(TipoToken.IGUAL)) {
-            consumir(TipoToken.IGUAL);
-            Expressao direita = analisarExpressao();
-            return new ExpressaoBinaria(esquerda, "==", direita);
-        }
-        if (verificar(TipoToken.DIFERENTE)) {
-            consumir(TipoToken.DIFERENTE);
-            Expressao direita = analisarExpressao();
-            return new ExpressaoBinaria(esquerda, "!=", direita);
-        }
-        if (verificar(TipoToken.MAIOR_IGUAL)) {
-            consumir(TipoToken.MAIOR_IGUAL);
-            Expressao direita = analisarExpressao();
-            return new ExpressaoBinaria(esquerda, ">=", direita);
-        }
-        if (verificar(TipoToken.MENOR_IGUAL)) {
-            consumir(TipoToken.MENOR_IGUAL);
-            Expressao direita = analisarExpressao();
-            return new ExpressaoBinaria(esquerda, "<=", direita);
-        }
-        if (verificar(TipoToken.MAIOR)) {
-            consumir(TipoToken.MAIOR);
-            Expressao direita = analisarExpressao();
-            return new ExpressaoBinaria(esquerda, ">", direita);
-        }
-        if (verificar(TipoToken.MENOR)) {
-            consumir(TipoToken.MENOR);
-            Expressao direita = analisarExpressao();
-            return new ExpressaoBinaria(esquerda, "<", direita);
-        }
-        return esquerda;
-    }
-
-    private Expressao analisarExpressao() throws ErroSintatico, ErroLexico {
-        Debug.entrarRegra("<expressao>");
-        Expressao expressao;
-        if (verificar(TipoToken.FLOATVAL)) {
-            Debug.sintatico("floatval(readline())");
-            consumir(TipoToken.FLOATVAL);
-            consumir(TipoToken.ABRE_PAREN);
-            consumir(TipoToken.READLINE);
-            consumir(TipoToken.ABRE_PAREN);
-            consumir(TipoToken.FECHA_PAREN);
-            consumir(TipoToken.FECHA_PAREN);
-            expressao = new ExpressaoLeitura();
-        } else {
-            Expressao termo = analisarTermo();
-            expressao = analisarOutrosTermos(termo);
-        }
-        Debug.sairRegra("<expressao>");
-        return expressao;
+        quantidadeQuadros += 1;
+        quadro.tipo = tipo;
+        quadro.baseOperadores = quantidadeOperadores;
+        return quadro;
     }
 
-    private Expressao analisarOutrosTermos(Expressao esquerda) throws ErroSintatico, ErroLexico {
-        while (verificarVarios(TipoToken.MAIS, TipoToken.MENOS)) {
-            String operador;
-            if (verificar(TipoToken.MAIS)) {
-                consumir(TipoToken.MAIS);
-                operador = "+";
-            } else {
-                consumir(TipoToken.MENOS);
-                operador = "-";
-            }
-
-            Expressao direita = analisarTermo();
-            esquerda = new ExpressaoBinaria(esquerda, operador, direita);
-        }
-
-        return esquerda;
+    private static void guardarEstado(Quadro quadro, boolean aritmeticaFechada, boolean relacaoDisponivel,
+                                      boolean expressaoAberta) {
+        quadro.aritmeticaFechada = aritmeticaFechada;
+        quadro.relacaoDisponivel = relacaoDisponivel;
+        quadro.expressaoAberta = expressaoAberta;
     }
 
-    private Expressao analisarTermo() throws ErroSintatico, ErroLexico {
-        boolean negativo = false;
-        if (verificar(TipoToken.MENOS)) {
-            consumir(TipoToken.MENOS);
-            negativo = true;
+    private void empilharOperando(Expressao expressao) {
+        if (quantidadeOperandos == operandos.length) {
+            operandos = Arrays.copyOf(operandos, operandos.length * 2);
         }
+        operandos[quantidadeOperandos] = expressao;
+        quantidadeOperandos += 1;
+    }
 
-        Expressao fator = analisarFator();
-
-        if (negativo) {
-            fator = new ExpressaoUnaria("-", fator);
+    private void empilharOperador(int operador) {
+        if (quantidadeOperadores == operadores.length) {
+            operadores = Arrays.copyOf(operadores, operadores.length * 2);
         }
-
-        return analisarMaisFatores(fator);
+        operadores[quantidadeOperadores] = operador;
+        quantidadeOperadores += 1;
     }
 
-    private Expressao analisarMaisFatores(Expressao esquerda) throws ErroSintatico, ErroLexico {
-        while (verificarVarios(TipoToken.MULT, TipoToken.DIV)) {
-            String operador;
-            if (verificar(TipoToken.MULT)) {
-                consumir(TipoToken.MULT);
-                operador = "*";
+    // Monta os nos dos operadores do topo com precedencia >= 'precedenciaMinima' (todos sao
+    // associativos a esquerda; os prefixos ! e - so tem um operando)
+    private void reduzir(int precedenciaMinima, int baseOperadores) {
+        while (quantidadeOperadores > baseOperadores
+            && PRECEDENCIA[operadores[quantidadeOperadores - 1]] >= precedenciaMinima) {
+            int operador = operadores[--quantidadeOperadores];
+            Expressao direita = operandos[--quantidadeOperandos];
+            Expressao no;
+            if (operador == OP_NAO || operador == OP_NEGATIVO) {
+                no = new ExpressaoUnaria(SIMBOLO[operador], direita);
             } else {
-                consumir(TipoToken.DIV);
-                operador = "/";
+                Expressao esquerda = operandos[--quantidadeOperandos];
+                no = new ExpressaoBinaria(esquerda, SIMBOLO[operador], direita);
+                operandos[quantidadeOperandos + 1] = null;
             }
-
-            Expressao direita = analisarFator();
-            esquerda = new ExpressaoBinaria(esquerda, operador, direita);
-        }
-
-        return esquerda;
-    }
-
-    private Expressao analisarFator() throws ErroSintatico, ErroLexico {
-        if (verificar(TipoToken.VARIAVEL)) {
-            Token token = consumir(TipoToken.VARIAVEL);
-            return new ExpressaoVariavel((String) token.getValor());
+            operandos[quantidadeOperandos] = no;
+            quantidadeOperandos += 1;
+        }
+    }
+
+    private static int operadorAritmetico(TipoToken tipo) {
+        switch (tipo) {
+            case MAIS:
+                return OP_MAIS;
+            case MENOS:
+                return OP_MENOS;
+            case MULT:
+                return OP_MULT;
+            case DIV:
+                return OP_DIV;
+            default:
+                return -1;
+        }
+    }
+
+    private static int operadorCondicao(TipoToken tipo) {
+        switch (tipo) {
+            case OR:
+                return OP_OU;
+            case AND:
+                return OP_E;
+            case IGUAL:
+                return OP_IGUAL;
+            case DIFERENTE:
+                return OP_DIFERENTE;
+            case MAIOR_IGUAL:
+                return OP_MAIOR_IGUAL;
+            case MENOR_IGUAL:
+                return OP_MENOR_IGUAL;
+            case MAIOR:
+                return OP_MAIOR;
+            case MENOR:
+                return OP_MENOR;
+            default:
+                return -1;
         }
-        if (verificar(TipoToken.NUMERO)) {
-            Token token = consumir(TipoToken.NUMERO);
-            return new ExpressaoNumero((Double) token.getValor());
-        }
-        if (verificar(TipoToken.IDENT)) {
-            Token token = consumir(TipoToken.IDENT);
-            String nomeFuncao = (String) token.getValor();
-            List<Expressao> argumentos = analisarListaArg();
-            return new ExpressaoChamadaFuncao(nomeFuncao, argumentos);
-        }
-        if (verificar(TipoToken.ABRE_PAREN)) {
-            consumir(TipoToken.ABRE_PAREN);
-            Expressao expressao = analisarExpressao();
-            consumir(TipoToken.FECHA_PAREN);
-            return expressao;
-        }
-        erro("Esperado variavel, numero, chamada de funcao ou '('");
-        return null;
     }
 }
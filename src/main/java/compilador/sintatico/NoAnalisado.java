@@ -0,0 +1,19 @@
+package compilador.sintatico;
+
+import compilador.arvore_sintatica_abstrata.NoArvoreSintaticaAbstrata;
+
+// Funcao ou comando do corpo principal com a faixa de tokens [primeiroToken, fimToken) de onde
+// foi analisado. O token 'fimToken' tambem foi lido (para decidir onde o no termina, como o
+// 'else' depois de um if), entao o no so vale enquanto ele e os da faixa nao mudarem.
+final class NoAnalisado {
+
+    final NoArvoreSintaticaAbstrata no;
+    int primeiroToken;
+    int fimToken;
+
+    NoAnalisado(NoArvoreSintaticaAbstrata no, int primeiroToken, int fimToken) {
+        this.no = no;
+        this.primeiroToken = primeiroToken;
+        this.fimToken = fimToken;
+    }
+}